@@ -0,0 +1,68 @@
+package AppBackend.DataManager.Augmentation
+
+import java.util.Random
+
+/**
+ * One augmentation step applied to a single image, in place.
+ * [pixels] holds the image row-major (height x width); [scratch] is a same-sized buffer an op may use.
+ * Ops must not allocate: they run per sample on the prefetch workers.
+ */
+interface AugmentationOp {
+    fun apply(pixels: FloatArray, scratch: FloatArray, height: Int, width: Int, random: Random)
+}
+
+/** Random translation by up to [maxShift] pixels in each direction, zero-padded (equivalent to pad + random crop). */
+class RandomShift(private val maxShift: Int) : AugmentationOp {
+    override fun apply(pixels: FloatArray, scratch: FloatArray, height: Int, width: Int, random: Random) {
+        val dx = random.nextInt(2 * maxShift + 1) - maxShift
+        val dy = random.nextInt(2 * maxShift + 1) - maxShift
+        if (dx == 0 && dy == 0) return
+
+        for (y in 0 until height) {
+            val sy = y - dy
+            for (x in 0 until width) {
+                val sx = x - dx
+                scratch[y * width + x] = if (sy in 0 until height && sx in 0 until width) pixels[sy * width + sx] else 0f
+            }
+        }
+        System.arraycopy(scratch, 0, pixels, 0, height * width)
+    }
+}
+
+/** Mirrors the image left-right with probability [probability]. */
+class HorizontalFlip(private val probability: Float) : AugmentationOp {
+    override fun apply(pixels: FloatArray, scratch: FloatArray, height: Int, width: Int, random: Random) {
+        if (random.nextFloat() >= probability) return
+
+        for (y in 0 until height) {
+            var left = y * width
+            var right = left + width - 1
+            while (left < right) {
+                val tmp = pixels[left]
+                pixels[left] = pixels[right]
+                pixels[right] = tmp
+                left++
+                right--
+            }
+        }
+    }
+}
+
+/** Adds zero-mean Gaussian noise with standard deviation [stdDev] to every pixel. */
+class GaussianNoise(private val stdDev: Float) : AugmentationOp {
+    override fun apply(pixels: FloatArray, scratch: FloatArray, height: Int, width: Int, random: Random) {
+        for (i in 0 until height * width) {
+            pixels[i] += (random.nextGaussian() * stdDev).toFloat()
+        }
+    }
+}
+
+/** Shifts every pixel by one uniform offset in [-maxDelta, maxDelta]. */
+class RandomBrightness(private val maxDelta: Float) : AugmentationOp {
+    override fun apply(pixels: FloatArray, scratch: FloatArray, height: Int, width: Int, random: Random) {
+        val delta = (random.nextFloat() * 2f - 1f) * maxDelta
+        for (i in 0 until height * width) {
+            pixels[i] += delta
+        }
+    }
+}
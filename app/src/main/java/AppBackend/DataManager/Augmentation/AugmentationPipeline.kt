@@ -0,0 +1,75 @@
+package AppBackend.DataManager.Augmentation
+
+import android.util.Log
+import org.json.JSONArray
+import java.nio.FloatBuffer
+import java.util.Random
+
+/**
+ * Ordered list of [AugmentationOp]s, built from the task's AUGMENTATIONS JSON, e.g.
+ * `[{"op":"shift","max":2},{"op":"flip","p":0.5},{"op":"noise","std":0.05},{"op":"brightness","max":0.1}]`.
+ *
+ * The pipeline itself is immutable and shared; each prefetch slot gets its own [BatchAugmenter]
+ * holding the pooled scratch buffers and RNG, so workers never share mutable state.
+ */
+class AugmentationPipeline(val ops: List<AugmentationOp>, val height: Int, val width: Int) {
+
+    val isEmpty: Boolean get() = ops.isEmpty()
+
+    fun newAugmenter(): BatchAugmenter = BatchAugmenter(this)
+
+    companion object {
+        private const val TAG = "AugmentationPipeline"
+
+        /** Parses the task spec. Unknown ops are skipped with a warning; a blank spec means no augmentation. */
+        fun fromSpec(spec: String, height: Int, width: Int): AugmentationPipeline {
+            if (spec.isBlank()) return AugmentationPipeline(emptyList(), height, width)
+
+            val ops = mutableListOf<AugmentationOp>()
+            val array = JSONArray(spec)
+            for (i in 0 until array.length()) {
+                val entry = array.getJSONObject(i)
+                when (val name = entry.optString("op")) {
+                    "shift", "crop" -> ops.add(RandomShift(entry.optInt("max", 2)))
+                    "flip" -> ops.add(HorizontalFlip(entry.optDouble("p", 0.5).toFloat()))
+                    "noise" -> ops.add(GaussianNoise(entry.optDouble("std", 0.05).toFloat()))
+                    "brightness" -> ops.add(RandomBrightness(entry.optDouble("max", 0.1).toFloat()))
+                    else -> Log.w(TAG, "Unknown augmentation op '$name'. Skipping.")
+                }
+            }
+            Log.i(TAG, "Augmentation pipeline: ${ops.joinToString { it.javaClass.simpleName }}")
+            return AugmentationPipeline(ops, height, width)
+        }
+    }
+}
+
+/** Per-slot worker state: pooled pixel buffers and a reseedable RNG. Allocation-free after construction. */
+class BatchAugmenter(private val pipeline: AugmentationPipeline) {
+    private val imageSize = pipeline.height * pipeline.width
+    private val pixels = FloatArray(imageSize)
+    private val scratch = FloatArray(imageSize)
+    private val random = Random()
+
+    /**
+     * Augments the first [samples] images of [tensor] in place. The RNG is reseeded from [seed]
+     * (derived from the global step), so a resumed run sees the same augmentations.
+     */
+    fun augment(tensor: FloatBuffer, samples: Int, seed: Long) {
+        if (pipeline.isEmpty) return
+        random.setSeed(seed)
+
+        for (sample in 0 until samples) {
+            val base = sample * imageSize
+            tensor.position(base)
+            tensor.get(pixels)
+
+            for (op in pipeline.ops) {
+                op.apply(pixels, scratch, pipeline.height, pipeline.width, random)
+            }
+
+            tensor.position(base)
+            tensor.put(pixels)
+        }
+        tensor.rewind()
+    }
+}
@@ -0,0 +1,61 @@
+package AppBackend.DataManager.Coreset
+
+import android.util.Log
+import AppBackend.LocalTrainingModule.TrainingStateManager.CheckpointJournal
+import java.io.File
+import java.nio.ByteBuffer
+import java.util.zip.CRC32
+
+/**
+ * On-disk form of a coreset: [key length][key UTF-8][count][count ascending indices][CRC32 of all before it].
+ * The key names the data the selection was made from, so a file left over from other data is never reused.
+ */
+object CoresetIndexFile {
+
+    private const val TAG = "CoresetIndexFile"
+
+    /** The [target] indices stored under [key], or null when the file is missing, written for another key or size, or damaged. */
+    fun read(file: File, key: String, numTrainings: Int, target: Int): IntArray? {
+        if (!file.exists()) return null
+
+        return try {
+            val bytes = file.readBytes()
+            if (bytes.size < 8) return null
+            val crc = CRC32()
+            crc.update(bytes, 0, bytes.size - 8)
+            val buffer = ByteBuffer.wrap(bytes)
+            if (buffer.getLong(bytes.size - 8) != crc.value) {
+                Log.w(TAG, "Coreset index ${file.name} is damaged. Selecting again.")
+                return null
+            }
+
+            val keyBytes = ByteArray(buffer.getInt())
+            buffer.get(keyBytes)
+            val count = buffer.getInt()
+            if (String(keyBytes, Charsets.UTF_8) != key || count != target) return null
+
+            val indices = IntArray(count) { buffer.getInt() }
+            // Strictly ascending and inside the training split
+            for (i in indices.indices) {
+                if (indices[i] !in 0 until numTrainings || (i > 0 && indices[i] <= indices[i - 1])) return null
+            }
+            indices
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to read coreset index: ${e.message}")
+            null
+        }
+    }
+
+    /** Stores the sorted [selected] indices under [key], replacing [file] atomically. */
+    fun write(file: File, key: String, selected: IntArray) {
+        val keyBytes = key.toByteArray(Charsets.UTF_8)
+        val buffer = ByteBuffer.allocate(4 + keyBytes.size + 4 + selected.size * 4 + 8)
+        buffer.putInt(keyBytes.size).put(keyBytes).putInt(selected.size)
+        for (index in selected) buffer.putInt(index)
+
+        val crc = CRC32()
+        crc.update(buffer.array(), 0, buffer.position())
+        buffer.putLong(crc.value)
+        CheckpointJournal.writeDurably(file, buffer.array())
+    }
+}
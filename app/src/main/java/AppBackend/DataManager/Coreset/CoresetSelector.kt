@@ -0,0 +1,262 @@
+package AppBackend.DataManager.Coreset
+
+import android.util.Log
+import AppBackend.DataManager.DataLoaderAndInitializer.DatasetSplit
+import AppBackend.DataManager.DataLoaderAndInitializer.ImageDataset
+import AppBackend.LocalTrainingModule.TrainingExecutor.FeatureCache
+import AppBackend.LocalTrainingModule.TrainingExecutor.SamplePermutation
+import AppBackend.LocalTrainingModule.TrainingExecutor.TrainingCallback
+import AppBackend.ResourceManagement.AssetIntegrity
+import AppBackend.ResourceManagement.WarmResourceCache
+import AppBackend.TaskContainer.Image_Task
+import org.tensorflow.lite.Interpreter
+import java.io.File
+import java.io.FileInputStream
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+import java.nio.channels.FileChannel
+import java.security.MessageDigest
+import java.util.Arrays
+import java.util.Random
+import kotlin.math.ceil
+import kotlin.math.sqrt
+
+/**
+ * Coreset of the training split (CORESET_FRACTION): the subset the trainers visit every epoch instead of all
+ * training samples.
+ *
+ * Selection embeds every training sample once, with the model's "features" signature when it exports one (a frozen
+ * backbone, the same in every round), or else its raw pixels. The embeddings are randomly projected down to
+ * [PROJECTED_DIMS] values. Greedy k-center ([KCenter]) then runs per class, with each class getting its share of the
+ * budget: every pick is the sample farthest from everything picked so far. The subset therefore covers the embedding
+ * space, including its outliers, and keeps the class balance. It is never smaller than one batch.
+ *
+ * The sorted indices go to an index file ([CoresetIndexFile]) keyed by the dataset content and the split, so every
+ * epoch, session and later round on the same data reuses it. The held-out tail is never part of the selection.
+ * The selection is frozen on purpose: rounds must train on the same subset for their updates to be comparable.
+ * That is also why the model's trainable output ("infer") is not used to embed: in the first round its weights are
+ * untrained, and a subset picked from that softmax would say nothing about the data yet be kept for every round.
+ */
+class CoresetSelector(private val task: Image_Task) {
+
+    private val TAG = "CoresetSelector"
+    private val filesDir = File("/data/data/com.example.fractal/files/")
+
+    /**
+     * Makes sure the index file for this task's coreset exists, selecting it from [dataset] when missing or stale.
+     * Returns false when the user cancels while it is being selected (the trainers then use every sample).
+     */
+    fun prepare(dataset: ImageDataset, callback: TrainingCallback?): Boolean {
+        val numTrainings = trainingCount(dataset)
+        val target = targetSize(numTrainings)
+        if (target >= numTrainings) return true
+
+        val selection = selectionFor(numTrainings, target)
+        if (load(selection, numTrainings, target) != null) {
+            Log.i(TAG, "Reusing coreset of $target of $numTrainings samples")
+            return true
+        }
+
+        callback?.onStatusUpdate("Selecting training subset...")
+        val start = System.currentTimeMillis()
+        val embeddings = embed(dataset, numTrainings, callback) ?: return false
+        val selected = select(dataset, embeddings, numTrainings, target, callback) ?: return false
+
+        write(selection, selected)
+        pruneOldSelections()
+        Log.i(TAG, "Coreset selected: $target of $numTrainings samples in ${System.currentTimeMillis() - start} ms")
+        return true
+    }
+
+    /** Training samples to visit: the coreset when one is configured and selected, otherwise 0 until [numTrainings]. */
+    fun trainingSamples(numTrainings: Int): IntArray {
+        val target = targetSize(numTrainings)
+        if (target >= numTrainings) return SamplePermutation.identity(numTrainings)
+
+        return load(selectionFor(numTrainings, target), numTrainings, target) ?: run {
+            Log.w(TAG, "No coreset selected for this dataset. Training on all $numTrainings samples.")
+            SamplePermutation.identity(numTrainings)
+        }
+    }
+
+    private fun trainingCount(dataset: ImageDataset): Int =
+        DatasetSplit.trainingCount(minOf(task.NUM_TRAININGS, dataset.sampleCount), task.VALIDATION_SPLIT)
+
+    // At least one batch, or an epoch would have no step to run
+    private fun targetSize(numTrainings: Int): Int {
+        val fraction = task.CORESET_FRACTION
+        if (fraction <= 0f || fraction >= 1f || numTrainings <= 1) return numTrainings
+        return ceil(numTrainings * fraction.toDouble()).toInt().coerceIn(minOf(maxOf(1, task.BATCH_SIZE), numTrainings), numTrainings)
+    }
+
+    // --- Embedding ---
+
+    /** One [PROJECTED_DIMS]-wide (or narrower) row per training sample, indexed by dataset index; null when cancelled. */
+    private fun embed(dataset: ImageDataset, numTrainings: Int, callback: TrainingCallback?): Embeddings? {
+        val interpreter = try {
+            val modelFile = File(filesDir, task.MODEL_FILENAME)
+            val buffer = FileInputStream(modelFile).use { it.channel.map(FileChannel.MapMode.READ_ONLY, 0, modelFile.length()) }
+            Interpreter(buffer, Interpreter.Options().setNumThreads(maxOf(1, task.NUM_THREADS)))
+        } catch (e: Exception) {
+            Log.w(TAG, "Model not usable for embeddings (${e.message}). Selecting on raw pixels.")
+            null
+        }
+
+        try {
+            // Only a frozen backbone embeds: the rest of the model changes every round, the selection does not
+            val signature = FeatureCache.SIGNATURE_FEATURES
+            val output = FeatureCache.OUTPUT_FEATURES
+            val model = interpreter?.takeIf { signature in it.signatureKeys }
+
+            val imageSize = dataset.imageSize
+            val batch = model?.let { maxOf(1, it.getInputTensorFromSignature("x", signature).numElements() / imageSize) } ?: 1
+            val sourceDim = model?.let { it.getOutputTensorFromSignature(output, signature).numElements() / batch } ?: imageSize
+            if (sourceDim <= 0) throw Exception("The $signature signature has an empty output")
+            Log.i(TAG, "Embedding $numTrainings samples through ${model?.let { "\"$signature\"" } ?: "raw pixels"} ($sourceDim values each)")
+
+            val projection = Projection(sourceDim)
+            val embeddings = Embeddings(numTrainings, projection.outDim)
+            val imageTensor = directFloats(batch * imageSize)
+            val labelTensor = directFloats(batch * dataset.labelSize)
+            val outputTensor = directFloats(batch * sourceDim)
+            val row = FloatArray(sourceDim)
+            val inputs = mutableMapOf<String, Any>("x" to imageTensor)
+            val outputs = mutableMapOf<String, Any>(output to outputTensor)
+
+            val reader = dataset.openReader()
+            // Sequential, so a streaming dataset reads each window exactly once
+            dataset.onEpochOrder(SamplePermutation.identity(numTrainings))
+
+            var first = 0
+            while (first < numTrainings) {
+                if (callback?.isCancelled() == true) {
+                    Log.i(TAG, "Coreset selection cancelled at sample $first/$numTrainings")
+                    return null
+                }
+                val count = minOf(batch, numTrainings - first)
+
+                imageTensor.clear()
+                labelTensor.clear()
+                reader.copyRange(first, count, imageTensor, labelTensor)
+                // A short last chunk is zero-padded; the padding rows are ignored
+                while (imageTensor.hasRemaining()) imageTensor.put(0f)
+                imageTensor.rewind()
+
+                val source = if (model != null) {
+                    model.runSignature(inputs, outputs, signature)
+                    outputTensor
+                } else {
+                    imageTensor
+                }
+                source.rewind()
+                for (i in 0 until count) {
+                    source.get(row)
+                    projection.project(row, embeddings.values, (first + i) * embeddings.dim)
+                }
+                first += count
+            }
+            return embeddings
+        } finally {
+            interpreter?.close()
+        }
+    }
+
+    /**
+     * Fixed Gaussian random projection down to [PROJECTED_DIMS] values (pairwise distances are roughly preserved),
+     * or a plain copy when the source is already that narrow. Seeded, so the same data always gives the same selection.
+     */
+    private class Projection(private val inDim: Int) {
+        val outDim: Int = minOf(inDim, PROJECTED_DIMS)
+        private val matrix: FloatArray? = if (inDim > PROJECTED_DIMS) {
+            val random = Random(PROJECTION_SEED)
+            val scale = 1f / sqrt(PROJECTED_DIMS.toFloat())
+            FloatArray(inDim * outDim) { random.nextGaussian().toFloat() * scale }
+        } else {
+            null
+        }
+
+        fun project(source: FloatArray, out: FloatArray, offset: Int) {
+            if (matrix == null) {
+                System.arraycopy(source, 0, out, offset, outDim)
+                return
+            }
+            Arrays.fill(out, offset, offset + outDim, 0f)
+            for (i in 0 until inDim) {
+                val v = source[i]
+                if (v == 0f) continue
+                val row = i * outDim
+                for (j in 0 until outDim) out[offset + j] += v * matrix[row + j]
+            }
+        }
+    }
+
+    // --- Selection ---
+
+    /** Greedy k-center per class, [target] samples in total, sorted; null when cancelled. */
+    private fun select(dataset: ImageDataset, embeddings: Embeddings, numTrainings: Int, target: Int, callback: TrainingCallback?): IntArray? {
+        // Group the training samples by stored class (unlabelled rows form one more group)
+        val reader = dataset.openReader()
+        val groups = LinkedHashMap<Int, MutableList<Int>>()
+        for (sample in 0 until numTrainings) groups.getOrPut(reader.labelOf(sample)) { ArrayList() }.add(sample)
+
+        val members = groups.values.map { it.toIntArray() }
+        val quotas = KCenter.apportion(members.map { it.size }, target)
+
+        val selected = IntArray(target)
+        var filled = 0
+        for (g in members.indices) {
+            if (quotas[g] == 0) continue
+            val picks = KCenter.select(members[g], quotas[g], embeddings) { callback?.isCancelled() == true } ?: return null
+            System.arraycopy(picks, 0, selected, filled, picks.size)
+            filled += picks.size
+        }
+        selected.sort()
+        return selected
+    }
+
+    // --- Index file ---
+
+    /** Where a selection is stored and the key stored with it, checked on load. */
+    private class Selection(val key: String, val file: File)
+
+    /**
+     * Identifies a selection: the dataset content (download digests) plus split and size. The model is left out on
+     * purpose, so later rounds with updated weights keep the selection. Without recorded digests the selection
+     * belongs to this task alone, and its task-prefixed file goes with the task's other files.
+     */
+    private fun selectionFor(numTrainings: Int, target: Int): Selection {
+        val shape = "$numTrainings:$target:v$FORMAT_VERSION"
+        val files = listOf(File(filesDir, task.TRAIN_IMAGES_FILENAME), File(filesDir, task.TRAIN_LABELS_FILENAME))
+        val contentKey = WarmResourceCache.contentKey(files, shape)
+            ?: return Selection("task ${task.task_Id}|$shape", File(filesDir, "${task.task_Id}_coreset.idx"))
+
+        val digest = AssetIntegrity.toHex(MessageDigest.getInstance("SHA-256").digest(contentKey.toByteArray(Charsets.UTF_8)))
+        return Selection(contentKey, File(filesDir, FILE_PREFIX + digest.take(16) + ".idx"))
+    }
+
+    private fun load(selection: Selection, numTrainings: Int, target: Int): IntArray? =
+        CoresetIndexFile.read(selection.file, selection.key, numTrainings, target)
+
+    private fun write(selection: Selection, selected: IntArray) = CoresetIndexFile.write(selection.file, selection.key, selected)
+
+    /** Shared selections outlive tasks: only the most recently written [MAX_KEPT_SELECTIONS] are kept. */
+    private fun pruneOldSelections() {
+        val shared = filesDir.listFiles()?.filter { it.name.startsWith(FILE_PREFIX) && it.name.endsWith(".idx") } ?: return
+        shared.sortedByDescending { it.lastModified() }.drop(MAX_KEPT_SELECTIONS).forEach { it.delete() }
+    }
+
+    private fun directFloats(count: Int): FloatBuffer =
+        ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder()).asFloatBuffer()
+
+    companion object {
+        // Embedding width the k-center distances are computed on
+        private const val PROJECTED_DIMS = 32
+        private const val PROJECTION_SEED = 0x436F7265L
+
+        private const val FILE_PREFIX = "coreset_"
+        // 2: embedded with the backbone or raw pixels only
+        private const val FORMAT_VERSION = 2
+        private const val MAX_KEPT_SELECTIONS = 4
+    }
+}
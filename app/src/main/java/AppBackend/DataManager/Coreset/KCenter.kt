@@ -0,0 +1,114 @@
+package AppBackend.DataManager.Coreset
+
+/** [count] rows of [dim] values, row-major: one embedding per training sample, indexed by dataset index. */
+class Embeddings(val count: Int, val dim: Int) {
+    val values = FloatArray(count * dim)
+
+    fun squaredDistance(a: Int, b: Int): Float {
+        var sum = 0f
+        val rowA = a * dim
+        val rowB = b * dim
+        for (j in 0 until dim) {
+            val d = values[rowA + j] - values[rowB + j]
+            sum += d * d
+        }
+        return sum
+    }
+}
+
+/**
+ * The selection half of [CoresetSelector]: the budget split across classes and greedy k-center within a class.
+ * Kept free of models and files so it runs (and is tested) on plain arrays.
+ */
+object KCenter {
+
+    // Picks between cancellation checks
+    private const val CANCEL_CHECK_INTERVAL = 64
+
+    /**
+     * Splits [total] across groups in proportion to their [sizes] (largest remainders), giving every
+     * non-empty group at least one sample while the total allows.
+     */
+    fun apportion(sizes: List<Int>, total: Int): IntArray {
+        val sum = sizes.sum().toDouble()
+        val shares = DoubleArray(sizes.size) { total * sizes[it] / sum }
+        val quotas = IntArray(sizes.size) { minOf(sizes[it], maxOf(1, shares[it].toInt())) }
+        var assigned = quotas.sum()
+
+        // Too many from the minimum of one: take back from the largest quotas
+        while (assigned > total) {
+            val largest = quotas.indices.maxByOrNull { quotas[it] } ?: break
+            quotas[largest]--
+            assigned--
+        }
+        // Too few from rounding down: hand out by largest remainder among groups with samples to spare
+        val byRemainder = sizes.indices.sortedByDescending { shares[it] - shares[it].toInt() }
+        while (assigned < total) {
+            var progressed = false
+            for (g in byRemainder) {
+                if (assigned == total) break
+                if (quotas[g] < sizes[g]) {
+                    quotas[g]++
+                    assigned++
+                    progressed = true
+                }
+            }
+            if (!progressed) break
+        }
+        return quotas
+    }
+
+    /**
+     * [k] of [group]: the member closest to the group mean, then repeatedly the member farthest from all picks.
+     * Null when [isCancelled] turns true during the selection.
+     */
+    fun select(group: IntArray, k: Int, embeddings: Embeddings, isCancelled: () -> Boolean = { false }): IntArray? {
+        if (k >= group.size) return group.copyOf()
+
+        val dim = embeddings.dim
+        val values = embeddings.values
+        val mean = FloatArray(dim)
+        for (sample in group) for (j in 0 until dim) mean[j] += values[sample * dim + j]
+        for (j in 0 until dim) mean[j] /= group.size
+
+        var first = 0
+        var firstDistance = Float.MAX_VALUE
+        for (m in group.indices) {
+            var sum = 0f
+            for (j in 0 until dim) {
+                val d = values[group[m] * dim + j] - mean[j]
+                sum += d * d
+            }
+            if (sum < firstDistance) {
+                firstDistance = sum
+                first = m
+            }
+        }
+
+        // Distance of each member to its nearest pick, updated with every new pick
+        val nearest = FloatArray(group.size) { Float.MAX_VALUE }
+        val taken = BooleanArray(group.size)
+        val picks = IntArray(k)
+        var pick = first
+        for (p in 0 until k) {
+            if (p % CANCEL_CHECK_INTERVAL == 0 && isCancelled()) return null
+            picks[p] = group[pick]
+            taken[pick] = true
+
+            // k < group size, so an untaken member is always left (exact duplicates of picks at distance 0)
+            var farthest = -1
+            var farthestDistance = -1f
+            for (m in group.indices) {
+                if (taken[m]) continue
+                val d = embeddings.squaredDistance(group[m], group[pick])
+                if (d < nearest[m]) nearest[m] = d
+                if (nearest[m] > farthestDistance) {
+                    farthestDistance = nearest[m]
+                    farthest = m
+                }
+            }
+            pick = farthest
+        }
+        return picks
+    }
+}
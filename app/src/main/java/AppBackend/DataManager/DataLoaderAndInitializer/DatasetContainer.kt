@@ -0,0 +1,171 @@
+package AppBackend.DataManager.DataLoaderAndInitializer
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.util.zip.CRC32
+
+/**
+ * Header of a versioned dataset container. Files without it are legacy raw float32 `.bin` dumps.
+ *
+ * Layout (little-endian, [DatasetContainer.HEADER_BYTES] bytes, payload follows):
+ * magic "FDS1" | version u16 | dtype u8 | reserved u8 | sampleCount i32 | height i32 | width i32 | channels i32 |
+ * scale f32 | offset f32 | payload CRC32 u32 | payloadOffset i32 | reserved
+ *
+ * Stored values become model floats as value * scale + offset (float32 payloads use scale 1, offset 0).
+ * Label files may instead hold one class index per sample (1x1x1 shape, uint8/uint16/int32).
+ * float16 is only written on the device (the backbone feature cache), never downloaded.
+ */
+data class DatasetHeader(
+    val version: Int,
+    val dtype: Int,
+    val sampleCount: Int,
+    val height: Int,
+    val width: Int,
+    val channels: Int,
+    val scale: Float,
+    val offset: Float,
+    val checksum: Long,
+    val payloadOffset: Long
+) {
+    val valuesPerSample: Int get() = height * width * channels
+    val bytesPerValue: Int get() = when (dtype) {
+        DatasetContainer.DTYPE_UINT8 -> 1
+        DatasetContainer.DTYPE_UINT16, DatasetContainer.DTYPE_FLOAT16 -> 2
+        else -> 4
+    }
+    val payloadBytes: Long get() = sampleCount.toLong() * valuesPerSample * bytesPerValue
+}
+
+object DatasetContainer {
+    const val HEADER_BYTES = 64
+    const val VERSION = 1
+
+    const val DTYPE_FLOAT32 = 0
+    const val DTYPE_UINT8 = 1
+    const val DTYPE_UINT16 = 2
+    const val DTYPE_INT32 = 3
+    const val DTYPE_FLOAT16 = 4
+
+    private val MAGIC = byteArrayOf('F'.code.toByte(), 'D'.code.toByte(), 'S'.code.toByte(), '1'.code.toByte())
+
+    /** Returns the header, or null when the file is a legacy raw float32 dump. */
+    fun readHeader(channel: FileChannel): DatasetHeader? {
+        if (channel.size() < HEADER_BYTES) return null
+
+        val header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN)
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position().toLong()) < 0) return null
+        }
+        header.flip()
+
+        for (b in MAGIC) {
+            if (header.get() != b) return null
+        }
+
+        val version = header.getShort().toInt() and 0xFFFF
+        if (version > VERSION) {
+            throw Exception("Dataset container version $version is newer than supported version $VERSION")
+        }
+        val dtype = header.get().toInt() and 0xFF
+        if (dtype !in DTYPE_FLOAT32..DTYPE_FLOAT16) {
+            throw Exception("Unsupported dataset dtype $dtype")
+        }
+        header.get() // reserved
+
+        val sampleCount = header.getInt()
+        val height = header.getInt()
+        val width = header.getInt()
+        val channels = header.getInt()
+        var scale = header.getFloat()
+        var offset = header.getFloat()
+        val checksum = header.getInt().toLong() and 0xFFFFFFFFL
+        val payloadOffset = header.getInt().toLong()
+
+        if (dtype != DTYPE_UINT8) {
+            scale = 1f
+            offset = 0f
+        } else if (scale == 0f) {
+            // uint8 without explicit normalization: map 0..255 to 0..1
+            scale = 1f / 255f
+        }
+
+        return DatasetHeader(version, dtype, sampleCount, height, width, channels, scale, offset, checksum, payloadOffset)
+    }
+
+    /** Header bytes for a container written on the device (the inverse of [readHeader]). */
+    fun encodeHeader(header: DatasetHeader): ByteBuffer {
+        val buffer = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN)
+        buffer.put(MAGIC)
+        buffer.putShort(header.version.toShort())
+        buffer.put(header.dtype.toByte())
+        buffer.put(0) // reserved
+        buffer.putInt(header.sampleCount)
+        buffer.putInt(header.height)
+        buffer.putInt(header.width)
+        buffer.putInt(header.channels)
+        buffer.putFloat(header.scale)
+        buffer.putFloat(header.offset)
+        buffer.putInt(header.checksum.toInt())
+        buffer.putInt(header.payloadOffset.toInt())
+        buffer.position(HEADER_BYTES)
+        buffer.flip()
+        return buffer
+    }
+
+    /** Largest class index [dtype] can store, for checking a class-index label file against NUM_CLASSES. */
+    fun maxClassIndex(dtype: Int): Long = when (dtype) {
+        DTYPE_UINT8 -> 0xFFL
+        DTYPE_UINT16 -> 0xFFFFL
+        else -> Int.MAX_VALUE.toLong()
+    }
+
+    /**
+     * First sample of a class-index label payload whose index falls outside 0 until [numClasses], as
+     * (sample, index); null when every index is in range. One sequential pass, read in whole values.
+     */
+    fun findClassIndexOutside(channel: FileChannel, header: DatasetHeader, numClasses: Int): Pair<Int, Long>? {
+        val width = header.bytesPerValue
+        val chunk = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN)
+        var sample = 0
+        var position = header.payloadOffset
+        val end = header.payloadOffset + header.payloadBytes
+        while (position < end) {
+            chunk.clear()
+            chunk.limit(minOf(chunk.capacity().toLong(), end - position).toInt())
+            // FileChannel.read() may return short; fill the chunk so no value is split across reads
+            while (chunk.hasRemaining()) {
+                if (channel.read(chunk, position + chunk.position()) < 0) throw Exception("Unexpected end of label payload")
+            }
+            chunk.flip()
+            while (chunk.remaining() >= width) {
+                val index = when (header.dtype) {
+                    DTYPE_UINT8 -> (chunk.get().toInt() and 0xFF).toLong()
+                    DTYPE_UINT16 -> (chunk.getShort().toInt() and 0xFFFF).toLong()
+                    else -> chunk.getInt().toLong()
+                }
+                if (index < 0 || index >= numClasses) return sample to index
+                sample++
+            }
+            position += chunk.limit()
+        }
+        return null
+    }
+
+    /** CRC32 over the payload. Reads the whole file once, so callers cache the result. */
+    fun payloadChecksum(channel: FileChannel, header: DatasetHeader): Long {
+        val crc = CRC32()
+        val chunk = ByteBuffer.allocate(256 * 1024)
+        var position = header.payloadOffset
+        val end = header.payloadOffset + header.payloadBytes
+        while (position < end) {
+            chunk.clear()
+            chunk.limit(minOf(chunk.capacity().toLong(), end - position).toInt())
+            val read = channel.read(chunk, position)
+            if (read < 0) break
+            crc.update(chunk.array(), 0, read)
+            position += read
+        }
+        return crc.value
+    }
+}
@@ -0,0 +1,16 @@
+package AppBackend.DataManager.DataLoaderAndInitializer
+
+/**
+ * Train / held-out partition of a task's samples. The held-out split is the tail of the file
+ * ([trainingCount] until sampleCount), so trainer and validator agree on it without any shared state.
+ */
+object DatasetSplit {
+
+    /** Samples reserved for evaluation: [fraction] of [sampleCount], leaving at least one training sample. */
+    fun heldOutCount(sampleCount: Int, fraction: Float): Int {
+        if (fraction <= 0f || sampleCount < 2) return 0
+        return (sampleCount * fraction.coerceAtMost(0.5f)).toInt().coerceIn(0, sampleCount - 1)
+    }
+
+    fun trainingCount(sampleCount: Int, fraction: Float): Int = sampleCount - heldOutCount(sampleCount, fraction)
+}
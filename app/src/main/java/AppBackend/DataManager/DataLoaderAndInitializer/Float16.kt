@@ -0,0 +1,64 @@
+package AppBackend.DataManager.DataLoaderAndInitializer
+
+/**
+ * IEEE 754 half-precision conversions for compact on-disk tensors (e.g. the backbone feature cache).
+ * Encoding rounds to nearest even; decoding is a table lookup, cheap enough for the step-tensor copies.
+ */
+object Float16 {
+
+    // Every half bit pattern decoded once (256 KB), built on first use
+    private val DECODED: FloatArray by lazy { FloatArray(65536) { decode(it) } }
+
+    fun toFloat(half: Short): Float = DECODED[half.toInt() and 0xFFFF]
+
+    fun fromFloat(value: Float): Short {
+        val bits = java.lang.Float.floatToRawIntBits(value)
+        val sign = (bits ushr 16) and 0x8000
+        val exponent = ((bits ushr 23) and 0xFF) - 127 + 15
+        val mantissa = bits and 0x7FFFFF
+
+        if (exponent == 0xFF - 127 + 15) {
+            // Inf stays Inf, NaN stays a (quiet) NaN
+            return (sign or 0x7C00 or if (mantissa != 0) 0x200 else 0).toShort()
+        }
+        if (exponent >= 0x1F) return (sign or 0x7C00).toShort()
+
+        if (exponent <= 0) {
+            // Subnormal half (or zero when too small even for that)
+            if (exponent < -10) return sign.toShort()
+            val significand = mantissa or 0x800000
+            val shift = 14 - exponent
+            return (sign or roundShift(significand, shift)).toShort()
+        }
+
+        // A rounding carry into the exponent is still the correct result (up to Inf)
+        return (sign or ((exponent shl 10) + roundShift(mantissa, 13))).toShort()
+    }
+
+    /** [value] shifted right by [shift] bits, rounded to nearest even. */
+    private fun roundShift(value: Int, shift: Int): Int {
+        val truncated = value ushr shift
+        val half = 1 shl (shift - 1)
+        val remainder = value and ((1 shl shift) - 1)
+        return if (remainder > half || (remainder == half && (truncated and 1) != 0)) truncated + 1 else truncated
+    }
+
+    private fun decode(half: Int): Float {
+        val negative = (half and 0x8000) != 0
+        val exponent = (half ushr 10) and 0x1F
+        val mantissa = half and 0x3FF
+
+        val bits = when (exponent) {
+            0x1F -> 0x7F800000 or (mantissa shl 13)
+            0 -> {
+                // Subnormal: mantissa * 2^-24
+                val magnitude = mantissa * SUBNORMAL_UNIT
+                return if (negative) -magnitude else magnitude
+            }
+            else -> ((exponent + 127 - 15) shl 23) or (mantissa shl 13)
+        }
+        return java.lang.Float.intBitsToFloat(if (negative) bits or Int.MIN_VALUE else bits)
+    }
+
+    private const val SUBNORMAL_UNIT = 5.9604645E-8f
+}
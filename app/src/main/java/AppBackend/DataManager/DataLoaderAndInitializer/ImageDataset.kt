@@ -0,0 +1,40 @@
+package AppBackend.DataManager.DataLoaderAndInitializer
+
+import java.nio.FloatBuffer
+
+/**
+ * The training samples as the trainer and validator see them, whether fully resident or
+ * streamed through a bounded window. Samples are addressed by index and copied into caller-owned tensors.
+ */
+interface ImageDataset {
+    val sampleCount: Int
+    val imageSize: Int
+    val labelSize: Int
+
+    /** Samples are cheapest to visit in runs of this many consecutive indices (sampleCount when fully resident). */
+    val blockSize: Int
+
+    /** A cursor for one consumer (e.g. one prefetch slot). Copying never allocates. */
+    fun openReader(): SampleReader
+
+    /** Hint with the visiting order of the coming epoch, so a streaming dataset can read ahead. */
+    fun onEpochOrder(order: IntArray) {}
+
+    fun close() {}
+}
+
+interface SampleReader {
+    /** Appends [sample] at the current position of [image] and [label]. */
+    fun copySample(sample: Int, image: FloatBuffer, label: FloatBuffer)
+
+    /** Appends only the image of [sample], for consumers that check predictions against [labelOf]. */
+    fun copyImage(sample: Int, image: FloatBuffer)
+
+    /** Class index of [sample] as stored (for accuracy checks), -1 when the label row has none. */
+    fun labelOf(sample: Int): Int
+
+    /** Appends [count] consecutive samples starting at [firstSample]. */
+    fun copyRange(firstSample: Int, count: Int, image: FloatBuffer, label: FloatBuffer) {
+        for (sample in firstSample until firstSample + count) copySample(sample, image, label)
+    }
+}
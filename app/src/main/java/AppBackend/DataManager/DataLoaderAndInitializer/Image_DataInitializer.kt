@@ -1,6 +1,7 @@
 package AppBackend.DataManager.DataLoaderAndInitializer
 
 import android.util.Log
+import AppBackend.ResourceManagement.WarmResourceCache
 import AppBackend.TaskContainer.Image_Task
 import AppBackend.TaskContainer.Task
 import java.io.File
@@ -8,7 +9,7 @@ import java.io.FileInputStream
 import java.io.InputStream
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
-import java.nio.FloatBuffer
+import java.nio.channels.FileChannel
 
 class Image_DataInitializer : DataInitializer {
 
@@ -40,7 +41,7 @@ class Image_DataInitializer : DataInitializer {
         return Pair(imageStream!!, labelStream!!)
     }
 
-    override fun preprocess(task: Task): Pair<FloatBuffer, FloatBuffer> {
+    override fun preprocess(task: Task): ImageDataset {
         Log.d(TAG, "--> preprocess(): Entering method.")
         val imageTask = task as Image_Task
 
@@ -76,44 +77,113 @@ class Image_DataInitializer : DataInitializer {
 
             Log.d(TAG, "--> preprocess(): Parsed Dimensions - H:$imgHeight, W:$imgWidth, Trainings:$numTrainings, Classes:$numClasses")
 
-            Log.d(TAG, "--> preprocess(): Calculating exact byte sizes...")
-            val imageBytes = numTrainings * imgHeight * imgWidth * 4
-            val labelBytes = numTrainings * numClasses * 4
-            Log.d(TAG, "--> preprocess(): Image bytes required: $imageBytes | Label bytes required: $labelBytes")
+            // Same dataset content and layout as an earlier task: reuse its resident buffers
+            val filesDir = "/data/data/com.example.fractal/files/"
+            val residencyKey = WarmResourceCache.contentKey(
+                listOf(File(filesDir, imageTask.TRAIN_IMAGES_FILENAME), File(filesDir, imageTask.TRAIN_LABELS_FILENAME)),
+                "$numTrainings:$imgHeight:$imgWidth:$numClasses:${imageTask.DATASET_LOADING}"
+            )
+            residencyKey?.let { WarmResourceCache.dataset(it) }?.let { warm ->
+                Log.d(TAG, "--> preprocess(): SUCCESS. Reusing resident dataset from an earlier task.")
+                closeStreams()
+                return warm
+            }
 
-            Log.d(TAG, "--> preprocess(): Allocating Direct Buffers...")
-            val imageBatch = ByteBuffer.allocateDirect(imageBytes).order(ByteOrder.nativeOrder()).asFloatBuffer()
-            val labelBatch = ByteBuffer.allocateDirect(labelBytes).order(ByteOrder.nativeOrder()).asFloatBuffer()
+            val imageChannel = (imageStream as FileInputStream).channel
+            val labelChannel = (labelStream as FileInputStream).channel
 
-            Log.d(TAG, "--> preprocess(): Creating temporary byte arrays...")
-            val imageData = ByteArray(imageBytes)
-            val labelData = ByteArray(labelBytes)
+            // Versioned containers (uint8 or float32) carry a header; anything else is a legacy raw float32 dump
+            val imageHeader = DatasetContainer.readHeader(imageChannel)
+            val labelHeader = DatasetContainer.readHeader(labelChannel)
+            Log.d(TAG, "--> preprocess(): Image format: ${describe(imageHeader)} | Label format: ${describe(labelHeader)}")
+            if (imageHeader != null && imageHeader.dtype != DatasetContainer.DTYPE_FLOAT32 && imageHeader.dtype != DatasetContainer.DTYPE_UINT8) {
+                throw Exception("Data Initializer Error: ${imageTask.TRAIN_IMAGES_FILENAME} must hold float32 or uint8 pixels")
+            }
 
-            Log.d(TAG, "--> preprocess(): Reading file streams into memory...")
-            val imgRead = imageStream!!.read(imageData)
-            val lblRead = labelStream!!.read(labelData)
-            Log.d(TAG, "--> preprocess(): Bytes read into memory - Images: $imgRead, Labels: $lblRead")
+            // Labels are either one-hot float32 rows or one compact class index per sample
+            val sparseLabels = labelHeader != null && labelHeader.valuesPerSample == 1 && numClasses > 1
+            if (sparseLabels) {
+                if (labelHeader!!.dtype == DatasetContainer.DTYPE_FLOAT32 || numClasses - 1 > DatasetContainer.maxClassIndex(labelHeader.dtype)) {
+                    throw Exception("Data Initializer Error: ${imageTask.TRAIN_LABELS_FILENAME} cannot index $numClasses classes with ${describe(labelHeader)}")
+                }
+            } else if (labelHeader != null && labelHeader.dtype != DatasetContainer.DTYPE_FLOAT32) {
+                throw Exception("Data Initializer Error: ${imageTask.TRAIN_LABELS_FILENAME} must hold float32 one-hot rows or class indices")
+            }
 
-            Log.d(TAG, "--> preprocess(): Wrapping arrays and converting to Floats...")
-            val imageFloatBuffer = ByteBuffer.wrap(imageData).order(ByteOrder.nativeOrder()).asFloatBuffer()
-            val labelFloatBuffer = ByteBuffer.wrap(labelData).order(ByteOrder.nativeOrder()).asFloatBuffer()
+            // A size mismatch means the task's NUM_TRAININGS / INPUT_SHAPE / NUM_CLASSES don't describe these files
+            val imageSize = imgHeight * imgWidth
+            Log.d(TAG, "--> preprocess(): Calculating exact byte sizes...")
+            val imageBytes = validateLayout(imageTask.TRAIN_IMAGES_FILENAME, imageChannel.size(), imageHeader, numTrainings, imageSize, "$numTrainings x $imgHeight x $imgWidth")
+            val labelBytes = if (sparseLabels) {
+                validateLayout(imageTask.TRAIN_LABELS_FILENAME, labelChannel.size(), labelHeader, numTrainings, 1, "$numTrainings class indices")
+            } else {
+                validateLayout(imageTask.TRAIN_LABELS_FILENAME, labelChannel.size(), labelHeader, numTrainings, numClasses, "$numTrainings x $numClasses")
+            }
+            Log.d(TAG, "--> preprocess(): Image bytes required: $imageBytes | Label bytes required: $labelBytes")
 
-            val imageFloats = FloatArray(numTrainings * imgHeight * imgWidth)
-            val labelFloats = FloatArray(numTrainings * numClasses)
+            verifyChecksum(imageTask, imageTask.TRAIN_IMAGES_FILENAME, imageChannel, imageHeader)
+            verifyChecksum(imageTask, imageTask.TRAIN_LABELS_FILENAME, labelChannel, labelHeader)
 
-            imageFloatBuffer.get(imageFloats)
-            labelFloatBuffer.get(labelFloats)
+            // The decoder trusts class indices: one out of range would silently train on an all-zero label row
+            if (sparseLabels) {
+                DatasetContainer.findClassIndexOutside(labelChannel, labelHeader!!, numClasses)?.let { (sample, index) ->
+                    Log.e(TAG, "--> preprocess(): ${imageTask.TRAIN_LABELS_FILENAME} sample $sample has class index $index, NUM_CLASSES is $numClasses")
+                    throw Exception("Data Initializer Error: ${imageTask.TRAIN_LABELS_FILENAME} sample $sample has class index $index, outside 0 until $numClasses")
+                }
+            }
 
-            Log.d(TAG, "--> preprocess(): Putting floats into final Direct Buffers...")
-            imageBatch.put(imageFloats).rewind()
-            labelBatch.put(labelFloats).rewind()
+            val availableMemory = availableMemoryBytes()
+            var mode = imageTask.DATASET_LOADING
+            if (mode == "heap" && imageBytes + labelBytes > availableMemory / 4) {
+                Log.w(TAG, "--> preprocess(): Dataset (${imageBytes + labelBytes} bytes) too large to hold with $availableMemory bytes available. Streaming instead.")
+                mode = "stream"
+            }
 
+            val result: ImageDataset = when (mode) {
+                "heap" -> {
+                    // One direct copy per file, filled straight from the channel
+                    Log.d(TAG, "--> preprocess(): Reading dataset into Direct Buffers...")
+                    ResidentImageDataset(
+                        PixelDecoder.of(readFully(imageChannel, imageHeader, imageBytes), imageHeader),
+                        LabelDecoder.of(readFully(labelChannel, labelHeader, labelBytes), labelHeader, numClasses),
+                        imageSize, numClasses
+                    )
+                }
+                "stream" -> {
+                    // Only two bounded windows are resident, refilled from disk while training runs
+                    val bytesPerSample = (imageBytes + labelBytes) / maxOf(1, numTrainings)
+                    val windowSamples = streamingWindowSamples(availableMemory, maxOf(1L, bytesPerSample), numTrainings)
+                    Log.d(TAG, "--> preprocess(): Streaming dataset through windows of $windowSamples samples...")
+                    StreamingImageDataset(
+                        File(filesDir, imageTask.TRAIN_IMAGES_FILENAME),
+                        File(filesDir, imageTask.TRAIN_LABELS_FILENAME),
+                        numTrainings, imageSize, numClasses, windowSamples,
+                        imageHeader, labelHeader
+                    )
+                }
+                else -> {
+                    // Zero-copy: the page cache is the only copy, pages fault in as batches touch them.
+                    // uint8 pixels are normalized into the step tensors, never widened in place.
+                    Log.d(TAG, "--> preprocess(): Memory-mapping dataset files...")
+                    ResidentImageDataset(
+                        PixelDecoder.of(mapReadOnly(imageChannel, imageHeader, imageBytes), imageHeader),
+                        LabelDecoder.of(mapReadOnly(labelChannel, labelHeader, labelBytes), labelHeader, numClasses),
+                        imageSize, numClasses
+                    )
+                }
+            }
+
+            // A mapping stays valid after its channel is closed
             Log.d(TAG, "--> preprocess(): Memory cleanup - closing streams...")
-            imageStream!!.close()
-            labelStream!!.close()
+            closeStreams()
+
+            // Resident datasets stay warm for the next task on the same data (streaming ones own files and a thread)
+            if (mode != "stream" && residencyKey != null) {
+                WarmResourceCache.putDataset(residencyKey, result, imageBytes + labelBytes, availableMemory / 4)
+            }
 
-            Log.d(TAG, "--> preprocess(): SUCCESS. Returning processed pairs.")
-            return Pair(imageBatch, labelBatch)
+            Log.d(TAG, "--> preprocess(): SUCCESS. Returning dataset ($mode).")
+            return result
 
         } catch (e: Exception) {
             Log.e(TAG, "--> preprocess(): FATAL ERROR CAUGHT: ${e.message}")
@@ -121,4 +191,104 @@ class Image_DataInitializer : DataInitializer {
             throw e // Rethrow to be caught by PackageTypeTrainer
         }
     }
+
+    private fun closeStreams() {
+        imageStream?.close()
+        labelStream?.close()
+        imageStream = null
+        labelStream = null
+    }
+
+    /**
+     * Samples per streaming window: both windows together take about 1/8 of available memory
+     * (between 4 MB and 256 MB), never more than the dataset itself.
+     */
+    private fun streamingWindowSamples(availableMemory: Long, bytesPerSample: Long, numTrainings: Int): Int {
+        val budget = (availableMemory / 8).coerceIn(4L shl 20, 256L shl 20)
+        return (budget / 2 / bytesPerSample).coerceIn(1L, numTrainings.toLong()).toInt()
+    }
+
+    private fun availableMemoryBytes(): Long {
+        return try {
+            // MemAvailable counts reclaimable page cache too, which is what the low-memory killer looks at
+            val line = File("/proc/meminfo").readLines().first { it.startsWith("MemAvailable:") }
+            line.split(Regex("\\s+"))[1].toLong() * 1024
+        } catch (e: Exception) {
+            Runtime.getRuntime().maxMemory()
+        }
+    }
+
+    private fun describe(header: DatasetHeader?): String {
+        if (header == null) return "raw float32"
+        val dtype = when (header.dtype) {
+            DatasetContainer.DTYPE_UINT8 -> "uint8"
+            DatasetContainer.DTYPE_UINT16 -> "uint16"
+            DatasetContainer.DTYPE_INT32 -> "int32"
+            else -> "float32"
+        }
+        return "container v${header.version} $dtype ${header.sampleCount} x ${header.height}x${header.width}x${header.channels}"
+    }
+
+    /** Checks the file against the task's layout and returns the payload size in bytes. */
+    private fun validateLayout(fileName: String, actualBytes: Long, header: DatasetHeader?, numTrainings: Int, valuesPerSample: Int, layout: String): Long {
+        if (header == null) {
+            val expectedBytes = numTrainings.toLong() * valuesPerSample * 4
+            validateSize(fileName, actualBytes, expectedBytes, "$layout floats")
+            return expectedBytes
+        }
+
+        if (header.sampleCount != numTrainings || header.valuesPerSample != valuesPerSample) {
+            Log.e(TAG, "--> preprocess(): $fileName holds ${header.sampleCount} samples of ${header.valuesPerSample} values, task expects $layout")
+            throw Exception("Data Initializer Error: $fileName holds ${header.sampleCount} samples of ${header.valuesPerSample} values, task expects $layout")
+        }
+        validateSize(fileName, actualBytes, header.payloadOffset + header.payloadBytes, "header + $layout values")
+        return header.payloadBytes
+    }
+
+    /**
+     * Verifies a container's payload CRC32. A full pass over the file is only paid once per download:
+     * the result is remembered in a task-prefixed sidecar keyed by size and modification time.
+     */
+    private fun verifyChecksum(task: Image_Task, fileName: String, channel: FileChannel, header: DatasetHeader?) {
+        if (header == null) return
+
+        val filesDir = "/data/data/com.example.fractal/files/"
+        val dataFile = File(filesDir, fileName)
+        val sidecar = File(filesDir, "${task.task_Id}_$fileName.verified")
+        val stamp = "${dataFile.length()}:${dataFile.lastModified()}:${header.checksum}"
+        if (sidecar.exists() && sidecar.readText() == stamp) return
+
+        val actual = DatasetContainer.payloadChecksum(channel, header)
+        if (actual != header.checksum) {
+            Log.e(TAG, "--> preprocess(): $fileName checksum ${actual.toString(16)} != header ${header.checksum.toString(16)}")
+            throw Exception("Data Initializer Error: $fileName is corrupt (checksum mismatch)")
+        }
+        sidecar.writeText(stamp)
+    }
+
+    private fun validateSize(fileName: String, actualBytes: Long, expectedBytes: Long, layout: String) {
+        if (actualBytes != expectedBytes) {
+            Log.e(TAG, "--> preprocess(): $fileName is $actualBytes bytes, expected $expectedBytes ($layout)")
+            throw Exception("Data Initializer Error: $fileName is $actualBytes bytes, expected $expectedBytes ($layout)")
+        }
+    }
+
+    private fun mapReadOnly(channel: FileChannel, header: DatasetHeader?, bytes: Long): ByteBuffer {
+        return channel.map(FileChannel.MapMode.READ_ONLY, header?.payloadOffset ?: 0L, bytes)
+    }
+
+    private fun readFully(channel: FileChannel, header: DatasetHeader?, bytes: Long): ByteBuffer {
+        val buffer = ByteBuffer.allocateDirect(bytes.toInt()).order(ByteOrder.nativeOrder())
+        var position = header?.payloadOffset ?: 0L
+        // FileChannel.read() may return short; loop until the buffer is full
+        while (buffer.hasRemaining()) {
+            val read = channel.read(buffer, position)
+            if (read < 0) {
+                throw Exception("Data Initializer Error: Unexpected end of file after ${buffer.position()} of $bytes bytes")
+            }
+            position += read
+        }
+        buffer.flip()
+        return buffer
+    }
 }
\ No newline at end of file
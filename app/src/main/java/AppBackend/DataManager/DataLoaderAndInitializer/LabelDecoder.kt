@@ -0,0 +1,88 @@
+package AppBackend.DataManager.DataLoaderAndInitializer
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+
+/**
+ * Turns stored labels into the one-hot rows of the label tensor.
+ * Each decoder keeps its own cursor over the shared storage: use [duplicate] for another consumer.
+ */
+interface LabelDecoder {
+    val numClasses: Int
+
+    /** Appends the one-hot rows of [count] samples starting at [firstSample] to [target]. */
+    fun copy(firstSample: Int, count: Int, target: FloatBuffer)
+
+    /** Class of [sample] (argmax for one-hot rows, -1 when it has none). */
+    fun classOf(sample: Int): Int
+
+    fun duplicate(): LabelDecoder
+
+    companion object {
+        /** Decoder for a label payload: class indices when the container holds one value per sample, otherwise one-hot rows. */
+        fun of(payload: ByteBuffer, header: DatasetHeader?, numClasses: Int): LabelDecoder {
+            return if (header != null && header.valuesPerSample == 1 && numClasses > 1) {
+                ClassIndexLabels(payload, header.dtype, numClasses)
+            } else {
+                OneHotLabels(PixelDecoder.of(payload, header), numClasses)
+            }
+        }
+
+        fun oneHot(values: FloatBuffer, numClasses: Int): LabelDecoder = OneHotLabels(PixelDecoder.float32(values), numClasses)
+    }
+}
+
+/** Legacy layout: NUM_CLASSES float32 values per sample, bulk-copied. */
+class OneHotLabels(private val values: PixelDecoder, override val numClasses: Int) : LabelDecoder {
+
+    override fun copy(firstSample: Int, count: Int, target: FloatBuffer) {
+        values.copy(firstSample * numClasses, count * numClasses, target)
+    }
+
+    override fun classOf(sample: Int): Int {
+        var best = -1
+        var bestValue = 0f
+        for (c in 0 until numClasses) {
+            val v = values.value(sample * numClasses + c)
+            if (v > bestValue) {
+                bestValue = v
+                best = c
+            }
+        }
+        return best
+    }
+
+    override fun duplicate(): LabelDecoder = OneHotLabels(values.duplicate(), numClasses)
+}
+
+/**
+ * Sparse layout: one uint8/uint16/int32 class index per sample (little-endian), expanded into a
+ * one-hot row at copy time. Indices are not range-checked here: Image_DataInitializer rejects a label
+ * file holding any index outside 0 until NUM_CLASSES before a decoder is built.
+ */
+class ClassIndexLabels(
+    private val storage: ByteBuffer,
+    private val dtype: Int,
+    override val numClasses: Int
+) : LabelDecoder {
+
+    private val indices: ByteBuffer = storage.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+
+    override fun copy(firstSample: Int, count: Int, target: FloatBuffer) {
+        for (sample in firstSample until firstSample + count) {
+            val cls = classOf(sample)
+            for (c in 0 until numClasses) {
+                target.put(if (c == cls) 1f else 0f)
+            }
+        }
+    }
+
+    override fun classOf(sample: Int): Int = when (dtype) {
+        DatasetContainer.DTYPE_UINT8 -> indices.get(sample).toInt() and 0xFF
+        DatasetContainer.DTYPE_UINT16 -> indices.getShort(sample * 2).toInt() and 0xFFFF
+        else -> indices.getInt(sample * 4)
+    }
+
+    override fun duplicate(): LabelDecoder = ClassIndexLabels(storage, dtype, numClasses)
+}
@@ -0,0 +1,81 @@
+package AppBackend.DataManager.DataLoaderAndInitializer
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+import java.nio.ShortBuffer
+
+/**
+ * Copies stored values into a float tensor, converting on the fly.
+ * float32 storage is a plain bulk copy; uint8 storage is widened and normalized (value * scale + offset)
+ * directly into the target, so no float copy of the dataset ever exists. float16 storage is widened the same way.
+ *
+ * Each decoder keeps its own cursor over the shared storage: use [duplicate] for another consumer.
+ */
+class PixelDecoder private constructor(
+    private val floatStorage: FloatBuffer?,
+    private val byteStorage: ByteBuffer?,
+    private val scale: Float,
+    private val offset: Float,
+    private val halfStorage: ShortBuffer? = null
+) {
+    private val floats: FloatBuffer? = floatStorage?.duplicate()
+    private val bytes: ByteBuffer? = byteStorage?.duplicate()
+    private val halves: ShortBuffer? = halfStorage?.duplicate()
+
+    val valueCount: Int = floatStorage?.capacity() ?: halfStorage?.capacity() ?: byteStorage!!.capacity()
+
+    /** Appends [count] values starting at value index [start] to [target]. */
+    fun copy(start: Int, count: Int, target: FloatBuffer) {
+        val source = floats
+        if (source != null) {
+            source.limit(start + count)
+            source.position(start)
+            target.put(source)
+            return
+        }
+
+        val packed = halves
+        if (packed != null) {
+            for (i in start until start + count) {
+                target.put(Float16.toFloat(packed.get(i)))
+            }
+            return
+        }
+
+        val pixels = bytes!!
+        for (i in start until start + count) {
+            target.put((pixels.get(i).toInt() and 0xFF) * scale + offset)
+        }
+    }
+
+    /** Single decoded value (absolute read, cursor untouched). */
+    fun value(index: Int): Float {
+        val source = floats
+        val packed = halves
+        return when {
+            source != null -> source.get(index)
+            packed != null -> Float16.toFloat(packed.get(index))
+            else -> (bytes!!.get(index).toInt() and 0xFF) * scale + offset
+        }
+    }
+
+    fun duplicate(): PixelDecoder = PixelDecoder(floatStorage, byteStorage, scale, offset, halfStorage)
+
+    companion object {
+        fun float32(values: FloatBuffer): PixelDecoder = PixelDecoder(values, null, 1f, 0f)
+
+        fun uint8(pixels: ByteBuffer, scale: Float, offset: Float): PixelDecoder = PixelDecoder(null, pixels, scale, offset)
+
+        fun float16(values: ShortBuffer): PixelDecoder = PixelDecoder(null, null, 1f, 0f, values)
+
+        /** Decoder for a container payload (or a legacy raw float32 file when [header] is null). */
+        fun of(payload: ByteBuffer, header: DatasetHeader?): PixelDecoder {
+            return when {
+                header != null && header.dtype == DatasetContainer.DTYPE_UINT8 -> uint8(payload, header.scale, header.offset)
+                header != null && header.dtype == DatasetContainer.DTYPE_FLOAT16 -> float16(payload.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer())
+                else -> float32(payload.order(ByteOrder.nativeOrder()).asFloatBuffer())
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package AppBackend.DataManager.DataLoaderAndInitializer
+
+import java.nio.FloatBuffer
+
+/**
+ * Dataset held in memory (memory-mapped files or direct buffers): every sample is always available.
+ * Images may be stored as float32 or uint8 and labels as one-hot rows or class indices;
+ * the decoders expand them while copying.
+ */
+class ResidentImageDataset(
+    private val images: PixelDecoder,
+    private val labels: LabelDecoder,
+    override val imageSize: Int,
+    override val labelSize: Int
+) : ImageDataset {
+
+    constructor(images: FloatBuffer, labels: FloatBuffer, imageSize: Int, labelSize: Int) :
+            this(PixelDecoder.float32(images), LabelDecoder.oneHot(labels, labelSize), imageSize, labelSize)
+
+    override val sampleCount: Int = images.valueCount / imageSize
+    override val blockSize: Int get() = sampleCount
+
+    override fun openReader(): SampleReader = object : SampleReader {
+        // Private cursors over the dataset, so the shared buffers' position/limit are never touched
+        private val imageView = images.duplicate()
+        private val labelView = labels.duplicate()
+
+        override fun copySample(sample: Int, image: FloatBuffer, label: FloatBuffer) {
+            imageView.copy(sample * imageSize, imageSize, image)
+            labelView.copy(sample, 1, label)
+        }
+
+        override fun copyImage(sample: Int, image: FloatBuffer) {
+            imageView.copy(sample * imageSize, imageSize, image)
+        }
+
+        override fun labelOf(sample: Int): Int = labelView.classOf(sample)
+
+        override fun copyRange(firstSample: Int, count: Int, image: FloatBuffer, label: FloatBuffer) {
+            imageView.copy(firstSample * imageSize, count * imageSize, image)
+            labelView.copy(firstSample, count, label)
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package AppBackend.DataManager.DataLoaderAndInitializer
+
+import android.util.Log
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Dataset larger than RAM: only two windows of [windowSamples] consecutive samples are resident.
+ *
+ * One window serves reads while the other is filled from disk with the block that comes next in the
+ * epoch's visiting order (see [onEpochOrder]), so disk reads overlap training. Visiting orders should be
+ * block-local (SamplePermutation with blockSize = [blockSize]) - a fully random order would refill a window
+ * on almost every sample. Windows hold the stored bytes (uint8 or float32); samples are decoded while copied.
+ */
+class StreamingImageDataset(
+    imageFile: File,
+    labelFile: File,
+    override val sampleCount: Int,
+    override val imageSize: Int,
+    override val labelSize: Int,
+    private val windowSamples: Int,
+    private val imageHeader: DatasetHeader? = null,
+    private val labelHeader: DatasetHeader? = null
+) : ImageDataset {
+
+    private val TAG = "StreamingDataset"
+
+    private val imageChannel: FileChannel = RandomAccessFile(imageFile, "r").channel
+    private val labelChannel: FileChannel = RandomAccessFile(labelFile, "r").channel
+
+    private val imageBytesPerValue = imageHeader?.bytesPerValue ?: 4
+    private val labelBytesPerValue = labelHeader?.bytesPerValue ?: 4
+    // Class-index label files store one value per sample instead of a one-hot row
+    private val storedLabelValues = labelHeader?.valuesPerSample ?: labelSize
+
+    private inner class Window {
+        val imageBytes: ByteBuffer = ByteBuffer.allocateDirect(windowSamples * imageSize * imageBytesPerValue).order(ByteOrder.nativeOrder())
+        val labelBytes: ByteBuffer = ByteBuffer.allocateDirect(windowSamples * storedLabelValues * labelBytesPerValue).order(ByteOrder.nativeOrder())
+        val images: PixelDecoder = PixelDecoder.of(imageBytes, imageHeader)
+        val labels: LabelDecoder = LabelDecoder.of(labelBytes, labelHeader, labelSize)
+        var block = -1
+    }
+
+    private val windows = arrayOf(Window(), Window())
+    private var active = 0
+
+    private val blockCount = (sampleCount + windowSamples - 1) / windowSamples
+    // Block visited after block b in the current epoch (-1: unknown / last)
+    private val nextBlock = IntArray(blockCount) { if (it + 1 < blockCount) it + 1 else -1 }
+
+    private val lock = ReentrantLock()
+    private val io = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "Fractal-DatasetIO").apply { isDaemon = true }
+    }
+    private var readAhead: Future<*>? = null
+
+    // --- Instrumentation ---
+    // Refills are counted on the read-ahead thread as well as on readers, stalls under the lock; close() reads both
+    private val refills = AtomicInteger()
+    private val stalls = AtomicLong()
+    val refillCount: Int get() = refills.get()
+    val stallNanos: Long get() = stalls.get()
+
+    override val blockSize: Int get() = windowSamples
+
+    override fun openReader(): SampleReader = object : SampleReader {
+        override fun copySample(sample: Int, image: FloatBuffer, label: FloatBuffer) {
+            lock.withLock {
+                val window = ensureResident(sample)
+                val offset = sample - window.block * windowSamples
+                window.images.copy(offset * imageSize, imageSize, image)
+                window.labels.copy(offset, 1, label)
+            }
+        }
+
+        override fun copyImage(sample: Int, image: FloatBuffer) {
+            lock.withLock {
+                val window = ensureResident(sample)
+                window.images.copy((sample - window.block * windowSamples) * imageSize, imageSize, image)
+            }
+        }
+
+        override fun labelOf(sample: Int): Int {
+            lock.withLock {
+                val window = ensureResident(sample)
+                return window.labels.classOf(sample - window.block * windowSamples)
+            }
+        }
+    }
+
+    override fun onEpochOrder(order: IntArray) {
+        lock.withLock {
+            nextBlock.fill(-1)
+            var previous = -1
+            for (sample in order) {
+                val block = sample / windowSamples
+                if (block != previous) {
+                    if (previous >= 0) nextBlock[previous] = block
+                    previous = block
+                }
+            }
+        }
+    }
+
+    override fun close() {
+        io.shutdownNow()
+        imageChannel.close()
+        labelChannel.close()
+        Log.i(TAG, String.format("Streamed %d windows of %d samples, %.1f ms waiting on disk", refillCount, windowSamples, stallNanos / 1_000_000f))
+    }
+
+    private fun ensureResident(sample: Int): Window {
+        val block = sample / windowSamples
+        if (windows[active].block == block) return windows[active]
+
+        val spare = 1 - active
+        val waitStart = System.nanoTime()
+        val pending = readAhead
+        if (pending != null) {
+            // The read-ahead writes into the spare window: it has to finish before the spare is touched
+            pending.get()
+            readAhead = null
+        }
+        if (windows[spare].block != block) {
+            readBlock(windows[spare], block)
+        }
+        stalls.addAndGet(System.nanoTime() - waitStart)
+        active = spare
+
+        // Read the next block of the visiting order into the window we just left
+        val next = nextBlock[block]
+        if (next >= 0) {
+            val target = windows[1 - active]
+            readAhead = io.submit(Runnable { readBlock(target, next) })
+        }
+        return windows[active]
+    }
+
+    private fun readBlock(window: Window, block: Int) {
+        val first = block * windowSamples
+        val count = minOf(windowSamples, sampleCount - first)
+        window.block = -1
+        val imageStart = (imageHeader?.payloadOffset ?: 0L) + first.toLong() * imageSize * imageBytesPerValue
+        val labelStart = (labelHeader?.payloadOffset ?: 0L) + first.toLong() * storedLabelValues * labelBytesPerValue
+        readFully(imageChannel, window.imageBytes, imageStart, count * imageSize * imageBytesPerValue)
+        readFully(labelChannel, window.labelBytes, labelStart, count * storedLabelValues * labelBytesPerValue)
+        window.block = block
+        refills.incrementAndGet()
+    }
+
+    private fun readFully(channel: FileChannel, target: ByteBuffer, filePosition: Long, bytes: Int) {
+        target.clear()
+        target.limit(bytes)
+        var position = filePosition
+        while (target.hasRemaining()) {
+            val read = channel.read(target, position)
+            if (read < 0) throw IllegalStateException("Unexpected end of dataset file at byte $position")
+            position += read
+        }
+    }
+}
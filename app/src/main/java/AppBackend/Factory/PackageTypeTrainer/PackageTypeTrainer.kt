@@ -3,11 +3,14 @@ package AppBackend.Factory.PackageTypeTrainer
 import android.content.Context
 import android.os.Build
 import androidx.annotation.RequiresApi
+import AppBackend.DataManager.Coreset.CoresetSelector
 import AppBackend.DataManager.DataLoaderAndInitializer.DataInitializer
+import AppBackend.DataManager.DataLoaderAndInitializer.ImageDataset
 import AppBackend.LocalTrainingModule.TrainingExecutor.Trainer
 import AppBackend.Network.ModelUpdateTransmission.ModelTransmission_DTO
 import AppBackend.Network.ModelUpdateTransmission.ModelTransmitter
 import AppBackend.ResourceManagement.OperationControl.OperationControl
+import AppBackend.TaskContainer.Image_Task
 import AppBackend.TaskContainer.Task
 import AppBackend.Validator.ModelInferenceValidator.InferenceValidator
 import AppFrontend.Flush.Flusher
@@ -29,10 +32,14 @@ class PackageTypeTrainer(
             return
         }
 
+        var data: Any? = null
         try {
             // Step 1: Preprocess
             callback?.onStatusUpdate("Preprocessing Local Data...")
-            val data = dataInitializer.preprocess(task)
+            data = dataInitializer.preprocess(task)
+
+            // Step 1b: Coreset (CORESET_FRACTION), selected once per dataset and reused by later epochs and rounds
+            if (task is Image_Task && data is ImageDataset && !CoresetSelector(task).prepare(data, callback)) return
 
             // Step 2: Train Model
             callback?.onStatusUpdate("Setting up AI Engine...")
@@ -44,16 +51,25 @@ class PackageTypeTrainer(
             // Check if user cancelled during training before proceeding
             if (callback?.isCancelled() == true) return
 
+            // A diverged run with no usable weights is not validated or uploaded, only reported
+            val outcome = trainer.outcome
+            if (outcome != null && outcome.aborted) {
+                callback?.onStatusUpdate("Task aborted: ${outcome.stopReason}")
+                ModelTransmitter().reportAborted(ModelTransmission_DTO(task, outcome))
+                Flusher().flushAll(task)
+                return
+            }
+
             // Step 3: Validate
             callback?.onStatusUpdate("Running Sanity Check...")
-            val validationResult = validator.infer(data, trainer.interpreter, task)
+            val validationResult = trainer.validate(data, validator)
             callback?.onValidationUpdate(validationResult)
 
             if (callback?.isCancelled() == true) return
 
             // --- Step 4: Transmit with INFINITE AUTO-RETRY & PAUSE CONTROL ---
             val opControl = OperationControl(context)
-            val transmissionDTO = ModelTransmission_DTO(task)
+            val transmissionDTO = ModelTransmission_DTO(task, trainer.outcome)
             val transmitter = ModelTransmitter()
             val flusher = Flusher()
 
@@ -112,6 +128,11 @@ class PackageTypeTrainer(
         } catch (e: Exception) {
             callback?.onStatusUpdate("Error: ${e.message}")
             Log.e(TAG, "Training error", e)
+        } finally {
+            // Streaming datasets hold open files and a reader thread
+            (data as? ImageDataset)?.close()
+            // The interpreter stays warm for the next task with the same model
+            trainer.releaseResources()
         }
     }
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import android.util.Log
 import AppBackend.DataManager.DataLoaderAndInitializer.DataInitializer_Factory
 import AppBackend.DataManager.DataLoaderAndInitializer.Image_DataInitializer_Factory
 import AppBackend.LocalTrainingModule.TrainingExecutor.Image_Trainer_Factory
+import AppBackend.LocalTrainingModule.TrainingExecutor.Reference_Trainer_Factory
 import AppBackend.LocalTrainingModule.TrainingExecutor.Trainer_Factory
 import AppBackend.TaskContainer.Image_Task_Factory
 import AppBackend.TaskContainer.Task_Factory
@@ -86,6 +87,10 @@ class PackageTypeTrainerBuilder : Builder {
                 Log.d(TAG, "Successfully initialized Image_Trainer_Factory")
                 Image_Trainer_Factory()
             }
+            "Reference_Trainer" -> {
+                Log.d(TAG, "Successfully initialized Reference_Trainer_Factory")
+                Reference_Trainer_Factory()
+            }
             else -> {
                 Log.e(TAG, "Failed to add Trainer: Unknown configuration '$trainer_name'")
                 throw IllegalArgumentException("Unknown Trainer configuration: $trainer_name")
@@ -0,0 +1,154 @@
+package AppBackend.LocalTrainingModule.ReferenceEngine
+
+import java.util.Random
+import kotlin.math.exp
+import kotlin.math.ln
+import kotlin.math.sqrt
+
+/**
+ * Fully connected classifier trained with mini-batch SGD on softmax cross-entropy: softmax regression when
+ * [layerSizes] is just [inputs, classes], a small ReLU MLP with hidden layers in between.
+ *
+ * Each layer's weights are one row-major [in x out] FloatArray plus a bias array. Activations and gradients live in
+ * per-layer scratch arrays sized for the largest batch seen so far, so a training step allocates nothing.
+ * Not thread-safe: one network per training loop (the products themselves run on [kernels]' pool).
+ */
+class DenseNetwork(val layerSizes: IntArray, private val kernels: MatrixKernels) {
+
+    init {
+        require(layerSizes.size >= 2 && layerSizes.all { it > 0 }) { "Invalid layer sizes ${layerSizes.joinToString()}" }
+    }
+
+    val layerCount: Int = layerSizes.size - 1
+    val inputSize: Int get() = layerSizes[0]
+    val classCount: Int get() = layerSizes[layerCount]
+
+    val weights: Array<FloatArray> = Array(layerCount) { FloatArray(layerSizes[it] * layerSizes[it + 1]) }
+    val biases: Array<FloatArray> = Array(layerCount) { FloatArray(layerSizes[it + 1]) }
+    val parameterCount: Long = (0 until layerCount).sumOf { layerSizes[it].toLong() * layerSizes[it + 1] + layerSizes[it + 1] }
+
+    private val weightGradients = Array(layerCount) { FloatArray(weights[it].size) }
+    private val biasGradients = Array(layerCount) { FloatArray(biases[it].size) }
+
+    // activations[0] is the caller's input batch, activations[l + 1] the output of layer l (probabilities last);
+    // deltas[l] is the loss gradient w.r.t. the pre-activation output of layer l
+    private val activations = Array(layerCount + 1) { FloatArray(0) }
+    private val deltas = Array(layerCount) { FloatArray(0) }
+    private var capacity = 0
+
+    /** He initialization for the ReLU layers and Glorot for the softmax layer, reproducible from [seed]. */
+    fun initialize(seed: Long) {
+        val random = Random(seed)
+        for (l in 0 until layerCount) {
+            val fanIn = layerSizes[l]
+            val fanOut = layerSizes[l + 1]
+            val limit = if (l < layerCount - 1) sqrt(6f / fanIn) else sqrt(6f / (fanIn + fanOut))
+            val layer = weights[l]
+            for (i in layer.indices) layer[i] = (random.nextFloat() * 2f - 1f) * limit
+            biases[l].fill(0f)
+        }
+    }
+
+    /** Class probabilities of the first [batch] samples of [images] ([batch x inputs]); scratch, valid until the next call. */
+    fun forward(images: FloatArray, batch: Int): FloatArray {
+        ensureCapacity(batch)
+        activations[0] = images
+        for (l in 0 until layerCount) {
+            val out = activations[l + 1]
+            kernels.multiply(activations[l], weights[l], out, batch, layerSizes[l], layerSizes[l + 1], biases[l])
+            if (l < layerCount - 1) relu(out, batch * layerSizes[l + 1]) else softmax(out, batch, layerSizes[l + 1])
+        }
+        return activations[layerCount]
+    }
+
+    /** Mean cross-entropy of the last [forward] against [labels] (one row of class targets per sample). */
+    fun loss(labels: FloatArray, batch: Int): Float {
+        val probabilities = activations[layerCount]
+        var sum = 0.0
+        for (i in 0 until batch * classCount) {
+            val target = labels[i]
+            if (target != 0f) sum -= target * ln(maxOf(probabilities[i], MIN_PROBABILITY).toDouble())
+        }
+        return (sum / batch).toFloat()
+    }
+
+    /** One SGD step on [batch] samples. Returns the batch's mean loss before the update. */
+    fun trainStep(images: FloatArray, labels: FloatArray, batch: Int, learningRate: Float): Float {
+        forward(images, batch)
+        val loss = loss(labels, batch)
+
+        // Softmax with cross-entropy: dL/dz = (p - y) / batch
+        val top = layerCount - 1
+        val probabilities = activations[layerCount]
+        val outputDelta = deltas[top]
+        val scale = 1f / batch
+        for (i in 0 until batch * classCount) outputDelta[i] = (probabilities[i] - labels[i]) * scale
+
+        for (l in top downTo 0) {
+            val inputs = layerSizes[l]
+            val outputs = layerSizes[l + 1]
+            kernels.multiplyTransposedA(activations[l], deltas[l], weightGradients[l], batch, inputs, outputs)
+            columnSums(deltas[l], biasGradients[l], batch, outputs)
+
+            if (l > 0) {
+                // Through this layer's (not yet updated) weights and the ReLU below it
+                val below = deltas[l - 1]
+                kernels.multiplyTransposedB(deltas[l], weights[l], below, batch, outputs, inputs)
+                val input = activations[l]
+                for (i in 0 until batch * inputs) if (input[i] <= 0f) below[i] = 0f
+            }
+        }
+
+        for (l in 0 until layerCount) {
+            descend(weights[l], weightGradients[l], learningRate)
+            descend(biases[l], biasGradients[l], learningRate)
+        }
+        return loss
+    }
+
+    private fun ensureCapacity(batch: Int) {
+        if (batch <= capacity) return
+        for (l in 0 until layerCount) {
+            activations[l + 1] = FloatArray(batch * layerSizes[l + 1])
+            deltas[l] = FloatArray(batch * layerSizes[l + 1])
+        }
+        capacity = batch
+    }
+
+    private fun relu(values: FloatArray, count: Int) {
+        for (i in 0 until count) if (values[i] < 0f) values[i] = 0f
+    }
+
+    private fun softmax(logits: FloatArray, rows: Int, cols: Int) {
+        for (r in 0 until rows) {
+            val offset = r * cols
+            var max = logits[offset]
+            for (j in 1 until cols) if (logits[offset + j] > max) max = logits[offset + j]
+            var sum = 0f
+            for (j in 0 until cols) {
+                val e = exp(logits[offset + j] - max)
+                logits[offset + j] = e
+                sum += e
+            }
+            val inverse = 1f / sum
+            for (j in 0 until cols) logits[offset + j] *= inverse
+        }
+    }
+
+    private fun columnSums(values: FloatArray, out: FloatArray, rows: Int, cols: Int) {
+        out.fill(0f)
+        for (r in 0 until rows) {
+            val offset = r * cols
+            for (j in 0 until cols) out[j] += values[offset + j]
+        }
+    }
+
+    private fun descend(parameters: FloatArray, gradients: FloatArray, learningRate: Float) {
+        for (i in parameters.indices) parameters[i] -= learningRate * gradients[i]
+    }
+
+    companion object {
+        // Keeps log() finite when a probability underflows to zero
+        private const val MIN_PROBABILITY = 1e-12f
+    }
+}
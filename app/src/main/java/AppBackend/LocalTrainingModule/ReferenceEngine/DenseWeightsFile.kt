@@ -0,0 +1,95 @@
+package AppBackend.LocalTrainingModule.ReferenceEngine
+
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.zip.CRC32
+
+/**
+ * On-disk format of a [DenseNetwork]: the initial weights a server ships as MODEL_FILENAME, and the trained
+ * weights uploaded as CKPT_FILENAME.
+ *
+ * Little-endian: magic "FDNW", version, layer-size count and the sizes, then per layer its [in x out] row-major
+ * weights followed by its biases (float32), and a CRC32 of everything before it as the 8-byte trailer.
+ */
+object DenseWeightsFile {
+
+    private const val MAGIC = 0x574E4446    // "FDNW" read as a little-endian int
+    private const val VERSION = 1
+
+    // Longest chain of layers a file may describe (guards against reading garbage as a size list)
+    private const val MAX_LAYER_SIZES = 16
+
+    /** Layer sizes described by [buffer], or null when it is not in this format. */
+    fun layerSizesOf(buffer: ByteBuffer): IntArray? {
+        val view = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+        view.rewind()
+        if (view.remaining() < 12 || view.int != MAGIC || view.int != VERSION) return null
+
+        val count = view.int
+        if (count < 2 || count > MAX_LAYER_SIZES || view.remaining() < count * 4) return null
+        val sizes = IntArray(count) { view.int }
+        return if (sizes.all { it > 0 }) sizes else null
+    }
+
+    /** Loads [buffer] into [network]; false (network untouched) when the format, sizes or checksum do not match. */
+    fun load(buffer: ByteBuffer, network: DenseNetwork): Boolean {
+        val sizes = layerSizesOf(buffer) ?: return false
+        if (!sizes.contentEquals(network.layerSizes)) return false
+
+        val payloadEnd = headerBytes(sizes.size) + network.parameterCount * 4
+        val view = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+        view.rewind()
+        if (view.remaining().toLong() != payloadEnd + 8) return false
+
+        val crc = CRC32()
+        val chunk = ByteArray(64 * 1024)
+        while (view.position() < payloadEnd) {
+            val length = minOf(chunk.size.toLong(), payloadEnd - view.position()).toInt()
+            view.get(chunk, 0, length)
+            crc.update(chunk, 0, length)
+        }
+        if (view.long != crc.value) return false
+
+        view.position(headerBytes(sizes.size).toInt())
+        val values = view.asFloatBuffer()
+        for (l in 0 until network.layerCount) {
+            values.get(network.weights[l])
+            values.get(network.biases[l])
+        }
+        return true
+    }
+
+    /** Writes [network] to [file] atomically: a .part file, synced, then renamed over it. */
+    fun write(network: DenseNetwork, file: File) {
+        val sizes = network.layerSizes
+        val payloadEnd = (headerBytes(sizes.size) + network.parameterCount * 4).toInt()
+        val buffer = ByteBuffer.allocate(payloadEnd + 8).order(ByteOrder.LITTLE_ENDIAN)
+
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(sizes.size)
+        for (size in sizes) buffer.putInt(size)
+        val values = buffer.asFloatBuffer()
+        for (l in 0 until network.layerCount) {
+            values.put(network.weights[l])
+            values.put(network.biases[l])
+        }
+
+        val crc = CRC32()
+        crc.update(buffer.array(), 0, payloadEnd)
+        buffer.putLong(payloadEnd, crc.value)
+
+        val part = File(file.parentFile, file.name + ".part")
+        FileOutputStream(part).use { out ->
+            out.write(buffer.array())
+            out.fd.sync()
+        }
+        if (!part.renameTo(file)) {
+            part.delete()
+            throw IOException("Could not move ${part.name} into place")
+        }
+    }
+
+    private fun headerBytes(sizeCount: Int): Long = 12L + sizeCount * 4L
+}
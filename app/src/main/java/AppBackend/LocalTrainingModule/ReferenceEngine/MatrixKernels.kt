@@ -0,0 +1,108 @@
+package AppBackend.LocalTrainingModule.ReferenceEngine
+
+import java.util.Arrays
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveAction
+
+/**
+ * Row-major float32 matrix products for the reference engine, over plain FloatArrays.
+ *
+ * Loops run i-k-j, so the innermost loop walks its operands and the output contiguously (no strided column
+ * reads, and the JIT can vectorize it). Large products are split into bands of output rows on a fork-join pool of
+ * [parallelism] threads. Each band owns disjoint output rows and sums in the same order as the serial loop, so the
+ * result is bit-identical for any thread count.
+ */
+class MatrixKernels(val parallelism: Int = Runtime.getRuntime().availableProcessors()) : AutoCloseable {
+
+    private val pool: ForkJoinPool? = if (parallelism > 1) ForkJoinPool(parallelism) else null
+
+    /** out[rows x cols] = a[rows x inner] * b[inner x cols], plus [bias] on every row when given. */
+    fun multiply(a: FloatArray, b: FloatArray, out: FloatArray, rows: Int, inner: Int, cols: Int, bias: FloatArray? = null) {
+        forRows(rows, inner.toLong() * cols) { from, to ->
+            for (i in from until to) {
+                val outRow = i * cols
+                if (bias != null) System.arraycopy(bias, 0, out, outRow, cols) else Arrays.fill(out, outRow, outRow + cols, 0f)
+                val aRow = i * inner
+                for (k in 0 until inner) {
+                    val aik = a[aRow + k]
+                    // ReLU activations are mostly zeros
+                    if (aik == 0f) continue
+                    val bRow = k * cols
+                    for (j in 0 until cols) out[outRow + j] += aik * b[bRow + j]
+                }
+            }
+        }
+    }
+
+    /** out[inner x cols] = transpose(a[rows x inner]) * d[rows x cols]: the weight gradient of a layer. */
+    fun multiplyTransposedA(a: FloatArray, d: FloatArray, out: FloatArray, rows: Int, inner: Int, cols: Int) {
+        forRows(inner, rows.toLong() * cols) { from, to ->
+            Arrays.fill(out, from * cols, to * cols, 0f)
+            for (i in 0 until rows) {
+                val aRow = i * inner
+                val dRow = i * cols
+                for (k in from until to) {
+                    val aik = a[aRow + k]
+                    if (aik == 0f) continue
+                    val outRow = k * cols
+                    for (j in 0 until cols) out[outRow + j] += aik * d[dRow + j]
+                }
+            }
+        }
+    }
+
+    /** out[rows x inner] = d[rows x cols] * transpose(b[inner x cols]): the gradient w.r.t. a layer's input. */
+    fun multiplyTransposedB(d: FloatArray, b: FloatArray, out: FloatArray, rows: Int, cols: Int, inner: Int) {
+        forRows(rows, inner.toLong() * cols) { from, to ->
+            for (i in from until to) {
+                val dRow = i * cols
+                val outRow = i * inner
+                for (k in 0 until inner) {
+                    val bRow = k * cols
+                    var sum = 0f
+                    for (j in 0 until cols) sum += d[dRow + j] * b[bRow + j]
+                    out[outRow + k] = sum
+                }
+            }
+        }
+    }
+
+    override fun close() {
+        pool?.shutdown()
+    }
+
+    private fun interface RowBody {
+        fun run(from: Int, to: Int)
+    }
+
+    /** Runs [body] over [0, rows), in parallel bands when the product is large enough to pay for the fork. */
+    private fun forRows(rows: Int, workPerRow: Long, body: RowBody) {
+        val pool = pool
+        if (pool == null || rows < 2 || rows * workPerRow < PARALLEL_THRESHOLD) {
+            body.run(0, rows)
+            return
+        }
+        // A few bands per thread for balance, none smaller than MIN_BAND_WORK
+        val bands = parallelism * BANDS_PER_THREAD
+        val grain = maxOf((rows + bands - 1) / bands, (MIN_BAND_WORK / maxOf(1L, workPerRow)).toInt(), 1)
+        pool.invoke(RowBand(body, 0, rows, grain))
+    }
+
+    private class RowBand(private val body: RowBody, private val from: Int, private val to: Int, private val grain: Int) : RecursiveAction() {
+        override fun compute() {
+            if (to - from <= grain) {
+                body.run(from, to)
+                return
+            }
+            val mid = (from + to) ushr 1
+            invokeAll(RowBand(body, from, mid, grain), RowBand(body, mid, to, grain))
+        }
+    }
+
+    companion object {
+        // Multiply-adds below which a product stays on the calling thread
+        private const val PARALLEL_THRESHOLD = 64_000L
+        private const val MIN_BAND_WORK = 16_000L
+        private const val BANDS_PER_THREAD = 4
+    }
+}
@@ -0,0 +1,158 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Prepares the batch of a given global step, in two phases:
+ * [select] picks the step's sample indices (and, when they are drawn at random, the probability each was drawn with)
+ * and is called once per step, strictly in step order (so per-epoch state such as the shuffled order is only ever
+ * touched by one thread at a time); [fill] copies and augments those samples into a feeder and may run concurrently
+ * for different steps.
+ * An interface with primitive parameters (not a lambda type) so the step index is never boxed.
+ */
+interface BatchFillPlan {
+    fun select(globalStep: Int, batchIndices: IntArray, drawProbabilities: FloatArray)
+    fun fill(feeder: TrainingBatchFeeder, globalStep: Int, batchIndices: IntArray, drawProbabilities: FloatArray)
+}
+
+/**
+ * Producer/consumer ring between data preparation and the train signature.
+ *
+ * A bounded pool of loader threads fills step N+1.. into the free slots while the training thread works on step N.
+ * Steps are claimed in order, so each worker prepares a different upcoming batch; with augmentation this makes
+ * throughput scale with the worker count. Step g always lives in slot (g - firstStep) % slots.size, so batches are
+ * handed out in order and the workers block once every slot holds an unconsumed batch (backpressure = ring depth).
+ * With a single slot no thread is started and acquire() fills the batch inline.
+ */
+class BatchPrefetcher(
+    private val slots: List<TrainingBatchFeeder>,
+    private val plan: BatchFillPlan,
+    private val firstStep: Int,
+    private val endStep: Int,
+    workers: Int = 1
+) {
+    private val lock = ReentrantLock()
+    private val slotChanged = lock.newCondition()
+
+    private val slotStep = IntArray(slots.size) { firstStep + it }
+    private val slotReady = BooleanArray(slots.size)
+    private var nextStep = firstStep
+
+    // One slot is always with the consumer, so more workers than slots - 1 could never run
+    val workerCount: Int = if (slots.size > 1) workers.coerceIn(1, slots.size - 1) else 0
+    private val inlineIndices = IntArray(slots[0].batchSize)
+    private val inlineProbabilities = FloatArray(slots[0].batchSize)
+
+    @Volatile private var stopped = false
+    private var failure: Throwable? = null
+    private val loaders = ArrayList<Thread>()
+
+    // --- Instrumentation (training thread only) ---
+    var stallNanos: Long = 0L
+        private set
+    var stallCount: Int = 0
+        private set
+
+    val isAsync: Boolean get() = slots.size > 1
+
+    fun start() {
+        if (!isAsync || firstStep >= endStep) return
+
+        for (worker in 0 until workerCount) {
+            loaders.add(Thread({ produce() }, "Fractal-Prefetch-$worker").apply {
+                isDaemon = true
+                start()
+            })
+        }
+    }
+
+    /** Returns the feeder holding [globalStep]. Blocks (and counts the stall) if the loaders are behind. */
+    fun acquire(globalStep: Int): TrainingBatchFeeder {
+        if (!isAsync) {
+            val feeder = slots[0]
+            plan.select(globalStep, inlineIndices, inlineProbabilities)
+            plan.fill(feeder, globalStep, inlineIndices, inlineProbabilities)
+            return feeder
+        }
+
+        val slot = slotOf(globalStep)
+        lock.withLock {
+            if (isFilled(slot, globalStep)) return slots[slot]
+
+            val waitStart = System.nanoTime()
+            while (!isFilled(slot, globalStep)) {
+                failure?.let { throw IllegalStateException("Batch prefetch failed: ${it.message}", it) }
+                if (stopped) throw IllegalStateException("Batch prefetcher already closed")
+                slotChanged.await()
+            }
+            stallNanos += System.nanoTime() - waitStart
+            stallCount++
+            return slots[slot]
+        }
+    }
+
+    /** Hands the slot of [globalStep] back to the loaders once the train call has consumed it. */
+    fun release(globalStep: Int) {
+        if (!isAsync) return
+
+        val slot = slotOf(globalStep)
+        lock.withLock {
+            slotReady[slot] = false
+            slotStep[slot] = globalStep + slots.size
+            slotChanged.signalAll()
+        }
+    }
+
+    fun close() {
+        stopped = true
+        lock.withLock { slotChanged.signalAll() }
+        for (loader in loaders) {
+            loader.interrupt()
+            loader.join(1000)
+        }
+        loaders.clear()
+    }
+
+    private fun produce() {
+        // Indices are worker-owned: the slot's previous occupant may still be filling when the next step is selected
+        val batchIndices = IntArray(slots[0].batchSize)
+        val drawProbabilities = FloatArray(slots[0].batchSize)
+        try {
+            while (true) {
+                val step: Int
+                val slot: Int
+                lock.withLock {
+                    if (stopped || nextStep >= endStep) return
+                    step = nextStep++
+                    slot = slotOf(step)
+                    plan.select(step, batchIndices, drawProbabilities)
+
+                    // Backpressure: wait until the consumer released the previous occupant of this slot
+                    while (!stopped && (slotReady[slot] || slotStep[slot] != step)) {
+                        slotChanged.await()
+                    }
+                }
+                if (stopped) return
+
+                plan.fill(slots[slot], step, batchIndices, drawProbabilities)
+
+                lock.withLock {
+                    slotReady[slot] = true
+                    slotChanged.signalAll()
+                }
+            }
+        } catch (e: InterruptedException) {
+            // close() interrupts a loader blocked on a full ring
+        } catch (e: Throwable) {
+            lock.withLock {
+                failure = e
+                slotChanged.signalAll()
+            }
+        }
+    }
+
+    private fun slotOf(globalStep: Int): Int = (globalStep - firstStep) % slots.size
+
+    private fun isFilled(slot: Int, globalStep: Int): Boolean = slotReady[slot] && slotStep[slot] == globalStep
+}
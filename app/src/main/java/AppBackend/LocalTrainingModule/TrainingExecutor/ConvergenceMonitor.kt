@@ -0,0 +1,109 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+/**
+ * Decides when further epochs stop paying off.
+ *
+ * Per step it only accumulates the loss (two primitives, no allocation). At each epoch end the monitored metric -
+ * the epoch's mean training loss, or the newest held-out loss when overlapped validation supplies one - is compared
+ * with the best so far: it has to drop by at least [minDelta] (relative) to count as an improvement.
+ * After [patience] epochs without one, and never before [minEpochs] epochs, training stops. [patience] 0 disables it.
+ * The two losses are not comparable, so the history starts over whenever the monitored one changes.
+ */
+class ConvergenceMonitor(
+    private val patience: Int,
+    private val minDelta: Float,
+    private val minEpochs: Int,
+    preferValidation: Boolean
+) {
+    // --- Running aggregate of the current epoch (training thread) ---
+    var epochLossSum: Float = 0f
+        private set
+    var epochLossSteps: Int = 0
+        private set
+
+    val epochMeanLoss: Float get() = epochLossSum / maxOf(1, epochLossSteps)
+
+    // --- Across epochs, carried in checkpoints ---
+    var bestLoss: Float = 0f
+        private set
+    var monitoredEpochs: Int = 0
+        private set
+    var epochsWithoutImprovement: Int = 0
+        private set
+    // Which loss the history above describes: held-out (true) or training
+    var historyHeldOut: Boolean = false
+        private set
+
+    // Held-out loss, published by the validation thread (epoch first read, last written)
+    @Volatile private var validationLoss = 0f
+    @Volatile private var validationEpoch = -1
+    private var consumedValidationEpoch = -1
+
+    /** Whether held-out losses are expected; cleared when overlapped validation switches itself off. */
+    var validationAvailable: Boolean = preferValidation
+
+    val isEnabled: Boolean get() = patience > 0
+
+    /** Resumes the across-epoch state saved in a checkpoint. */
+    fun restore(best: Float, monitored: Int, withoutImprovement: Int, heldOut: Boolean) {
+        bestLoss = best
+        monitoredEpochs = monitored
+        epochsWithoutImprovement = withoutImprovement
+        historyHeldOut = heldOut
+    }
+
+    /** Starts an epoch's aggregate, from zero or from a mid-epoch checkpoint. */
+    fun beginEpoch(lossSum: Float, lossSteps: Int) {
+        epochLossSum = lossSum
+        epochLossSteps = lossSteps
+    }
+
+    fun recordStep(loss: Float) {
+        epochLossSum += loss
+        epochLossSteps++
+    }
+
+    /** Called from the validation thread with the held-out loss of the checkpoint after [epochsCompleted] epochs. */
+    fun recordValidation(epochsCompleted: Int, loss: Float) {
+        validationLoss = loss
+        validationEpoch = epochsCompleted
+    }
+
+    /**
+     * Folds the finished epoch into the history. Returns why training should stop after [epochsCompleted] epochs,
+     * or null to continue. With validation, an epoch whose evaluation has not arrived yet is not judged
+     * (results lag by about one epoch).
+     */
+    fun onEpochEnd(epochsCompleted: Int): String? {
+        val metric: Float
+        val heldOut = validationAvailable
+        if (heldOut) {
+            val epoch = validationEpoch
+            if (epoch <= consumedValidationEpoch) return null
+            consumedValidationEpoch = epoch
+            metric = validationLoss
+        } else {
+            metric = epochMeanLoss
+        }
+        if (!metric.isFinite()) return null
+
+        // Validation switched off (or on) since the history was recorded, possibly in an earlier session
+        if (heldOut != historyHeldOut) {
+            monitoredEpochs = 0
+            epochsWithoutImprovement = 0
+            historyHeldOut = heldOut
+        }
+
+        if (monitoredEpochs == 0 || metric < bestLoss * (1f - minDelta)) {
+            bestLoss = metric
+            epochsWithoutImprovement = 0
+        } else {
+            epochsWithoutImprovement++
+        }
+        monitoredEpochs++
+
+        if (!isEnabled || epochsCompleted < minEpochs || epochsWithoutImprovement < patience) return null
+        val source = if (heldOut) "Held-out loss" else "Training loss"
+        return String.format("%s plateaued at %.4f (under %.1f%% better for %d epochs)", source, bestLoss, minDelta * 100, patience)
+    }
+}
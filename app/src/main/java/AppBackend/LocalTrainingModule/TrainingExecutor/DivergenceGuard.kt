@@ -0,0 +1,109 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+import android.util.Log
+import org.tensorflow.lite.Interpreter
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+
+/** Thrown out of the epoch loop when training has diverged; [reason] goes to the log, the UI and the server. */
+class TrainingDivergedException(val reason: String) : Exception(reason)
+
+/**
+ * Numeric health checks for a training run.
+ *
+ * [checkLoss] runs every step on the value already read from the loss buffer: a non-finite loss, or one that
+ * explodes far above its running average, means divergence. [probeWeights] runs periodically and before every
+ * checkpoint, so only healthy weights are ever journaled and a rollback always lands on a good generation.
+ * TFLite exposes no weight tensors, so the probe uses a `weight_norm` signature when the model exports one
+ * and otherwise runs `infer` on a fixed input: NaN/Inf weights always surface in the logits.
+ */
+class DivergenceGuard(
+    private val explosionFactor: Float = 100f,
+    val probeIntervalSteps: Int = 200
+) {
+    private val TAG = "DivergenceGuard"
+
+    private var lossAverage = -1f
+    private var healthySteps = 0
+
+    // Probe buffers, sized from the model on first use and reused afterwards
+    private var probeInputs: MutableMap<String, Any>? = null
+    private var probeOutputs: MutableMap<String, Any>? = null
+    private var probeSignature = ""
+
+    /** Returns why [loss] signals divergence, or null when it looks healthy. */
+    fun checkLoss(loss: Float): String? {
+        if (!loss.isFinite()) return "Loss became $loss"
+
+        if (healthySteps >= WARMUP_STEPS && lossAverage > 0f && loss > lossAverage * explosionFactor) {
+            return String.format("Loss exploded to %.4g (running average %.4g)", loss, lossAverage)
+        }
+        lossAverage = if (lossAverage < 0f) loss else lossAverage * 0.98f + loss * 0.02f
+        healthySteps++
+        return null
+    }
+
+    /** Returns why the weights of [interpreter] look broken, or null when they are finite. */
+    fun probeWeights(interpreter: Interpreter): String? {
+        return try {
+            val inputs = probeInputs ?: prepareProbe(interpreter)
+            val outputs = probeOutputs!!
+            interpreter.runSignature(inputs, outputs, probeSignature)
+
+            for ((name, value) in outputs) {
+                val values = value as FloatBuffer
+                for (i in 0 until values.capacity()) {
+                    val v = values.get(i)
+                    if (!v.isFinite()) return "Weights diverged ($probeSignature output '$name' is $v)"
+                }
+            }
+            null
+        } catch (e: Exception) {
+            // A probe that cannot run is not evidence of divergence
+            Log.w(TAG, "Weight probe unavailable: ${e.message}")
+            null
+        }
+    }
+
+    /** Forgets the loss statistics, e.g. after rolling back to an older checkpoint. */
+    fun reset() {
+        lossAverage = -1f
+        healthySteps = 0
+    }
+
+    /** Probe tensors belong to one interpreter instance's signatures; drop them when it is replaced. */
+    fun onInterpreterChanged() {
+        probeInputs = null
+        probeOutputs = null
+    }
+
+    private fun prepareProbe(interpreter: Interpreter): MutableMap<String, Any> {
+        val inputs = mutableMapOf<String, Any>()
+        val outputs = mutableMapOf<String, Any>()
+
+        if (interpreter.signatureKeys.contains("weight_norm")) {
+            probeSignature = "weight_norm"
+            outputs["norm"] = directFloats(interpreter.getOutputTensorFromSignature("norm", probeSignature).numBytes())
+        } else {
+            probeSignature = "infer"
+            // A constant mid-grey input: any finite weights give finite logits for it
+            val x = directFloats(interpreter.getInputTensorFromSignature("x", probeSignature).numBytes())
+            for (i in 0 until x.capacity()) x.put(i, 0.5f)
+            inputs["x"] = x
+            outputs["output"] = directFloats(interpreter.getOutputTensorFromSignature("output", probeSignature).numBytes())
+            outputs["logits"] = directFloats(interpreter.getOutputTensorFromSignature("logits", probeSignature).numBytes())
+        }
+
+        probeInputs = inputs
+        probeOutputs = outputs
+        return inputs
+    }
+
+    private fun directFloats(bytes: Int): FloatBuffer =
+        ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()).asFloatBuffer()
+
+    companion object {
+        private const val WARMUP_STEPS = 20
+    }
+}
@@ -0,0 +1,231 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+import android.util.Log
+import AppBackend.DataManager.DataLoaderAndInitializer.DatasetContainer
+import AppBackend.DataManager.DataLoaderAndInitializer.DatasetHeader
+import AppBackend.DataManager.DataLoaderAndInitializer.Float16
+import AppBackend.DataManager.DataLoaderAndInitializer.ImageDataset
+import AppBackend.DataManager.DataLoaderAndInitializer.LabelDecoder
+import AppBackend.DataManager.DataLoaderAndInitializer.PixelDecoder
+import AppBackend.DataManager.DataLoaderAndInitializer.ResidentImageDataset
+import AppBackend.TaskContainer.Image_Task
+import org.tensorflow.lite.Interpreter
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+import java.nio.channels.FileChannel
+import java.util.zip.CRC32
+
+/**
+ * Backbone embeddings for head-only fine-tuning (HEAD_ONLY).
+ *
+ * The frozen backbone ("features" signature: x -> features) runs once per sample and its output is kept as a
+ * float16 dataset container next to the task's files, with the label rows in a float32 container beside it.
+ * Epochs then train on these through "train_head" and never run the backbone again. The cache is reused across
+ * sessions for as long as the model and dataset files it was computed from are unchanged; the key file is written
+ * last and doubles as the commit marker.
+ */
+class FeatureCache(private val task: Image_Task) {
+
+    private val TAG = "FeatureCache"
+    private val filesDir = File("/data/data/com.example.fractal/files/")
+
+    // Task-prefixed, so the flusher's sweeper removes them with the task
+    private val featureFile = File(filesDir, "${task.task_Id}_features.fds")
+    private val labelFile = File(filesDir, "${task.task_Id}_feature_labels.fds")
+    private val keyFile = File(filesDir, "${task.task_Id}_features.key")
+
+    /**
+     * The cache as a dataset of embedding-wide samples, computed first when missing or stale.
+     * Returns null when the user cancels while it is being built.
+     */
+    fun open(interpreter: Interpreter, dataset: ImageDataset, callback: TrainingCallback?): ImageDataset? {
+        val key = sourceKey(dataset)
+        if (keyFile.exists() && keyFile.readText() == key) {
+            val cached = load(dataset.sampleCount, dataset.labelSize)
+            if (cached != null) {
+                Log.i(TAG, "Reusing cached backbone features (${cached.imageSize} per sample)")
+                return cached
+            }
+        }
+
+        discard()
+        if (!build(interpreter, dataset, callback)) return null
+        keyFile.writeText(key)
+
+        return load(dataset.sampleCount, dataset.labelSize) ?: throw Exception("Feature cache unreadable right after building it")
+    }
+
+    fun discard() {
+        for (file in listOf(keyFile, featureFile, labelFile, partOf(featureFile), partOf(labelFile))) {
+            if (file.exists()) file.delete()
+        }
+    }
+
+    private fun build(interpreter: Interpreter, dataset: ImageDataset, callback: TrainingCallback?): Boolean {
+        val imageSize = dataset.imageSize
+        val labelSize = dataset.labelSize
+        val sampleCount = dataset.sampleCount
+
+        // The signature's input fixes how many samples one backbone pass takes
+        val batch = maxOf(1, interpreter.getInputTensorFromSignature("x", SIGNATURE_FEATURES).numElements() / imageSize)
+        val featureDim = interpreter.getOutputTensorFromSignature(OUTPUT_FEATURES, SIGNATURE_FEATURES).numElements() / batch
+        if (featureDim <= 0) throw Exception("The $SIGNATURE_FEATURES signature has an empty output")
+        Log.i(TAG, "Computing backbone features: $sampleCount samples, batches of $batch, $featureDim values each")
+
+        val imageTensor = directFloats(batch * imageSize)
+        val labelTensor = directFloats(batch * labelSize)
+        val featureTensor = directFloats(batch * featureDim)
+        val inputs = mutableMapOf<String, Any>("x" to imageTensor)
+        val outputs = mutableMapOf<String, Any>(OUTPUT_FEATURES to featureTensor)
+
+        // Staging for one batch of each payload
+        val packedFeatures = ByteBuffer.allocate(batch * featureDim * 2).order(ByteOrder.LITTLE_ENDIAN)
+        val packedLabels = ByteBuffer.allocate(batch * labelSize * 4).order(ByteOrder.nativeOrder())
+        val featureCrc = CRC32()
+        val labelCrc = CRC32()
+
+        val featurePart = partOf(featureFile)
+        val labelPart = partOf(labelFile)
+        val reader = dataset.openReader()
+        // Sequential, so a streaming dataset reads each window exactly once
+        dataset.onEpochOrder(IntArray(sampleCount) { it })
+
+        RandomAccessFile(featurePart, "rw").channel.use { featureChannel ->
+            RandomAccessFile(labelPart, "rw").channel.use { labelChannel ->
+                featureChannel.truncate(0)
+                labelChannel.truncate(0)
+                var featurePosition = DatasetContainer.HEADER_BYTES.toLong()
+                var labelPosition = DatasetContainer.HEADER_BYTES.toLong()
+                var lastPercent = -1
+
+                var first = 0
+                while (first < sampleCount) {
+                    while (callback?.isPaused() == true && !callback.isCancelled()) Thread.sleep(500)
+                    if (callback?.isCancelled() == true) {
+                        Log.i(TAG, "Feature caching cancelled at sample $first/$sampleCount")
+                        featurePart.delete()
+                        labelPart.delete()
+                        return false
+                    }
+
+                    // The last pass is partial: the stale tail of the input is run but its outputs are dropped
+                    val count = minOf(batch, sampleCount - first)
+                    imageTensor.clear()
+                    labelTensor.clear()
+                    reader.copyRange(first, count, imageTensor, labelTensor)
+                    imageTensor.rewind()
+
+                    featureTensor.clear()
+                    interpreter.runSignature(inputs, outputs, SIGNATURE_FEATURES)
+
+                    packedFeatures.clear()
+                    for (i in 0 until count * featureDim) {
+                        packedFeatures.putShort(Float16.fromFloat(featureTensor.get(i)))
+                    }
+                    packedFeatures.flip()
+                    featureCrc.update(packedFeatures.array(), 0, packedFeatures.limit())
+                    featurePosition += writeFully(featureChannel, packedFeatures, featurePosition)
+
+                    packedLabels.clear()
+                    for (i in 0 until count * labelSize) {
+                        packedLabels.putFloat(labelTensor.get(i))
+                    }
+                    packedLabels.flip()
+                    labelCrc.update(packedLabels.array(), 0, packedLabels.limit())
+                    labelPosition += writeFully(labelChannel, packedLabels, labelPosition)
+
+                    first += count
+                    val percent = (first * 100L / sampleCount).toInt()
+                    if (percent / 5 != lastPercent / 5) {
+                        lastPercent = percent
+                        callback?.onStatusUpdate("Caching backbone features: $percent%")
+                    }
+                }
+
+                writeFully(featureChannel, DatasetContainer.encodeHeader(header(DatasetContainer.DTYPE_FLOAT16, sampleCount, featureDim, featureCrc.value)), 0L)
+                writeFully(labelChannel, DatasetContainer.encodeHeader(header(DatasetContainer.DTYPE_FLOAT32, sampleCount, labelSize, labelCrc.value)), 0L)
+                featureChannel.force(true)
+                labelChannel.force(true)
+            }
+        }
+
+        if (!featurePart.renameTo(featureFile) || !labelPart.renameTo(labelFile)) {
+            discard()
+            throw Exception("Could not move the feature cache into place")
+        }
+        Log.i(TAG, "Feature cache written: ${featureFile.length()} bytes for $sampleCount samples")
+        return true
+    }
+
+    /** Maps both payloads, or null when the files are missing or do not describe [sampleCount] samples. */
+    private fun load(sampleCount: Int, labelSize: Int): ImageDataset? {
+        if (!featureFile.exists() || !labelFile.exists()) return null
+
+        return try {
+            val features = mapPayload(featureFile) ?: return null
+            val labels = mapPayload(labelFile) ?: return null
+            val (featureHeader, featurePayload) = features
+            val (labelHeader, labelPayload) = labels
+
+            if (featureHeader.dtype != DatasetContainer.DTYPE_FLOAT16 || featureHeader.sampleCount != sampleCount ||
+                labelHeader.sampleCount != sampleCount || labelHeader.valuesPerSample != labelSize) {
+                Log.w(TAG, "Feature cache does not match the dataset. Rebuilding.")
+                return null
+            }
+
+            ResidentImageDataset(
+                PixelDecoder.of(featurePayload, featureHeader),
+                LabelDecoder.of(labelPayload, labelHeader, labelSize),
+                featureHeader.valuesPerSample, labelSize
+            )
+        } catch (e: Exception) {
+            Log.w(TAG, "Feature cache unreadable (${e.message}). Rebuilding.")
+            null
+        }
+    }
+
+    private fun mapPayload(file: File): Pair<DatasetHeader, ByteBuffer>? {
+        RandomAccessFile(file, "r").channel.use { channel ->
+            val header = DatasetContainer.readHeader(channel) ?: return null
+            if (header.payloadOffset + header.payloadBytes > channel.size()) return null
+            // A mapping stays valid after its channel is closed
+            return header to channel.map(FileChannel.MapMode.READ_ONLY, header.payloadOffset, header.payloadBytes)
+        }
+    }
+
+    /** Identity of what the cache was computed from: the model (backbone weights) and the dataset files. */
+    private fun sourceKey(dataset: ImageDataset): String {
+        val sources = listOf(task.MODEL_FILENAME, task.TRAIN_IMAGES_FILENAME, task.TRAIN_LABELS_FILENAME).map { File(filesDir, it) }
+        return "v$CACHE_VERSION:${dataset.sampleCount}:${dataset.imageSize}:" + sources.joinToString(":") { "${it.length()}-${it.lastModified()}" }
+    }
+
+    private fun header(dtype: Int, sampleCount: Int, valuesPerSample: Int, checksum: Long) = DatasetHeader(
+        DatasetContainer.VERSION, dtype, sampleCount, 1, 1, valuesPerSample, 1f, 0f, checksum, DatasetContainer.HEADER_BYTES.toLong()
+    )
+
+    private fun writeFully(channel: FileChannel, buffer: ByteBuffer, position: Long): Long {
+        var written = 0L
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written)
+        }
+        return written
+    }
+
+    private fun directFloats(count: Int): FloatBuffer = ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder()).asFloatBuffer()
+
+    private fun partOf(file: File) = File(file.parentFile, file.name + ".part")
+
+    companion object {
+        const val SIGNATURE_FEATURES = "features"
+        const val SIGNATURE_TRAIN_HEAD = "train_head"
+
+        // Output of "features", and the matching input of "train_head"
+        const val OUTPUT_FEATURES = "features"
+
+        // Bumped when the layout changes, so older caches are rebuilt
+        private const val CACHE_VERSION = 1
+    }
+}
@@ -0,0 +1,109 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+import android.util.Log
+import org.tensorflow.lite.Interpreter
+import java.nio.ByteBuffer
+
+/**
+ * Picks how many training steps one native call runs (FUSED_STEPS).
+ *
+ * A model may export a fused signature, "train_k_steps" or "train_<K>_steps", taking K stacked batches
+ * (x: [K*B, ...], y: [K*B, classes]) and returning their K losses, so the fixed JNI/interpreter cost of a
+ * runSignature() call is paid once per K steps. Input shapes are fixed at export, so K is chosen among the exported
+ * variants: each is timed on a probe interpreter against the single-step "train", the per-call overhead is fitted
+ * from those timings, and the smallest K within [TOLERANCE] of the best per-step time wins. Models without a fused
+ * signature, or where the overhead is negligible, keep the single-step path.
+ */
+class FusedStepSelector(private val tuner: InterpreterThreadTuner) {
+
+    private val TAG = "FusedStepSelector"
+
+    /** [signature] runs [stepsPerCall] steps per call, at [stepsPerSecond] training steps/sec (0 when not timed). */
+    data class Choice(val signature: String, val stepsPerCall: Int, val stepsPerSecond: Float) {
+        val isFused: Boolean get() = stepsPerCall > 1
+    }
+
+    /** [requested] is the task's FUSED_STEPS: 0 = automatic, 1 = off, K = the variant with K steps if exported. */
+    fun choose(interpreter: Interpreter, model: ByteBuffer?, threads: Int, samplesPerStep: Int, imageSize: Int, labelSize: Int, requested: Int): Choice {
+        val single = Choice("train", 1, tuner.measuredStepsPerSecond)
+        if (requested == 1) return single
+
+        val variants = variants(interpreter, samplesPerStep, imageSize, labelSize)
+        if (variants.isEmpty()) {
+            if (requested > 1) Log.w(TAG, "FUSED_STEPS is $requested but the model exports no fused train signature. Running single steps.")
+            return single
+        }
+        if (requested > 1) {
+            val pinned = variants.firstOrNull { it.stepsPerCall == requested }
+            if (pinned == null) Log.w(TAG, "No fused signature runs $requested steps (exported: ${variants.map { it.stepsPerCall }}). Running single steps.")
+            return pinned ?: single
+        }
+        if (model == null) return single
+
+        // --- SINGLE-STEP BASELINE ---
+        var singleRate = tuner.measuredStepsPerSecond
+        if (singleRate <= 0f) singleRate = tuner.measureRate(model, threads)
+        if (singleRate <= 0f) return single
+        val singleCallSeconds = 1f / singleRate
+
+        // --- FUSED VARIANTS: seconds per call ---
+        val timed = variants.mapNotNull { variant ->
+            val callsPerSecond = tuner.measureRate(model, threads, variant.signature, "x")
+            if (callsPerSecond <= 0f) return@mapNotNull null
+            Log.i(TAG, String.format("Probe: %s (%d steps) -> %.1f steps/sec", variant.signature, variant.stepsPerCall, callsPerSecond * variant.stepsPerCall))
+            variant.copy(stepsPerSecond = callsPerSecond * variant.stepsPerCall) to 1f / callsPerSecond
+        }
+        if (timed.isEmpty()) return single
+
+        // t(K) = overhead + K * compute, fitted through the single step and the largest variant
+        val (largest, largestCallSeconds) = timed.last()
+        val computeSeconds = maxOf(0f, (largestCallSeconds - singleCallSeconds) / (largest.stepsPerCall - 1))
+        val overheadSeconds = maxOf(0f, singleCallSeconds - computeSeconds)
+        Log.i(TAG, String.format("Per-call overhead %.3f ms, per-step compute %.3f ms", overheadSeconds * 1000f, computeSeconds * 1000f))
+        if (overheadSeconds <= singleCallSeconds * TOLERANCE) {
+            Log.i(TAG, "Call overhead is negligible for this model. Running single steps.")
+            return single
+        }
+
+        // A call cannot be interrupted by pause/cancel or hardware checks, so long calls are ruled out
+        val affordable = timed.filter { (_, callSeconds) -> callSeconds * 1000f <= MAX_CALL_MILLIS }
+        val bestStepSeconds = (affordable.map { (variant, _) -> 1f / variant.stepsPerSecond } + singleCallSeconds).minOrNull() ?: singleCallSeconds
+        val chosen = affordable.firstOrNull { (variant, _) -> 1f / variant.stepsPerSecond <= bestStepSeconds * (1f + TOLERANCE) }?.first
+        if (chosen == null || 1f / chosen.stepsPerSecond >= singleCallSeconds) return single.copy(stepsPerSecond = singleRate)
+
+        Log.i(TAG, String.format("Selected %s: %d steps per call (%.1f vs %.1f steps/sec single)", chosen.signature, chosen.stepsPerCall, chosen.stepsPerSecond, singleRate))
+        return chosen
+    }
+
+    /** Exported fused signatures whose tensors stack whole batches of the single-step shape, smallest K first. */
+    private fun variants(interpreter: Interpreter, samplesPerStep: Int, imageSize: Int, labelSize: Int): List<Choice> {
+        return interpreter.signatureKeys.filter { it == SIGNATURE_K_STEPS || FUSED_SIGNATURE.matches(it) }.mapNotNull { signature ->
+            try {
+                val imageElements = interpreter.getInputTensorFromSignature("x", signature).numElements()
+                val labelElements = interpreter.getInputTensorFromSignature("y", signature).numElements()
+                val lossElements = interpreter.getOutputTensorFromSignature("loss", signature).numElements()
+                val steps = imageElements / (samplesPerStep * imageSize)
+
+                if (steps >= 2 && imageElements == steps * samplesPerStep * imageSize &&
+                    labelElements == steps * samplesPerStep * labelSize && lossElements == steps) {
+                    Choice(signature, steps, 0f)
+                } else {
+                    Log.w(TAG, "Signature $signature does not stack batches of $samplesPerStep samples. Ignored.")
+                    null
+                }
+            } catch (e: Exception) {
+                Log.w(TAG, "Could not inspect signature $signature (${e.message}). Ignored.")
+                null
+            }
+        }.sortedBy { it.stepsPerCall }
+    }
+
+    companion object {
+        const val SIGNATURE_K_STEPS = "train_k_steps"
+        private val FUSED_SIGNATURE = Regex("train_(\\d+)_steps")
+
+        // A smaller K within this share of the best per-step time is preferred (finer checkpoints and pause checks)
+        private const val TOLERANCE = 0.05f
+        private const val MAX_CALL_MILLIS = 250f
+    }
+}
@@ -1,34 +1,75 @@
 package AppBackend.LocalTrainingModule.TrainingExecutor
 
 import android.util.Log
+import AppBackend.DataManager.Augmentation.AugmentationPipeline
+import AppBackend.DataManager.Coreset.CoresetSelector
+import AppBackend.DataManager.DataLoaderAndInitializer.DatasetSplit
+import AppBackend.DataManager.DataLoaderAndInitializer.ImageDataset
+import AppBackend.LocalTrainingModule.TrainingStateManager.CheckpointCadence
 import AppBackend.LocalTrainingModule.TrainingStateManager.CheckpointManager
+import AppBackend.LocalTrainingModule.TrainingStateManager.checkpoint_DTO
+import AppBackend.LocalTrainingModule.TrainingStateManager.trainingOutcome_DTO
+import AppBackend.ResourceManagement.WarmResourceCache
 import AppBackend.TaskContainer.Image_Task
 import AppBackend.TaskContainer.Task
+import AppBackend.Validator.ModelInferenceValidator.BatchedEvaluator
+import AppBackend.Validator.ModelInferenceValidator.InferenceValidator
+import AppBackend.Validator.ModelInferenceValidator.OverlappedEpochValidator
 import org.tensorflow.lite.Interpreter
 import java.io.File
 import java.io.FileInputStream
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
-import java.nio.FloatBuffer
 import java.nio.MappedByteBuffer
 import java.nio.channels.FileChannel
+import java.util.Random
 
-class ImageTrainer : Trainer {
+class ImageTrainer : TfliteTrainer {
 
     override lateinit var task: Task
     override lateinit var trainingData: Any
     override lateinit var interpreter: Interpreter
     override var currentEpoch: Int = 0
+    override var outcome: trainingOutcome_DTO? = null
 
     private val checkpointManager = CheckpointManager()
     private val TAG = "ImageTrainer"
 
+    // Interpreter thread count, tuned at load time and adjusted to live thermal/CPU conditions
+    private val threadTuner = InterpreterThreadTuner()
+    private var numThreads: Int = 1
+    private var modelBuffer: MappedByteBuffer? = null
+
+    // Shuffle state carried across checkpoints so a resumed run keeps the same visiting order
+    private var shuffleSeed: Long = 0L
+    private var resumedOrder: IntArray? = null
+
+    // Where the restored checkpoint left off (epoch, in-epoch sample cursor, accumulated loss)
+    private var resumePoint: checkpoint_DTO? = null
+
+    // NaN/Inf and loss-explosion checks; survives retries so probe buffers are reused
+    private val divergenceGuard = DivergenceGuard()
+
+    // Warm-start state: the architecture and content keys of the model and its initial-weights snapshot (see WarmResourceCache)
+    private var warmKey: String? = null
+    private var warmContentKey: String? = null
+    private var initialWeights: File? = null
+
+    // Compute budget of a time-boxed task, and the work done so far (reported with the upload)
+    private lateinit var budget: TrainingBudget
+    private var budgetLimited = false
+    private var samplesPerStep = 1
+
+    // Steps the task asked for (all planned epochs, uniform passes) and whether batches were drawn by loss instead
+    private var plannedSteps = 0L
+    private var importanceSampled = false
+
     override fun setUpTrainer(pTrainingData: Any?, pTask: Task) {
         Log.d(TAG, "--> setUpTrainer(): Initializing...")
         this.task = pTask
 
-        if (pTrainingData !is Pair<*, *> || pTrainingData.first !is FloatBuffer || pTrainingData.second !is FloatBuffer) {
-            Log.e(TAG, "Invalid training data format! Expected Pair<FloatBuffer, FloatBuffer>")
+        if (pTrainingData !is ImageDataset) {
+            Log.e(TAG, "Invalid training data format! Expected ImageDataset")
             throw IllegalArgumentException("Invalid training data format")
         }
 
@@ -63,24 +104,130 @@ class ImageTrainer : Trainer {
     }
 
     override fun loadModel(): Interpreter {
+        val imageTask = task as Image_Task
+
+        // Same model content as an earlier task: its warm interpreter only needs the initial weights back
+        val contentKey = WarmResourceCache.contentKey(listOf(File("/data/data/com.example.fractal/files/", imageTask.MODEL_FILENAME)), "model")
+        warmContentKey = contentKey
+        val same = contentKey?.let { WarmResourceCache.checkOutByContent(it) }
+        if (same != null) {
+            if (adoptWarmInterpreter(same, imageTask.NUM_THREADS, same.initialWeights, same.modelBuffer)) {
+                warmKey = same.key
+                return same.interpreter
+            }
+            same.interpreter.close()
+        }
+
         val buffer = loadModelFile()
-        return Interpreter(buffer)
+        modelBuffer = buffer
+
+        // New weights (the next round): a single-threaded, untuned build reads the architecture and exports the
+        // shipped weights, which a warm interpreter of the same architecture then restores in place of a cold start
+        val probe = Interpreter(buffer, Interpreter.Options().setNumThreads(1))
+        try {
+            val key = WarmResourceCache.architectureKey(probe, buffer.capacity())
+            warmKey = key
+            val warm = WarmResourceCache.checkOut(key)
+            snapshotInitialWeights(probe, key)
+            val snapshot = initialWeights
+            if (warm != null) {
+                if (snapshot != null && adoptWarmInterpreter(warm, imageTask.NUM_THREADS, snapshot, buffer)) return warm.interpreter
+                warm.interpreter.close()
+            }
+        } finally {
+            probe.close()
+        }
+
+        numThreads = if (imageTask.NUM_THREADS > 0) threadTuner.pin(imageTask.NUM_THREADS) else threadTuner.tune(buffer)
+        return Interpreter(buffer, Interpreter.Options().setNumThreads(numThreads))
+    }
+
+    /**
+     * Hands the interpreter to the warm cache for the next task with the same model architecture, or closes it.
+     * Called once the task no longer needs it (after validation and upload).
+     */
+    override fun releaseResources() {
+        if (!::interpreter.isInitialized) return
+
+        val key = warmKey
+        val snapshot = initialWeights
+        val buffer = modelBuffer
+        if (key != null && snapshot != null && buffer != null && snapshot.exists()) {
+            WarmResourceCache.checkIn(
+                WarmResourceCache.WarmInterpreter(key, warmContentKey, interpreter, buffer, numThreads, threadTuner.tunedThreads, threadTuner.measuredStepsPerSecond, snapshot)
+            )
+        } else {
+            interpreter.close()
+        }
     }
 
+    override fun validate(data: Any, validator: InferenceValidator): String = validator.infer(data, interpreter, task)
+
     override fun initializeWeights() {
         Log.d(TAG, "--> initializeWeights(): Calling CheckpointManager...")
-        currentEpoch = checkpointManager.loadCheckpoint(task, interpreter)
-        Log.d(TAG, "--> initializeWeights(): Returned from CheckpointManager. Current Epoch: $currentEpoch")
+        val checkpoint = checkpointManager.loadCheckpoint(task, interpreter)
+        resumePoint = checkpoint
+        currentEpoch = checkpoint?.lastEpoch ?: 0
+
+        // A checkpoint without a seed predates shuffling and resumes at an epoch boundary: seed it like a fresh run
+        val configuredSeed = (task as Image_Task).SHUFFLE_SEED
+        shuffleSeed = checkpoint?.shuffleSeed ?: if (configuredSeed >= 0) configuredSeed else System.nanoTime()
+        if (checkpoint != null && checkpoint.shuffleSeed == null) Log.i(TAG, "Checkpoint has no shuffle seed (older format). Using seed $shuffleSeed from here on.")
+        resumedOrder = if (checkpoint != null) checkpointManager.loadSampleOrder(task, currentEpoch) else null
+
+        val imageTask = task as Image_Task
+        budget = TrainingBudget(imageTask.TRAIN_TIME_BUDGET_SEC * 1000L, imageTask.TRAIN_STEP_BUDGET.toLong(), imageTask.TRAIN_DEADLINE)
+        budget.restore(checkpoint?.trainedSteps ?: 0L, checkpoint?.trainedMillis ?: 0L)
+        budgetLimited = checkpoint?.budgetLimited ?: false
+        Log.d(TAG, "--> initializeWeights(): Returned from CheckpointManager. Current Epoch: $currentEpoch, Sample Cursor: ${checkpoint?.sampleCursor ?: 0}")
     }
 
+    /**
+     * Runs the epochs and handles divergence (DIVERGENCE_POLICY): the weights roll back to the newest
+     * checkpoint (every journaled one passed the weight probe), then "retry" trains once more with a fresh
+     * sample order over half the remaining epochs, "rollback" finishes with the restored weights and
+     * "abort" gives the task up without uploading.
+     */
     override fun trainModel(callback: TrainingCallback?) {
+        val imageTask = task as Image_Task
+        var epochLimit = imageTask.NUM_EPOCHS
+        var limitReason = ""
+        var retried = false
+
+        while (true) {
+            try {
+                trainEpochs(callback, epochLimit, limitReason)
+                return
+            } catch (e: TrainingDivergedException) {
+                Log.e(TAG, "Training diverged at epoch $currentEpoch: ${e.reason}")
+                callback?.onStatusUpdate("Training diverged. Rolling back...")
+                val restored = rollBack()
+
+                if (imageTask.DIVERGENCE_POLICY == "retry" && !retried) {
+                    retried = true
+                    // The same batch sequence would likely diverge again: reshuffle and spend less on the retry
+                    shuffleSeed = System.nanoTime()
+                    resumedOrder = null
+                    epochLimit = currentEpoch + maxOf(1, (imageTask.NUM_EPOCHS - currentEpoch + 1) / 2)
+                    limitReason = "Shortened to $epochLimit epochs after divergence (${e.reason})"
+                    Log.i(TAG, "Retrying from epoch $currentEpoch up to epoch $epochLimit")
+                    continue
+                }
+
+                val usable = restored != null && imageTask.DIVERGENCE_POLICY != "abort"
+                outcome = outcomeOf(currentEpoch, imageTask.NUM_EPOCHS, "Diverged: ${e.reason}", resumePoint?.bestMonitoredLoss ?: 0f, aborted = !usable)
+                if (usable) checkpointManager.promoteLatest(task)
+                return
+            }
+        }
+    }
+
+    private fun trainEpochs(callback: TrainingCallback?, epochLimit: Int, limitReason: String) {
         Log.d(TAG, "========== TRAIN MODEL STARTED ==========")
         val imageTask = task as Image_Task
 
-        @Suppress("UNCHECKED_CAST")
-        val data = trainingData as Pair<FloatBuffer, FloatBuffer>
-        val imageBatch = data.first
-        val labelBatch = data.second
+        // Fully resident or streamed through a window: the loop below only sees sample indices
+        val dataset = trainingData as ImageDataset
 
         // --- SAFE EXTRACTION START ---
         val shapeArray = imageTask.INPUT_SHAPE
@@ -100,144 +247,774 @@ class ImageTrainer : Trainer {
         // --- SAFE EXTRACTION END ---
 
         val numClasses = imageTask.NUM_CLASSES
-        val numTrainings = imageTask.NUM_TRAININGS
-        val numEpochs = imageTask.NUM_EPOCHS
-
-        if (currentEpoch >= numEpochs) {
-            Log.i(TAG, "Model is already fully trained for $numEpochs epochs. Skipping training phase.")
+        // The tail of the dataset is held out for the validator's evaluation pass
+        val numTrainings = DatasetSplit.trainingCount(imageTask.NUM_TRAININGS, imageTask.VALIDATION_SPLIT)
+        // The samples an epoch visits: all of the training split, or the coreset selected from it (CORESET_FRACTION)
+        val trainingSamples = CoresetSelector(imageTask).trainingSamples(numTrainings)
+        val epochSamples = trainingSamples.size
+        val plannedEpochs = imageTask.NUM_EPOCHS
+        // A compute budget sizes the run once; resumed runs keep the plan their checkpoint recorded
+        val savedPlan = resumePoint?.takeIf { it.budgetEpochs > 0 }?.let { TrainingBudget.Plan(it.budgetEpochs, it.budgetSamplesPerEpoch) }
+        // Below plannedEpochs for a shortened retry after divergence or a budget-sized run
+        val epochCap = minOf(plannedEpochs, epochLimit, savedPlan?.epochs ?: plannedEpochs)
+
+        // A checkpoint that recorded an early stop is final: resuming must not train past it
+        val recordedStop = resumePoint?.stopReason.orEmpty()
+        if (currentEpoch >= epochCap || recordedStop.isNotEmpty()) {
+            outcome = outcomeOf(minOf(currentEpoch, epochCap), plannedEpochs, recordedStop, resumePoint?.bestMonitoredLoss ?: 0f)
+            Log.i(TAG, "Model is already fully trained ($currentEpoch/$epochCap epochs${if (recordedStop.isNotEmpty()) ", stopped early: $recordedStop" else ""}). Skipping training phase.")
             callback?.onProgress(100)
             callback?.onStatusUpdate("Training Already Completed")
             return
         }
 
+        val imageSize = imgHeight * imgWidth
+        budget.startSession()
+
+        // --- HEAD-ONLY FINE-TUNING ---
+        // The frozen backbone runs once per sample into the feature cache; epochs then only train the head on it
+        val headOnly = imageTask.HEAD_ONLY && supportsHeadTraining()
+        val stepDataset: ImageDataset = if (headOnly) {
+            callback?.onStatusUpdate("Caching backbone features...")
+            FeatureCache(imageTask).open(interpreter, dataset, callback) ?: run {
+                budget.pauseSession()
+                return
+            }
+        } else {
+            dataset
+        }
+        val trainSignature = if (headOnly) FeatureCache.SIGNATURE_TRAIN_HEAD else "train"
+        val trainInput = if (headOnly) FeatureCache.OUTPUT_FEATURES else "x"
+        val stepSampleSize = stepDataset.imageSize
+
+        // --- BATCH SETUP ---
+        // One runSignature() call now consumes a whole [BATCH_SIZE, H, W] slice when the model allows it
+        val samplesPerStep = resolveTrainBatchSize(imageTask.BATCH_SIZE, stepSampleSize, numClasses, trainSignature, trainInput)
+        this.samplesPerStep = samplesPerStep
+        val fullStepsPerEpoch = epochSamples / samplesPerStep
+        plannedSteps = plannedEpochs.toLong() * (numTrainings / samplesPerStep)
+
+        // Fewer samples than one batch (a tiny NUM_TRAININGS, or a model exported with a larger batch): nothing can train
+        if (fullStepsPerEpoch == 0) {
+            budget.pauseSession()
+            val reason = "$epochSamples training samples do not fill one batch of $samplesPerStep"
+            Log.e(TAG, "Cannot train: $reason")
+            outcome = outcomeOf(currentEpoch, plannedEpochs, reason, 0f, aborted = true)
+            return
+        }
+
+        // --- IMPORTANCE SAMPLING ---
+        // Each step's batch is drawn by per-sample loss estimates rather than taken from a shuffled pass, so learned
+        // samples stop costing steps. The train signature reports the per-sample losses the estimates need and takes
+        // the per-sample weights that correct the sampling bias; models without both train on shuffled passes.
+        val importance = createImportanceSampler(imageTask, stepDataset, trainingSamples, trainSignature, samplesPerStep)
+        importanceSampled = importance != null
+        val sampleLossBuffer = if (importance != null) TrainingBatchFeeder.directFloats(samplesPerStep) else null
+        val sampleWeightBuffer = if (importance != null) TrainingBatchFeeder.directFloats(samplesPerStep) else null
+        val lossSnapshot = if (importance != null) FloatArray(epochSamples) else null
+        val drawRandom = Random()
+        if (importance != null) {
+            Log.i(TAG, "Importance sampling over $epochSamples samples")
+        }
+
+        // --- FUSED STEPS ---
+        // K batches per runSignature() call through a stacked "train_k_steps" signature, when the model exports one
+        // and the measured per-call overhead makes it pay off. Head-only steps keep their own single-step signature,
+        // and so do importance-sampled ones (the fused variants take no weight input).
+        val fused = if (headOnly || importance != null) {
+            FusedStepSelector.Choice(trainSignature, 1, 0f)
+        } else {
+            FusedStepSelector(threadTuner).choose(interpreter, modelBuffer, numThreads, samplesPerStep, stepSampleSize, numClasses, imageTask.FUSED_STEPS)
+        }
+        val stepsPerCall = fused.stepsPerCall
+
+        if (fullStepsPerEpoch * samplesPerStep < epochSamples) {
+            Log.w(TAG, "Dropping ${epochSamples - fullStepsPerEpoch * samplesPerStep} trailing samples per epoch (batch size $samplesPerStep)")
+        }
+
+        // --- COMPUTE BUDGET ---
+        // Fewer epochs, or one epoch over a shuffled subset, when the task's time/step budget or deadline
+        // cannot cover the full run at the measured rate. The boundary itself is enforced per step below.
+        val budgetPlan = savedPlan ?: if (budget.isBounded) planBudget(epochCap, fullStepsPerEpoch, samplesPerStep, trainSignature, trainInput, fused.stepsPerSecond) else null
+        val numEpochs = minOf(epochCap, budgetPlan?.epochs ?: epochCap)
+        val stepsPerEpoch = if (budgetPlan != null && fullStepsPerEpoch > 0) {
+            (budgetPlan.samplesPerEpoch / samplesPerStep).coerceIn(1, fullStepsPerEpoch)
+        } else {
+            fullStepsPerEpoch
+        }
+        val samplesPerEpoch = stepsPerEpoch * samplesPerStep
+        if (budgetPlan != null && (numEpochs < plannedEpochs || stepsPerEpoch < fullStepsPerEpoch)) {
+            budgetLimited = true
+        }
+        val capReason = if (limitReason.isNotEmpty() && epochLimit <= numEpochs) limitReason else "Sized to compute budget: $numEpochs of $plannedEpochs epochs"
+
+        // Hardware checks and UI pushes keep their per-sample cadence regardless of the batch size
+        val hardwareCheckInterval = maxOf(1, 50 / samplesPerStep)
+        val uiUpdateInterval = maxOf(1, 100 / samplesPerStep)
+
+        // --- RESUME POINT ---
+        // A mid-epoch checkpoint resumes at the exact step it was taken at
+        val resumeStep = minOf((resumePoint?.sampleCursor ?: 0) / samplesPerStep, stepsPerEpoch)
+        val firstGlobalStep = currentEpoch * stepsPerEpoch + resumeStep
+
         // --- TIME TRACKING SETUP ---
         val trainingStartTime = System.currentTimeMillis()
         var timeLeftStr = "Calculating..."
 
         // Calculate absolute total steps for accurate UI progress calculation
-        val totalSteps = numEpochs * numTrainings
-        var currentStep = currentEpoch * numTrainings
+        val totalSteps = numEpochs * samplesPerEpoch
+        var currentStep = firstGlobalStep * samplesPerStep
+        // Steps since each periodic check; a fused call advances them by K at once
+        var stepsSinceHardwareCheck = hardwareCheckInterval
+        var stepsSinceUiUpdate = 0
+        var stepsSinceWeightProbe = 0
 
         // PRIME UI: Send 4 arguments
         callback?.onEpochUpdate(currentEpoch, numEpochs, 0f, timeLeftStr)
+        callback?.onEngineConfigUpdate(numThreads, threadTuner.measuredStepsPerSecond)
+
+        // --- AUGMENTATION ---
+        // Applied by the prefetch workers into each slot's own tensors, seeded per step so a resume replays it
+        // Cached features are fixed per sample, so head-only runs cannot augment
+        if (headOnly && imageTask.AUGMENTATIONS.isNotEmpty()) Log.w(TAG, "AUGMENTATIONS ignored: head-only training uses cached features")
+        val augmentation = AugmentationPipeline.fromSpec(if (headOnly) "" else imageTask.AUGMENTATIONS, imgHeight, imgWidth)
+        val dataWorkers = resolveDataWorkers(imageTask.DATA_WORKERS, augmentation)
+        val prefetchDepth = if (imageTask.PREFETCH_DEPTH > 1) maxOf(imageTask.PREFETCH_DEPTH, dataWorkers + 1) else 1
+        // A fused call consumes K consecutive slots, so slots come in whole groups (two when prefetching, to fill one while the other trains)
+        val slotGroups = if (prefetchDepth > 1) maxOf(2, (prefetchDepth + stepsPerCall - 1) / stepsPerCall) else 1
+        val slotCount = if (fused.isFused) stepsPerCall * slotGroups else prefetchDepth
+
+        // All step buffers are allocated here once; the loop below only refills them.
+        // Each prefetch slot owns its own tensors so the workers can fill N+1.. while N trains.
+        // The tensors of a slot group are consecutive windows of one stacked buffer, which is what a fused call takes.
+        val stackedImages = List(slotCount / stepsPerCall) { TrainingBatchFeeder.directFloats(stepsPerCall * samplesPerStep * stepSampleSize) }
+        val stackedLabels = List(slotCount / stepsPerCall) { TrainingBatchFeeder.directFloats(stepsPerCall * samplesPerStep * numClasses) }
+        val prefetchSlots = List(slotCount) { slot ->
+            val augmenter = if (augmentation.isEmpty) null else augmentation.newAugmenter()
+            TrainingBatchFeeder(
+                stepDataset.openReader(), stepSampleSize, numClasses, samplesPerStep, augmenter,
+                TrainingBatchFeeder.window(stackedImages[slot / stepsPerCall], slot % stepsPerCall, stepsPerCall),
+                TrainingBatchFeeder.window(stackedLabels[slot / stepsPerCall], slot % stepsPerCall, stepsPerCall)
+            )
+        }
+        // Per-epoch shuffle: only this IntArray is permuted, the dataset buffers stay in file order.
+        // It is (re)built in select(), which the prefetcher calls in step order, when an epoch boundary is crossed.
+        // Block-local when the dataset streams, so each window is read once per epoch.
+        val permutation = SamplePermutation(trainingSamples, shuffleSeed, imageTask.SHUFFLE, stepDataset.blockSize)
+        val epochOrder = IntArray(epochSamples)
+        val checkpointOrder = IntArray(epochSamples)
+        var orderEpoch = -1
+
+        val prefetcher = BatchPrefetcher(
+            prefetchSlots,
+            object : BatchFillPlan {
+                override fun select(globalStep: Int, batchIndices: IntArray, drawProbabilities: FloatArray) {
+                    // Drawn per step, seeded by it, from the estimates the steps trained so far left behind
+                    if (importance != null) {
+                        drawRandom.setSeed(shuffleSeed + globalStep * AUGMENT_SEED_STRIDE)
+                        importance.drawBatch(drawRandom, batchIndices, drawProbabilities)
+                        return
+                    }
 
-        val singleImageBuffer = ByteBuffer.allocateDirect(imgHeight * imgWidth * 4).order(ByteOrder.nativeOrder()).asFloatBuffer()
-        val singleLabelBuffer = ByteBuffer.allocateDirect(numClasses * 4).order(ByteOrder.nativeOrder()).asFloatBuffer()
+                    val epoch = globalStep / stepsPerEpoch
+                    if (epoch != orderEpoch) {
+                        val saved = resumedOrder
+                        if (epoch == currentEpoch && saved != null && saved.size == epochSamples) {
+                            System.arraycopy(saved, 0, epochOrder, 0, epochSamples)
+                        } else {
+                            permutation.fill(epoch, epochOrder)
+                        }
+                        stepDataset.onEpochOrder(epochOrder)
+                        orderEpoch = epoch
+                    }
+                    System.arraycopy(epochOrder, (globalStep % stepsPerEpoch) * samplesPerStep, batchIndices, 0, samplesPerStep)
+                }
+
+                override fun fill(feeder: TrainingBatchFeeder, globalStep: Int, batchIndices: IntArray, drawProbabilities: FloatArray) {
+                    feeder.fillIndexed(batchIndices, 0)
+                    if (importance != null) System.arraycopy(drawProbabilities, 0, feeder.drawProbabilities, 0, samplesPerStep)
+                    feeder.augment(shuffleSeed xor (globalStep * AUGMENT_SEED_STRIDE))
+                }
+            },
+            firstGlobalStep,
+            numEpochs * stepsPerEpoch,
+            dataWorkers
+        )
+        Log.i(TAG, "Data pipeline: ${prefetchSlots.size} slots, ${prefetcher.workerCount} workers, ${augmentation.ops.size} augmentations, $stepsPerCall steps per call")
         val lossBuffer = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder()).asFloatBuffer()
 
-        val inputs = mutableMapOf<String, Any>("x" to singleImageBuffer, "y" to singleLabelBuffer)
+        val inputs = mutableMapOf<String, Any>(trainInput to prefetchSlots[0].imageTensor, "y" to prefetchSlots[0].labelTensor)
         val outputs = mutableMapOf<String, Any>("loss" to lossBuffer)
+        sampleWeightBuffer?.let { inputs[SAMPLE_WEIGHT_INPUT] = it }
+        sampleLossBuffer?.let { outputs[SAMPLE_LOSS_OUTPUT] = it }
+
+        // One loss per fused step
+        val fusedLossBuffer = TrainingBatchFeeder.directFloats(stepsPerCall)
+        val fusedInputs = mutableMapOf<String, Any>("x" to stackedImages[0], "y" to stackedLabels[0])
+        val fusedOutputs = mutableMapOf<String, Any>("loss" to fusedLossBuffer)
+
+        // --- CHECKPOINTING ---
+        // Besides epoch ends, progress is saved mid-epoch on a cadence sized from measured save/step
+        // times, and right before a pause, hardware wait or cancel, so a killed service loses little.
+        val cadence = CheckpointCadence()
+
+        // --- CONVERGENCE ---
+        // Owns the running loss aggregate; stops training once the monitored loss plateaus
+        val monitor = ConvergenceMonitor(
+            imageTask.EARLY_STOP_PATIENCE,
+            imageTask.EARLY_STOP_MIN_DELTA,
+            imageTask.EARLY_STOP_MIN_EPOCHS,
+            preferValidation = imageTask.OVERLAP_VALIDATION
+        )
+        resumePoint?.let { monitor.restore(it.bestMonitoredLoss, it.monitoredEpochs, it.epochsWithoutImprovement, it.monitoredHeldOut) }
+        var stopReason = ""
+
+        fun saveProgress(epoch: Int, stepsDone: Int, reason: String) {
+            // Only healthy weights are journaled, so a rollback always has a good generation to land on
+            divergenceGuard.probeWeights(interpreter)?.let { throw TrainingDivergedException(it) }
+
+            val epochDone = stepsDone >= stepsPerEpoch
+            val resumeEpoch = if (epochDone) epoch + 1 else epoch
+            val state = checkpoint_DTO(
+                task_Id = task.task_Id,
+                lastEpoch = resumeEpoch,
+                checkpointTimestamp = System.currentTimeMillis(),
+                shuffleSeed = shuffleSeed,
+                sampleCursor = if (epochDone) 0 else stepsDone * samplesPerStep,
+                epochLossSum = if (epochDone) 0f else monitor.epochLossSum,
+                epochLossSteps = if (epochDone) 0 else monitor.epochLossSteps,
+                bestMonitoredLoss = monitor.bestLoss,
+                monitoredEpochs = monitor.monitoredEpochs,
+                epochsWithoutImprovement = monitor.epochsWithoutImprovement,
+                monitoredHeldOut = monitor.historyHeldOut,
+                stopReason = stopReason,
+                budgetEpochs = budgetPlan?.epochs ?: 0,
+                budgetSamplesPerEpoch = budgetPlan?.samplesPerEpoch ?: 0,
+                budgetLimited = budgetLimited,
+                trainedSteps = budget.stepsUsed,
+                trainedMillis = budget.millisUsed
+            )
+            // Importance-sampled runs have no visiting order; their loss estimates are saved instead
+            val resumeOrder = if (importance == null && resumeEpoch < numEpochs) checkpointOrder.also { permutation.fill(resumeEpoch, it) } else null
+            val sampleLosses = if (importance != null && lossSnapshot != null && importance.snapshot(lossSnapshot)) lossSnapshot else null
+
+            val saveStart = System.currentTimeMillis()
+            // Routine cadence checkpoints give way to a write still in flight; the rest must land
+            if (checkpointManager.createCheckpoint(task, interpreter, state, resumeOrder, critical = reason != "cadence", sampleLosses = sampleLosses)) {
+                cadence.recordSave(System.currentTimeMillis() - saveStart)
+                Log.d(TAG, "--> Checkpoint ($reason): epoch $epoch, step $stepsDone/$stepsPerEpoch")
+            }
+        }
 
-        Log.d(TAG, "--> Entering Epoch Loop...")
-        for (epoch in currentEpoch until numEpochs) {
-            var lastLoss = 0f
-
-            for (sampleIdx in 0 until numTrainings) {
+        // --- OVERLAPPED VALIDATION ---
+        // Each epoch-end checkpoint is evaluated on a second interpreter while the next epoch trains
+        val epochValidator = createEpochValidator(imageTask, dataset, imageSize, numClasses)
+        monitor.validationAvailable = epochValidator != null
+
+        prefetcher.start()
+        try {
+            Log.d(TAG, "--> Entering Epoch Loop... ($stepsPerEpoch steps of $samplesPerStep samples per epoch)")
+            epochLoop@ for (epoch in currentEpoch until numEpochs) {
+                var lastLoss = 0f
+                val epochStartTime = System.currentTimeMillis()
+                val epochStallStart = prefetcher.stallNanos
+                val epochFirstStep = if (epoch == currentEpoch) resumeStep else 0
+
+                // Resuming mid-epoch also resumes the epoch's loss aggregate
+                if (epochFirstStep > 0) {
+                    monitor.beginEpoch(resumePoint?.epochLossSum ?: 0f, resumePoint?.epochLossSteps ?: 0)
+                } else {
+                    monitor.beginEpoch(0f, 0)
+                }
 
-                // --- NEW: SMART HARDWARE & PAUSE TRAP ---
-                // We only do a deep hardware check every 50 steps to prevent battery drain and lag
-                if (currentStep % 50 == 0) {
-                    var hardwareIssue = callback?.checkLiveConditions()
+                var stepIdx = epochFirstStep
+                while (stepIdx < stepsPerEpoch) {
+
+                    // --- NEW: SMART HARDWARE & PAUSE TRAP ---
+                    // We only do a deep hardware check every ~50 samples to prevent battery drain and lag
+                    if (stepsSinceHardwareCheck >= hardwareCheckInterval) {
+                        stepsSinceHardwareCheck = 0
+                        var hardwareIssue = callback?.checkLiveConditions()
+
+                        // If hardware violates rules OR user paused, lock the thread
+                        while (hardwareIssue != null || callback?.isPaused() == true) {
+                            // Waiting is not training: the budget clock stops
+                            budget.pauseSession()
+                            // Android may kill us while we wait: persist the exact step first
+                            if (cadence.stepsSinceCheckpoint > 0) saveProgress(epoch, stepIdx, "wait")
+
+                            if (callback?.isCancelled() == true) {
+                                Log.i(TAG, "Training cancelled by user during pause/hardware wait.")
+                                return
+                            }
+
+                            if (hardwareIssue != null) {
+                                callback?.onStatusUpdate(hardwareIssue) // e.g. "Standby: Awaiting Wi-Fi"
+                            } else {
+                                callback?.onStatusUpdate("Training Paused")
+                            }
+
+                            Thread.sleep(3000) // Sleep 3 seconds before re-evaluating
+                            hardwareIssue = callback?.checkLiveConditions()
+                        }
 
-                    // If hardware violates rules OR user paused, lock the thread
-                    while (hardwareIssue != null || callback?.isPaused() == true) {
-                        if (callback?.isCancelled() == true) {
-                            Log.i(TAG, "Training cancelled by user during pause/hardware wait.")
-                            return
+                        // Heat or CPU contention: rebuild the interpreter with fewer threads (and back up once cool)
+                        threadTuner.reevaluate(numThreads, callback?.getLiveResources())?.let { rebuildInterpreter(it) }
+                    } else {
+                        // For the steps in between, do a super lightweight check just for manual pauses
+                        while (callback?.isPaused() == true) {
+                            budget.pauseSession()
+                            if (cadence.stepsSinceCheckpoint > 0) saveProgress(epoch, stepIdx, "pause")
+
+                            if (callback?.isCancelled() == true) {
+                                Log.i(TAG, "Training cancelled by user during pause.")
+                                return
+                            }
+                            Thread.sleep(500)
                         }
+                    }
+
+                    // Final safety catch
+                    if (callback?.isCancelled() == true) {
+                        if (cadence.stepsSinceCheckpoint > 0) saveProgress(epoch, stepIdx, "cancel")
+                        Log.i(TAG, "Training cancelled by user.")
+                        return
+                    }
+                    // ----------------------------------------
+                    budget.startSession()
+
+                    // --- BUDGET BOUNDARY: checkpoint exactly here and stop; the recorded reason keeps a resume from going on ---
+                    val budgetStop = budget.exhausted()
+                    if (budgetStop != null) {
+                        stopReason = budgetStop
+                        budgetLimited = true
+                        saveProgress(epoch, stepIdx, "budget")
+                        Log.i(TAG, "Stopping at the compute budget boundary (epoch $epoch, step $stepIdx/$stepsPerEpoch): $budgetStop")
+                        callback?.onStatusUpdate(budgetStop)
+                        val loss = if (monitor.epochLossSteps > 0) monitor.epochMeanLoss else outcome?.finalLoss ?: monitor.bestLoss
+                        outcome = outcomeOf(epoch, plannedEpochs, stopReason, loss)
+                        break@epochLoop
+                    }
 
-                        if (hardwareIssue != null) {
-                            callback?.onStatusUpdate(hardwareIssue) // e.g. "Standby: Awaiting Wi-Fi"
+                    // A fused call needs K whole steps of this epoch in one slot group (groups are aligned to the first step),
+                    // and a step budget that still covers all of them; anything else runs as single steps
+                    val globalStep = epoch * stepsPerEpoch + stepIdx
+                    val callSteps = if (fused.isFused && (globalStep - firstGlobalStep) % stepsPerCall == 0 &&
+                        stepIdx + stepsPerCall <= stepsPerEpoch && budget.covers(stepsPerCall)) stepsPerCall else 1
+
+                    try {
+                        val stepStart = System.nanoTime()
+
+                        // 1. TAKE THE PREFETCHED BATCH (filled by the loader threads while the previous step trained)
+                        val feeder = prefetcher.acquire(globalStep)
+
+                        // 2. RUN INFERENCE
+                        if (callSteps > 1) {
+                            for (k in 1 until callSteps) prefetcher.acquire(globalStep + k)
+                            val group = ((globalStep - firstGlobalStep) % slotCount) / stepsPerCall
+                            val stackedImage = stackedImages[group]
+                            val stackedLabel = stackedLabels[group]
+                            stackedImage.rewind()
+                            stackedLabel.rewind()
+                            fusedInputs["x"] = stackedImage
+                            fusedInputs["y"] = stackedLabel
+
+                            interpreter.runSignature(fusedInputs, fusedOutputs, fused.signature)
+                            fusedLossBuffer.rewind()
                         } else {
-                            callback?.onStatusUpdate("Training Paused")
+                            inputs[trainInput] = feeder.imageTensor
+                            inputs["y"] = feeder.labelTensor
+                            if (sampleWeightBuffer != null) importance?.corrections(feeder.drawProbabilities, sampleWeightBuffer)
+
+                            interpreter.runSignature(inputs, outputs, trainSignature)
+                            lossBuffer.rewind()
+                            sampleLossBuffer?.rewind()
                         }
+                        val stepNanos = (System.nanoTime() - stepStart) / callSteps
+
+                        for (k in 0 until callSteps) {
+                            lastLoss = if (callSteps > 1) fusedLossBuffer.get(k) else lossBuffer.get(0)
+                            // Credited before the slot is released: the loaders refill its sample indices
+                            if (importance != null && sampleLossBuffer != null) {
+                                lastLoss = importance.record(feeder.sampleIndices, feeder.drawProbabilities, sampleLossBuffer)
+                            }
+                            monitor.recordStep(lastLoss)
+                            budget.recordStep()
+                            currentStep += samplesPerStep
+                            cadence.recordStep(stepNanos)
+                        }
+                        for (k in 0 until callSteps) prefetcher.release(globalStep + k)
+                        stepsSinceHardwareCheck += callSteps
+                        stepsSinceUiUpdate += callSteps
+                        stepsSinceWeightProbe += callSteps
 
-                        Thread.sleep(3000) // Sleep 3 seconds before re-evaluating
-                        hardwareIssue = callback?.checkLiveConditions()
-                    }
-                } else {
-                    // For the 49 steps in between, do a super lightweight check just for manual pauses
-                    while (callback?.isPaused() == true) {
-                        if (callback?.isCancelled() == true) {
-                            Log.i(TAG, "Training cancelled by user during pause.")
-                            return
+                        // Push percentage update to the UI diamond AND text every ~100 samples
+                        if (stepsSinceUiUpdate >= uiUpdateInterval) {
+                            stepsSinceUiUpdate = 0
+                            val percent = ((currentStep.toFloat() / totalSteps.toFloat()) * 100).toInt()
+
+                            callback?.onProgress(percent)
+                            callback?.onStatusUpdate("Training: $percent%")
+
+                            Log.d(TAG, "Step $currentStep/$totalSteps | Epoch: $epoch | Loss: $lastLoss")
                         }
-                        Thread.sleep(500)
+
+                    } catch (e: Exception) {
+                        Log.e(TAG, "================ FATAL CRASH IN LOOP ================")
+                        Log.e(TAG, "Failed at Step Index: $stepIdx (batch size $samplesPerStep, $callSteps steps per call)")
+                        throw e
+                    }
+
+                    // NUMERIC HEALTH: the loss every step, the weights every few hundred steps
+                    for (k in 0 until callSteps) {
+                        divergenceGuard.checkLoss(if (callSteps > 1) fusedLossBuffer.get(k) else lastLoss)?.let { throw TrainingDivergedException(it) }
+                    }
+                    if (stepsSinceWeightProbe >= divergenceGuard.probeIntervalSteps) {
+                        stepsSinceWeightProbe = 0
+                        divergenceGuard.probeWeights(interpreter)?.let { throw TrainingDivergedException(it) }
+                    }
+                    stepIdx += callSteps
+
+                    // 3. MID-EPOCH CHECKPOINT (the epoch-end one below covers the last step)
+                    if (cadence.isDue() && stepIdx < stepsPerEpoch) {
+                        saveProgress(epoch, stepIdx, "cadence")
                     }
                 }
 
-                // Final safety catch
-                if (callback?.isCancelled() == true) {
-                    Log.i(TAG, "Training cancelled by user.")
-                    return
+                // --- THROUGHPUT ---
+                val stepsThisSession = stepsPerEpoch - epochFirstStep
+                val epochMillis = maxOf(1L, System.currentTimeMillis() - epochStartTime)
+                val samplesPerSecond = stepsThisSession * samplesPerStep * 1000f / epochMillis
+                val epochStallMillis = (prefetcher.stallNanos - epochStallStart) / 1_000_000f
+                Log.i(TAG, String.format("Epoch %d throughput: %.1f samples/sec (batch size %d) | waited %.1f ms on data prep", epoch, samplesPerSecond, samplesPerStep, epochStallMillis))
+                callback?.onThroughputUpdate(samplesPerSecond)
+                callback?.onEngineConfigUpdate(numThreads, stepsThisSession * 1000f / epochMillis)
+
+                // --- CALCULATE TIME REMAINING ---
+                val completedInSession = (epoch + 1) - currentEpoch
+                val timeElapsed = System.currentTimeMillis() - trainingStartTime
+                val avgTimePerEpoch = timeElapsed / completedInSession
+                val remainingEpochs = numEpochs - (epoch + 1)
+                val remainingMillis = avgTimePerEpoch * remainingEpochs
+
+                if (remainingEpochs > 0) {
+                    val seconds = (remainingMillis / 1000) % 60
+                    val minutes = (remainingMillis / (1000 * 60)) % 60
+                    timeLeftStr = String.format("%dm %ds", minutes, seconds)
+                } else {
+                    timeLeftStr = "Done"
                 }
-                // ----------------------------------------
-
-                try {
-                    // 1. EXTRACT IMAGE
-                    val imgPos = sampleIdx * imgHeight * imgWidth
-                    imageBatch.position(imgPos)
-                    val imgArray = FloatArray(imgHeight * imgWidth)
-                    imageBatch.get(imgArray)
-                    singleImageBuffer.put(imgArray).rewind()
-
-                    // 2. EXTRACT LABEL
-                    val lblPos = sampleIdx * numClasses
-                    labelBatch.position(lblPos)
-                    val lblArray = FloatArray(numClasses)
-                    labelBatch.get(lblArray)
-                    singleLabelBuffer.put(lblArray).rewind()
-
-                    // 3. RUN INFERENCE
-                    interpreter.runSignature(inputs, outputs, "train")
-
-                    lossBuffer.rewind()
-                    lastLoss = lossBuffer.get(0)
-                    currentStep++
-
-                    // Push percentage update to the UI diamond AND text every 100 steps
-                    if (currentStep % 100 == 0) {
-                        val percent = ((currentStep.toFloat() / totalSteps.toFloat()) * 100).toInt()
-
-                        callback?.onProgress(percent)
-                        callback?.onStatusUpdate("Training: $percent%")
-
-                        Log.d(TAG, "Step $currentStep/$totalSteps | Epoch: $epoch | Loss: $lastLoss")
+
+                Log.d(TAG, "--> Epoch $epoch complete (mean loss ${monitor.epochMeanLoss}). Saving checkpoint...")
+                val completedEpochs = epoch + 1
+
+                // Decided before the save, so the checkpoint records the stop and a resumed run honours it
+                if (completedEpochs < numEpochs) {
+                    monitor.onEpochEnd(completedEpochs)?.let { stopReason = it }
+                } else if (numEpochs < plannedEpochs) {
+                    stopReason = capReason
+                }
+                saveProgress(epoch, stepsPerEpoch, "epoch end")
+
+                epochValidator?.let { validator ->
+                    val pressure = callback?.checkBackgroundPressure()
+                    if (pressure != null) {
+                        validator.shutdown(pressure)
+                        monitor.validationAvailable = false
+                    } else if (stopReason.isEmpty()) {
+                        validator.submit(
+                            OverlappedEpochValidator.CheckpointSource {
+                                // The epoch-end checkpoint is still being written by the checkpoint thread.
+                                // Cadence checkpoints of the next epoch may be newer by now: only the generation
+                                // at this epoch boundary holds exactly completedEpochs epochs of training.
+                                checkpointManager.writer.awaitIdle()
+                                checkpointManager.newestVerified(task) { it.lastEpoch == completedEpochs && it.sampleCursor == 0 }?.let { (state, file) ->
+                                    OverlappedEpochValidator.Target("Epoch ${state.lastEpoch}", state.lastEpoch, file)
+                                }
+                            },
+                            OverlappedEpochValidator.Listener { target, report ->
+                                monitor.recordValidation(target.epochsCompleted, report.meanLoss)
+                                callback?.onValidationUpdate(String.format("%s: Acc %.1f%% ±%.1f | Loss %.3f", target.label, report.accuracy * 100, report.confidenceHalfWidth * 100, report.meanLoss))
+                            }
+                        )
                     }
+                }
 
-                } catch (e: Exception) {
-                    Log.e(TAG, "================ FATAL CRASH IN LOOP ================")
-                    Log.e(TAG, "Failed at Sample Index: $sampleIdx")
-                    throw e
+                // UPDATE UI: Send 4 arguments including the new Time Left string
+                callback?.onEpochUpdate(completedEpochs, numEpochs, lastLoss, timeLeftStr)
+
+                if (stopReason.isNotEmpty()) {
+                    Log.i(TAG, "Early stop after $completedEpochs/$numEpochs epochs: $stopReason")
+                    callback?.onStatusUpdate(if (stopReason == capReason) "Compute budget reached after $completedEpochs epochs" else "Converged after $completedEpochs epochs")
+                    outcome = outcomeOf(completedEpochs, plannedEpochs, stopReason, monitor.bestLoss)
+                    break
                 }
+                outcome = outcomeOf(completedEpochs, plannedEpochs, "", if (monitor.validationAvailable) monitor.bestLoss else monitor.epochMeanLoss)
             }
+        } finally {
+            budget.pauseSession()
+            prefetcher.close()
+            epochValidator?.shutdown("training finished")
+            checkpointManager.awaitWrites()
+            outcome = outcome?.let { withCheckpointMetrics(it) }
+            Log.d(TAG, String.format("Prefetch stalls: %d (%.1f ms total)", prefetcher.stallCount, prefetcher.stallNanos / 1_000_000f))
+        }
+
+        // The journal keeps generations; the upload sends CKPT_FILENAME
+        checkpointManager.promoteLatest(task)
+
+        // Guarantee the UI hits 100% when finished
+        callback?.onProgress(100)
+        callback?.onStatusUpdate("Training: 100%")
+        Log.i(TAG, "Training cycle completely finished! ${outcome?.epochsCompleted ?: numEpochs}/$numEpochs epochs done.")
+    }
 
-            // --- CALCULATE TIME REMAINING ---
-            val completedInSession = (epoch + 1) - currentEpoch
-            val timeElapsed = System.currentTimeMillis() - trainingStartTime
-            val avgTimePerEpoch = timeElapsed / completedInSession
-            val remainingEpochs = numEpochs - (epoch + 1)
-            val remainingMillis = avgTimePerEpoch * remainingEpochs
-
-            if (remainingEpochs > 0) {
-                val seconds = (remainingMillis / 1000) % 60
-                val minutes = (remainingMillis / (1000 * 60)) % 60
-                timeLeftStr = String.format("%dm %ds", minutes, seconds)
-            } else {
-                timeLeftStr = "Done"
+    /**
+     * Restores the newest journaled generation after divergence, or the model's initial weights when none exists yet,
+     * and resets the resume state to it. Returns the restored checkpoint (null = started over).
+     */
+    private fun rollBack(): checkpoint_DTO? {
+        val checkpoint = checkpointManager.loadCheckpoint(task, interpreter)
+        if (checkpoint == null) {
+            modelBuffer?.let { buffer ->
+                interpreter.close()
+                interpreter = Interpreter(buffer, Interpreter.Options().setNumThreads(numThreads))
             }
+        }
+
+        resumePoint = checkpoint
+        currentEpoch = checkpoint?.lastEpoch ?: 0
+        shuffleSeed = checkpoint?.shuffleSeed ?: shuffleSeed
+        // Work past the restored generation is discarded and not reported
+        budget.restore(checkpoint?.trainedSteps ?: 0L, checkpoint?.trainedMillis ?: 0L)
+        budgetLimited = checkpoint?.budgetLimited ?: false
+        resumedOrder = if (checkpoint != null) checkpointManager.loadSampleOrder(task, currentEpoch) else null
+        divergenceGuard.reset()
+        divergenceGuard.onInterpreterChanged()
+        return checkpoint
+    }
+
+    /**
+     * Sizes a budgeted run from the tuner's measured rate, probing the pinned thread count when tuning was skipped
+     * (or the head signature when training head-only).
+     * The bare train-step rate is discounted for data loading, checkpoints and UI work.
+     */
+    private fun planBudget(epochs: Int, stepsPerEpoch: Int, samplesPerStep: Int, signature: String, input: String, knownRate: Float = 0f): TrainingBudget.Plan {
+        // The tuner timed "train"; a head-only step is far cheaper and is timed on its own. A fused run brings its own rate.
+        var rate = if (knownRate > 0f) knownRate else if (signature == "train") threadTuner.measuredStepsPerSecond else 0f
+        if (rate <= 0f) rate = modelBuffer?.let { threadTuner.measureRate(it, numThreads, signature, input) } ?: 0f
+
+        val plan = budget.plan(rate * BUDGET_RATE_MARGIN, epochs, stepsPerEpoch, samplesPerStep)
+        Log.i(TAG, String.format("Compute budget at %.1f steps/sec: %d epochs of %d samples (task asks for %d of %d)", rate, plan.epochs, plan.samplesPerEpoch, epochs, stepsPerEpoch * samplesPerStep))
+        return plan
+    }
 
-            Log.d(TAG, "--> Epoch $epoch complete. Saving checkpoint...")
-            val completedEpochs = epoch + 1
-            checkpointManager.createCheckpoint(task, interpreter, completedEpochs)
+    /** Outcome of this run, with the work actually done across sessions. */
+    private fun outcomeOf(epochsCompleted: Int, plannedEpochs: Int, stopReason: String, finalLoss: Float, aborted: Boolean = false): trainingOutcome_DTO {
+        return trainingOutcome_DTO(
+            epochsCompleted, plannedEpochs, stopReason, finalLoss, aborted,
+            samplesTrained = budget.stepsUsed * samplesPerStep,
+            trainingMillis = budget.millisUsed,
+            budgetLimited = budgetLimited,
+            stepsTrained = budget.stepsUsed,
+            plannedSteps = plannedSteps,
+            importanceSampled = importanceSampled
+        ).let { withCheckpointMetrics(it) }
+    }
+
+    /** [outcome] with the checkpoint counters so far; they are final once the writes have been awaited. */
+    private fun withCheckpointMetrics(outcome: trainingOutcome_DTO): trainingOutcome_DTO {
+        val writer = checkpointManager.writer
+        return outcome.copy(
+            checkpointsWritten = writer.writtenCount,
+            checkpointsSkipped = writer.skippedCount,
+            checkpointsMerged = writer.mergedCount,
+            checkpointsFailed = writer.failedCount,
+            checkpointSnapshotMillis = checkpointManager.totalSnapshotMillis,
+            checkpointWriteMillis = writer.totalWriteMillis
+        )
+    }
 
-            // UPDATE UI: Send 4 arguments including the new Time Left string
-            callback?.onEpochUpdate(completedEpochs, numEpochs, lastLoss, timeLeftStr)
+    /**
+     * Takes over a warm interpreter with [weights] restored into it and [buffer] as its model; false when it cannot
+     * be used, in which case the caller closes it (the snapshot file is shared with the caller's next attempt).
+     */
+    private fun adoptWarmInterpreter(warm: WarmResourceCache.WarmInterpreter, pinnedThreads: Int, weights: File, buffer: MappedByteBuffer): Boolean {
+        try {
+            if (pinnedThreads > 0 && pinnedThreads != warm.numThreads) {
+                throw Exception("task pins $pinnedThreads threads, warm interpreter has ${warm.numThreads}")
+            }
+            val checkpointInputs = mutableMapOf<String, Any>("checkpoint_path" to weights.absolutePath)
+            warm.interpreter.runSignature(checkpointInputs, mutableMapOf<String, Any>(), "restore")
+        } catch (e: Exception) {
+            Log.w(TAG, "Warm interpreter not reusable (${e.message}). Building a fresh one.")
+            return false
         }
 
-        // Guarantee the UI hits 100% when finished
-        callback?.onProgress(100)
-        callback?.onStatusUpdate("Training: 100%")
-        Log.i(TAG, "Training cycle completely finished! All $numEpochs epochs done.")
+        modelBuffer = buffer
+        initialWeights = weights
+        numThreads = warm.numThreads
+        threadTuner.adopt(warm.tunedThreads, warm.stepsPerSecond)
+        Log.i(TAG, "Reusing warm interpreter ($numThreads threads): initial weights restored, no cold start.")
+        return true
+    }
+
+    /** Saves the freshly built interpreter's weights, so this or a later task can reset a warm copy to them. */
+    private fun snapshotInitialWeights(created: Interpreter, key: String) {
+        val snapshot = WarmResourceCache.snapshotFileFor(key)
+        try {
+            val checkpointInputs = mutableMapOf<String, Any>("checkpoint_path" to snapshot.absolutePath)
+            created.runSignature(checkpointInputs, mutableMapOf<String, Any>(), "save")
+            initialWeights = snapshot
+        } catch (e: Exception) {
+            Log.w(TAG, "Could not snapshot initial weights, interpreter will not be kept warm: ${e.message}")
+            snapshot.delete()
+            initialWeights = null
+        }
+    }
+
+    /**
+     * Swaps in an interpreter with a different thread count without losing the trained weights:
+     * the current weights go through the save/restore signatures into the new instance.
+     */
+    private fun rebuildInterpreter(threads: Int) {
+        val buffer = modelBuffer ?: return
+        val snapshot = File("/data/data/com.example.fractal/files/", "${task.task_Id}_rethread.ckpt")
+
+        try {
+            val checkpointInputs = mutableMapOf<String, Any>("checkpoint_path" to snapshot.absolutePath)
+            interpreter.runSignature(checkpointInputs, mutableMapOf<String, Any>(), "save")
+
+            val replacement = Interpreter(buffer, Interpreter.Options().setNumThreads(threads))
+            replacement.runSignature(checkpointInputs, mutableMapOf<String, Any>(), "restore")
+
+            interpreter.close()
+            interpreter = replacement
+            divergenceGuard.onInterpreterChanged()
+            Log.i(TAG, "Interpreter rebuilt: $numThreads -> $threads threads, weights carried over.")
+            numThreads = threads
+        } catch (e: Exception) {
+            Log.e(TAG, "Interpreter rebuild failed, keeping $numThreads threads: ${e.message}")
+        } finally {
+            snapshot.delete()
+        }
+    }
+
+    /**
+     * Works out how many samples a single "train" (or "train_head") call consumes.
+     * The train signature's input tensors are fixed-size, so the model decides: if "x" holds
+     * BATCH_SIZE images we feed whole batches, if it holds a single image we fall back to per-sample steps.
+     */
+    private fun resolveTrainBatchSize(requestedBatch: Int, imageSize: Int, numClasses: Int, signature: String = "train", input: String = "x"): Int {
+        return try {
+            val imageSlots = interpreter.getInputTensorFromSignature(input, signature).numElements() / imageSize
+            val labelSlots = interpreter.getInputTensorFromSignature("y", signature).numElements() / numClasses
+
+            when {
+                imageSlots <= 1 || labelSlots != imageSlots -> {
+                    Log.i(TAG, "Train signature accepts a single sample. Using per-sample fallback (requested batch $requestedBatch).")
+                    1
+                }
+                imageSlots != requestedBatch -> {
+                    Log.w(TAG, "Task BATCH_SIZE is $requestedBatch but the model was exported with batch $imageSlots. Using $imageSlots.")
+                    imageSlots
+                }
+                else -> {
+                    Log.i(TAG, "Train signature accepts batches of $imageSlots. Using mini-batch training.")
+                    imageSlots
+                }
+            }
+        } catch (e: Exception) {
+            Log.w(TAG, "Could not inspect train signature tensors (${e.message}). Using per-sample fallback.")
+            1
+        }
+    }
+
+    /** Element count of an optional [signature] tensor, or 0 when the model does not export it. */
+    private fun signatureTensorSize(signature: String, name: String, isInput: Boolean): Int {
+        return try {
+            val tensor = if (isInput) interpreter.getInputTensorFromSignature(name, signature) else interpreter.getOutputTensorFromSignature(name, signature)
+            tensor.numElements()
+        } catch (e: Exception) {
+            0
+        }
+    }
+
+    /**
+     * Sampler for IMPORTANCE_SAMPLING, carrying on from the estimates saved with the checkpoint, or null when it is
+     * off or cannot run here: random draws would thrash a streamed dataset's windows, and without per-sample losses
+     * and weights in [signature] neither the estimates nor the bias correction would be exact.
+     */
+    private fun createImportanceSampler(imageTask: Image_Task, dataset: ImageDataset, trainingSamples: IntArray, signature: String, batchSize: Int): ImportanceSampler? {
+        if (!imageTask.IMPORTANCE_SAMPLING || trainingSamples.isEmpty()) return null
+        if (dataset.blockSize < dataset.sampleCount) {
+            Log.w(TAG, "Importance sampling disabled: dataset is streamed")
+            return null
+        }
+        if (signatureTensorSize(signature, SAMPLE_WEIGHT_INPUT, isInput = true) != batchSize ||
+            signatureTensorSize(signature, SAMPLE_LOSS_OUTPUT, isInput = false) != batchSize) {
+            Log.w(TAG, "Importance sampling disabled: \"$signature\" needs a [$batchSize] \"$SAMPLE_WEIGHT_INPUT\" input and \"$SAMPLE_LOSS_OUTPUT\" output. Training on shuffled passes.")
+            return null
+        }
+
+        val sampler = ImportanceSampler(trainingSamples)
+        if (resumePoint != null) checkpointManager.loadSampleLosses(task, trainingSamples.size)?.let { sampler.restore(it) }
+        return sampler
+    }
+
+    /** HEAD_ONLY needs the model to export both the backbone and the head-training signatures. */
+    private fun supportsHeadTraining(): Boolean {
+        val signatures = interpreter.signatureKeys.toSet()
+        if (FeatureCache.SIGNATURE_FEATURES in signatures && FeatureCache.SIGNATURE_TRAIN_HEAD in signatures) return true
+
+        Log.w(TAG, "HEAD_ONLY requested but the model lacks \"${FeatureCache.SIGNATURE_FEATURES}\"/\"${FeatureCache.SIGNATURE_TRAIN_HEAD}\" signatures. Training the full model.")
+        return false
+    }
+
+    /**
+     * Background evaluator for OVERLAP_VALIDATION, or null when it is off or cannot run here:
+     * it needs a held-out split, and a streaming dataset would have its windows thrashed by a second reader.
+     */
+    private fun createEpochValidator(imageTask: Image_Task, dataset: ImageDataset, imageSize: Int, numClasses: Int): OverlappedEpochValidator? {
+        if (!imageTask.OVERLAP_VALIDATION) return null
+        val buffer = modelBuffer ?: return null
+
+        if (dataset.blockSize < dataset.sampleCount) {
+            Log.w(TAG, "Overlapped validation disabled: dataset is streamed")
+            return null
+        }
+        if (DatasetSplit.heldOutCount(dataset.sampleCount, imageTask.VALIDATION_SPLIT) == 0) {
+            Log.w(TAG, "Overlapped validation disabled: VALIDATION_SPLIT holds out no samples")
+            return null
+        }
+
+        val order = BatchedEvaluator.evaluationOrder(dataset, imageTask.VALIDATION_SPLIT, task.task_Id.toLong(), imageTask.EVAL_CONFIDENCE > 0f)
+        return OverlappedEpochValidator(buffer, dataset, order, imageSize, numClasses, imageTask.EVAL_CONFIDENCE)
+    }
+
+    /**
+     * Prefetch workers: the task's DATA_WORKERS when set, otherwise one (plain copies are memory-bound)
+     * or, with augmentation, the cores the interpreter leaves free, capped so the pool stays small.
+     */
+    private fun resolveDataWorkers(requested: Int, augmentation: AugmentationPipeline): Int {
+        if (requested > 0) return requested
+        if (augmentation.isEmpty) return 1
+
+        val spareCores = Runtime.getRuntime().availableProcessors() - numThreads
+        return spareCores.coerceIn(1, MAX_AUTO_DATA_WORKERS)
+    }
+
+    companion object {
+        private const val MAX_AUTO_DATA_WORKERS = 4
+
+        // Share of the tuner's bare train-step rate a budgeted run plans with
+        private const val BUDGET_RATE_MARGIN = 0.8f
+
+        // Spreads per-step augmentation seeds (golden-ratio increment)
+        private const val AUGMENT_SEED_STRIDE = -0x61c8864680b583ebL
+
+        // Optional train signature tensors used by importance sampling: [batch] weights in, [batch] unweighted losses out
+        private const val SAMPLE_WEIGHT_INPUT = "sample_weight"
+        private const val SAMPLE_LOSS_OUTPUT = "sample_loss"
     }
-}
\ No newline at end of file
+}
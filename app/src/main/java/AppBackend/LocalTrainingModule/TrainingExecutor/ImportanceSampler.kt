@@ -0,0 +1,158 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+import java.nio.FloatBuffer
+import java.util.Random
+
+/**
+ * Loss-aware sample selection (IMPORTANCE_SAMPLING): samples the model still gets wrong are drawn more often,
+ * samples it has learned rarely, instead of every sample once per epoch.
+ *
+ * One loss estimate per training sample lives in a FloatArray, with a sum-tree over them, so both a draw and the
+ * update after a step are O(log n). A [uniformMix] share of the draws ignores the estimates. No sample's probability
+ * can then fall below uniformMix / n, so a sample whose estimate is stale still comes back.
+ *
+ * Drawing by loss biases the gradient towards hard samples. [corrections] gives the weight 1 / (n * p) that undoes this,
+ * with p the probability the sample was drawn with. A batch weighted with it has the uniform batch's expected loss
+ * and gradient, so the model has to take per-sample weights and report per-sample losses.
+ * Draws and arguments are dataset indices out of [samples] (the training split, or its coreset).
+ * Synchronized: the prefetch workers draw while the training thread records losses.
+ */
+class ImportanceSampler(private val samples: IntArray, private val uniformMix: Float = DEFAULT_UNIFORM_MIX) {
+
+    val sampleCount: Int get() = samples.size
+
+    // Dataset index -> position in [samples]; estimates and leaves are kept by position
+    private val positions = IntArray((samples.maxOrNull() ?: -1) + 1).also { map ->
+        for (position in samples.indices) map[samples[position]] = position
+    }
+
+    // Until the first loss arrives every estimate is unknown and draws are uniform; that loss then seeds them all,
+    // so samples not yet visited stay as likely as the model's starting loss makes them
+    private val estimates = FloatArray(sampleCount)
+    private var seeded = false
+
+    // Complete binary tree over the leaves (node 1 = root, leaf of position i = leafCount + i); doubles so the
+    // sums do not drift, and each parent is recomputed from its children rather than adjusted
+    private val leafCount: Int = run {
+        var leaves = 1
+        while (leaves < sampleCount) leaves = leaves shl 1
+        leaves
+    }
+    private val tree = DoubleArray(2 * leafCount)
+
+    /**
+     * Fills [out] with independent draws and [probabilities] with the probability each was drawn with.
+     * The estimates move on as steps train, so [corrections] and [record] must use these, not the current ones.
+     */
+    @Synchronized
+    fun drawBatch(random: Random, out: IntArray, probabilities: FloatArray) {
+        for (i in out.indices) {
+            out[i] = draw(random)
+            probabilities[i] = probability(out[i])
+        }
+    }
+
+    /** Probability with which [sample] is drawn right now. */
+    @Synchronized
+    fun probability(sample: Int): Float {
+        if (!seeded) return 1f / sampleCount
+        return ((1f - uniformMix) * (priority(positions[sample]) / tree[1])).toFloat() + uniformMix / sampleCount
+    }
+
+    /** Writes the importance weight 1 / (n * p) of each draw probability in [probabilities] to [out] (the model's sample-weight input). */
+    fun corrections(probabilities: FloatArray, out: FloatBuffer) {
+        out.clear()
+        for (p in probabilities) out.put(correction(p))
+        out.rewind()
+    }
+
+    /**
+     * Feeds a trained batch back: [indices] drawn with [probabilities], and the model's unweighted per-sample losses.
+     * Returns the batch loss corrected to the uniform-sampling mean, which is what the convergence monitor compares.
+     */
+    @Synchronized
+    fun record(indices: IntArray, probabilities: FloatArray, sampleLosses: FloatBuffer): Float {
+        var correctedSum = 0f
+        for (i in indices.indices) correctedSum += correction(probabilities[i]) * sampleLosses.get(i)
+        val corrected = correctedSum / indices.size
+        if (!corrected.isFinite()) return corrected
+
+        if (!seeded) seed(corrected)
+        for (i in indices.indices) {
+            val loss = sampleLosses.get(i)
+            if (loss.isFinite()) update(positions[indices[i]], loss)
+        }
+        return corrected
+    }
+
+    /** Copies the estimates into [out] for a checkpoint; false while there are none yet. */
+    @Synchronized
+    fun snapshot(out: FloatArray): Boolean {
+        if (!seeded) return false
+        System.arraycopy(estimates, 0, out, 0, sampleCount)
+        return true
+    }
+
+    /** Continues from estimates saved with a checkpoint. */
+    @Synchronized
+    fun restore(saved: FloatArray) {
+        if (saved.size != sampleCount) return
+        System.arraycopy(saved, 0, estimates, 0, sampleCount)
+        seeded = true
+        rebuild()
+    }
+
+    private fun draw(random: Random): Int {
+        if (!seeded || random.nextFloat() < uniformMix) return samples[random.nextInt(sampleCount)]
+
+        var target = random.nextDouble() * tree[1]
+        var node = 1
+        while (node < leafCount) {
+            val left = node shl 1
+            if (target < tree[left]) {
+                node = left
+            } else {
+                target -= tree[left]
+                node = left + 1
+            }
+        }
+        // Rounding can step past the last real leaf into the zero-priority padding
+        return samples[minOf(node - leafCount, sampleCount - 1)]
+    }
+
+    private fun update(position: Int, loss: Float) {
+        estimates[position] = loss
+        var node = leafCount + position
+        tree[node] = priority(position)
+        node = node shr 1
+        while (node >= 1) {
+            tree[node] = tree[node shl 1] + tree[(node shl 1) + 1]
+            node = node shr 1
+        }
+    }
+
+    private fun seed(loss: Float) {
+        estimates.fill(loss)
+        seeded = true
+        rebuild()
+    }
+
+    private fun rebuild() {
+        tree.fill(0.0)
+        for (i in 0 until sampleCount) tree[leafCount + i] = priority(i)
+        for (node in leafCount - 1 downTo 1) tree[node] = tree[node shl 1] + tree[(node shl 1) + 1]
+    }
+
+    // 1 / (n * p): at most 1 / uniformMix, since no probability falls below uniformMix / n
+    private fun correction(probability: Float): Float = 1f / (sampleCount * probability)
+
+    // A learned sample keeps a small share of the tree
+    private fun priority(position: Int): Double = maxOf(0f, estimates[position]).toDouble() + PRIORITY_FLOOR
+
+    companion object {
+        // Share of uniform draws: bounds the importance weights at 1 / DEFAULT_UNIFORM_MIX
+        const val DEFAULT_UNIFORM_MIX = 0.2f
+
+        private const val PRIORITY_FLOOR = 1e-4
+    }
+}
@@ -0,0 +1,176 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+import android.os.Process
+import android.os.SystemClock
+import android.util.Log
+import AppBackend.ResourceManagement.ResourceManager.ResourceManager_Live_DTO
+import org.tensorflow.lite.Interpreter
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Picks the CPU thread count for the training Interpreter.
+ *
+ * At startup every candidate count is timed on a throw-away probe interpreter (its weights are
+ * discarded, the real interpreter is built afterwards). During training the live resource readings
+ * are used to step the count down when the phone runs hot or other apps saturate the CPU, and back up
+ * towards the tuned value once it has cooled down. The trainer's own CPU time is taken out of the
+ * system-wide reading, so training at full speed does not count as contention.
+ */
+class InterpreterThreadTuner(private val maxThreads: Int = Runtime.getRuntime().availableProcessors()) {
+
+    private val TAG = "ThreadTuner"
+
+    var tunedThreads: Int = 1
+        private set
+    var measuredStepsPerSecond: Float = 0f
+        private set
+
+    private var lastAdjustmentTime = 0L
+
+    // Process CPU time at the previous reevaluation, for this process's share of the interval since
+    private var lastCpuMillis = -1L
+    private var lastWallMillis = 0L
+
+    fun candidates(): List<Int> = listOf(1, 2, 4, maxThreads).filter { it in 1..maxThreads }.distinct()
+
+    /** Times every candidate on the "train" signature and keeps the fastest. */
+    fun tune(model: ByteBuffer): Int {
+        var bestThreads = 1
+        var bestRate = 0f
+
+        for (threads in candidates()) {
+            val rate = try {
+                measure(model, threads)
+            } catch (e: Exception) {
+                Log.w(TAG, "Probe with $threads threads failed: ${e.message}")
+                continue
+            }
+            Log.i(TAG, String.format("Probe: %d threads -> %.1f steps/sec", threads, rate))
+
+            // A bigger pool has to be clearly faster to be worth the extra cores and heat
+            if (rate > bestRate * IMPROVEMENT_MARGIN) {
+                bestRate = rate
+                bestThreads = threads
+            }
+        }
+
+        tunedThreads = bestThreads
+        measuredStepsPerSecond = bestRate
+        Log.i(TAG, "Selected $bestThreads interpreter threads (${String.format("%.1f", bestRate)} steps/sec)")
+        return bestThreads
+    }
+
+    /** Skips probing when the task pins the thread count. */
+    fun pin(threads: Int): Int {
+        tunedThreads = threads
+        Log.i(TAG, "Task pins the interpreter to $threads threads. Skipping probe.")
+        return threads
+    }
+
+    /**
+     * Times [threads] alone on [signature] when tune() was skipped or timed a different signature,
+     * so a budgeted run still has a step rate to plan with.
+     */
+    fun measureRate(model: ByteBuffer, threads: Int, signature: String = "train", input: String = "x"): Float {
+        val rate = try {
+            measure(model, threads, signature, input)
+        } catch (e: Exception) {
+            Log.w(TAG, "Rate probe with $threads threads failed: ${e.message}")
+            0f
+        }
+        // measuredStepsPerSecond always describes "train" steps
+        if (signature == "train") measuredStepsPerSecond = rate
+        return rate
+    }
+
+    /** Takes over the count and rate tuned for the same model by an earlier task (warm interpreter). */
+    fun adopt(threads: Int, stepsPerSecond: Float): Int {
+        tunedThreads = threads
+        measuredStepsPerSecond = stepsPerSecond
+        Log.i(TAG, "Reusing $threads tuned threads (${String.format("%.1f", stepsPerSecond)} steps/sec). Skipping probe.")
+        return threads
+    }
+
+    /** Called at the hardware-check cadence. Returns the thread count to switch to, or null to keep [current]. */
+    fun reevaluate(current: Int, live: ResourceManager_Live_DTO?): Int? {
+        if (live == null) return null
+
+        // Sampled on every call so the share covers one check interval, cooldown or not.
+        // Until there is a previous sample the whole reading is taken as our own.
+        val ownCpu = ownCpuPercent() ?: live.cpuPercentage
+        val otherCpu = maxOf(0, live.cpuPercentage - ownCpu)
+
+        val now = System.currentTimeMillis()
+        if (now - lastAdjustmentTime < ADJUSTMENT_COOLDOWN_MS) return null
+
+        val stressed = live.temperature >= HOT_TEMPERATURE_C || otherCpu >= CONTENDED_CPU_PERCENT
+        val relaxed = live.temperature <= COOL_TEMPERATURE_C && otherCpu < CONTENDED_CPU_PERCENT
+
+        val target = when {
+            stressed && current > 1 -> current / 2
+            relaxed && current < tunedThreads -> minOf(tunedThreads, current * 2)
+            else -> return null
+        }
+
+        lastAdjustmentTime = now
+        Log.i(TAG, "Live conditions (temp ${live.temperature}°C, cpu ${live.cpuPercentage}%, ${otherCpu}% other apps) -> $current to $target threads")
+        return target
+    }
+
+    /** Share of the whole device's CPU this process (all its threads) used since the previous call; null on the first. */
+    private fun ownCpuPercent(): Int? {
+        val cpu = Process.getElapsedCpuTime()
+        val wall = SystemClock.elapsedRealtime()
+        val previousCpu = lastCpuMillis
+        val previousWall = lastWallMillis
+        lastCpuMillis = cpu
+        lastWallMillis = wall
+        if (previousCpu < 0 || wall <= previousWall) return null
+
+        val cores = Runtime.getRuntime().availableProcessors()
+        return ((cpu - previousCpu) * 100 / ((wall - previousWall) * cores)).toInt().coerceIn(0, 100)
+    }
+
+    private fun measure(model: ByteBuffer, threads: Int, signature: String = "train", input: String = "x"): Float {
+        val probe = Interpreter(model, Interpreter.Options().setNumThreads(threads))
+        try {
+            val inputs = mutableMapOf<String, Any>(
+                input to directBuffer(probe.getInputTensorFromSignature(input, signature).numBytes()),
+                "y" to directBuffer(probe.getInputTensorFromSignature("y", signature).numBytes())
+            )
+            val outputs = mutableMapOf<String, Any>(
+                "loss" to directBuffer(probe.getOutputTensorFromSignature("loss", signature).numBytes())
+            )
+
+            repeat(WARMUP_STEPS) { probe.runSignature(inputs, outputs, signature) }
+
+            var steps = 0
+            val start = System.nanoTime()
+            var elapsed = 0L
+            while (steps < MAX_TIMED_STEPS && elapsed < TIME_BUDGET_NANOS) {
+                probe.runSignature(inputs, outputs, signature)
+                steps++
+                elapsed = System.nanoTime() - start
+            }
+            return steps * 1_000_000_000f / maxOf(1L, elapsed)
+        } finally {
+            probe.close()
+        }
+    }
+
+    private fun directBuffer(bytes: Int): ByteBuffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder())
+
+    companion object {
+        private const val WARMUP_STEPS = 3
+        private const val MAX_TIMED_STEPS = 50
+        private const val TIME_BUDGET_NANOS = 400_000_000L
+        private const val IMPROVEMENT_MARGIN = 1.1f
+
+        private const val HOT_TEMPERATURE_C = 42
+        private const val COOL_TEMPERATURE_C = 38
+        // Load from other processes, in percent of the whole device
+        private const val CONTENDED_CPU_PERCENT = 60
+        private const val ADJUSTMENT_COOLDOWN_MS = 60_000L
+    }
+}
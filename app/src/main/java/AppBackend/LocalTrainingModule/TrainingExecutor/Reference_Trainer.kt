@@ -0,0 +1,487 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+import android.util.Log
+import AppBackend.DataManager.Coreset.CoresetSelector
+import AppBackend.DataManager.DataLoaderAndInitializer.DatasetSplit
+import AppBackend.DataManager.DataLoaderAndInitializer.ImageDataset
+import AppBackend.LocalTrainingModule.ReferenceEngine.DenseNetwork
+import AppBackend.LocalTrainingModule.ReferenceEngine.DenseWeightsFile
+import AppBackend.LocalTrainingModule.ReferenceEngine.MatrixKernels
+import AppBackend.LocalTrainingModule.TrainingStateManager.checkpoint_DTO
+import AppBackend.LocalTrainingModule.TrainingStateManager.trainingOutcome_DTO
+import AppBackend.TaskContainer.Image_Task
+import AppBackend.TaskContainer.Task
+import AppBackend.Validator.ModelInferenceValidator.InferenceValidator
+import com.google.gson.Gson
+import java.io.File
+import java.io.FileInputStream
+import java.nio.FloatBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Trainer for dense models (softmax regression or a small ReLU MLP, see [DenseNetwork]) that runs on the JVM alone,
+ * with no TFLite training signatures or native kernels: the fallback for devices where those fail, and the engine the
+ * plain-JVM tests and benchmarks run. Selected with "Reference_Trainer" in the task's training_type.
+ *
+ * Initial weights come from MODEL_FILENAME when the server ships them as a [DenseWeightsFile]; otherwise the network
+ * is built from DENSE_HIDDEN_UNITS and seeded from the task id, so every device starts from the same weights.
+ * Each epoch end, pause and cancel writes the weights to CKPT_FILENAME (the file the upload sends) and the resume
+ * state beside it; a killed run resumes at the step it was saved at.
+ */
+class ReferenceTrainer : Trainer {
+
+    override lateinit var task: Task
+    override lateinit var trainingData: Any
+    override var currentEpoch: Int = 0
+    override var outcome: trainingOutcome_DTO? = null
+
+    private val TAG = "ReferenceTrainer"
+    private val filesDir = File("/data/data/com.example.fractal/files/")
+    private val gson = Gson()
+
+    private lateinit var kernels: MatrixKernels
+    private lateinit var network: DenseNetwork
+
+    // Shuffle seed and monitor history carried across sessions in the resume state
+    private var shuffleSeed: Long = 0L
+    private var resumePoint: checkpoint_DTO? = null
+    private lateinit var budget: TrainingBudget
+    private var budgetLimited = false
+    private var samplesPerStep = 1
+    private var plannedSteps = 0L
+    // DENSE_LEARNING_RATE, halved for a retry after divergence
+    private var learningRate = 0f
+
+    override fun setUpTrainer(pTrainingData: Any?, pTask: Task) {
+        Log.d(TAG, "--> setUpTrainer(): Initializing...")
+        this.task = pTask
+
+        if (pTrainingData !is ImageDataset) {
+            Log.e(TAG, "Invalid training data format! Expected ImageDataset")
+            throw IllegalArgumentException("Invalid training data format")
+        }
+        this.trainingData = pTrainingData
+
+        val imageTask = task as Image_Task
+        val threads = if (imageTask.NUM_THREADS > 0) imageTask.NUM_THREADS else Runtime.getRuntime().availableProcessors()
+        kernels = MatrixKernels(threads)
+        network = DenseNetwork(layerSizes(pTrainingData.imageSize, imageTask.NUM_CLASSES), kernels)
+        Log.i(TAG, "Dense network ${network.layerSizes.joinToString("-")} (${network.parameterCount} parameters) on $threads threads")
+
+        initializeWeights()
+    }
+
+    override fun loadModelFile(): MappedByteBuffer {
+        val imageTask = task as Image_Task
+        val modelFile = File(filesDir, imageTask.MODEL_FILENAME)
+        if (!modelFile.exists()) {
+            throw Exception("Model file not found in internal storage: ${modelFile.absolutePath}")
+        }
+        return mapFile(modelFile)
+    }
+
+    /** Resumes from the last checkpoint, or starts from the shipped (or seeded) initial weights. */
+    override fun initializeWeights() {
+        val imageTask = task as Image_Task
+        val resumed = restoreCheckpoint()
+        if (!resumed) loadInitialWeights()
+
+        // A checkpoint without a seed predates shuffling and resumes at an epoch boundary: seed it like a fresh run
+        shuffleSeed = resumePoint?.shuffleSeed ?: if (imageTask.SHUFFLE_SEED >= 0) imageTask.SHUFFLE_SEED else System.nanoTime()
+        learningRate = imageTask.DENSE_LEARNING_RATE
+        budget = TrainingBudget(imageTask.TRAIN_TIME_BUDGET_SEC * 1000L, imageTask.TRAIN_STEP_BUDGET.toLong(), imageTask.TRAIN_DEADLINE)
+        budget.restore(resumePoint?.trainedSteps ?: 0L, resumePoint?.trainedMillis ?: 0L)
+        budgetLimited = resumePoint?.budgetLimited ?: false
+        Log.d(TAG, "--> initializeWeights(): ${if (resumed) "resuming at epoch $currentEpoch, sample ${resumePoint?.sampleCursor ?: 0}" else "fresh start"}")
+    }
+
+    /**
+     * Runs the epochs and handles divergence (DIVERGENCE_POLICY) as ImageTrainer does: the weights roll back to the
+     * last checkpoint, then "retry" trains once more with a fresh sample order at half the learning rate over half the
+     * remaining epochs, "rollback" finishes with the restored weights and "abort" gives the task up without uploading.
+     */
+    override fun trainModel(callback: TrainingCallback?) {
+        val imageTask = task as Image_Task
+        var epochLimit = imageTask.NUM_EPOCHS
+        var limitReason = ""
+        var retried = false
+
+        while (true) {
+            try {
+                trainEpochs(callback, epochLimit, limitReason)
+                return
+            } catch (e: TrainingDivergedException) {
+                Log.e(TAG, "Training diverged at epoch $currentEpoch: ${e.reason}")
+                callback?.onStatusUpdate("Training diverged. Rolling back...")
+                val restored = rollBack()
+
+                if (imageTask.DIVERGENCE_POLICY == "retry" && !retried) {
+                    retried = true
+                    // Unlike a TFLite model, the dense network's step size can be lowered as well as the batch order changed
+                    shuffleSeed = System.nanoTime()
+                    learningRate *= 0.5f
+                    epochLimit = currentEpoch + maxOf(1, (imageTask.NUM_EPOCHS - currentEpoch + 1) / 2)
+                    limitReason = "Shortened to $epochLimit epochs after divergence (${e.reason})"
+                    Log.i(TAG, "Retrying from epoch $currentEpoch up to epoch $epochLimit at learning rate $learningRate")
+                    continue
+                }
+
+                val usable = restored && imageTask.DIVERGENCE_POLICY != "abort"
+                outcome = outcomeOf(currentEpoch, imageTask.NUM_EPOCHS, "Diverged: ${e.reason}", resumePoint?.bestMonitoredLoss ?: 0f, aborted = !usable)
+                return
+            }
+        }
+    }
+
+    private fun trainEpochs(callback: TrainingCallback?, epochLimit: Int, limitReason: String) {
+        Log.d(TAG, "========== TRAIN MODEL STARTED ==========")
+        val imageTask = task as Image_Task
+        val dataset = trainingData as ImageDataset
+
+        val numClasses = imageTask.NUM_CLASSES
+        val imageSize = dataset.imageSize
+        // The tail of the dataset is held out for validate()
+        val numTrainings = DatasetSplit.trainingCount(minOf(imageTask.NUM_TRAININGS, dataset.sampleCount), imageTask.VALIDATION_SPLIT)
+        // All of the training split, or its coreset (CORESET_FRACTION)
+        val trainingSamples = CoresetSelector(imageTask).trainingSamples(numTrainings)
+        val batch = imageTask.BATCH_SIZE.coerceIn(1, maxOf(1, trainingSamples.size))
+        samplesPerStep = batch
+        val stepsPerEpoch = trainingSamples.size / batch
+        val plannedEpochs = imageTask.NUM_EPOCHS
+        // Below plannedEpochs for a shortened retry after divergence
+        val numEpochs = minOf(plannedEpochs, epochLimit)
+        plannedSteps = plannedEpochs.toLong() * (numTrainings / batch)
+
+        // The batch shrinks to the sample count, so only an empty training split leaves nothing to train
+        if (stepsPerEpoch == 0) {
+            val reason = "No training samples (NUM_TRAININGS ${imageTask.NUM_TRAININGS}, ${dataset.sampleCount} in the dataset)"
+            Log.e(TAG, "Cannot train: $reason")
+            outcome = outcomeOf(currentEpoch, plannedEpochs, reason, 0f, aborted = true)
+            return
+        }
+
+        val recordedStop = resumePoint?.stopReason.orEmpty()
+        if (currentEpoch >= numEpochs || recordedStop.isNotEmpty()) {
+            outcome = outcomeOf(minOf(currentEpoch, plannedEpochs), plannedEpochs, recordedStop, resumePoint?.bestMonitoredLoss ?: 0f)
+            Log.i(TAG, "Model is already fully trained ($currentEpoch/$numEpochs epochs). Skipping training phase.")
+            callback?.onProgress(100)
+            callback?.onStatusUpdate("Training Already Completed")
+            return
+        }
+
+        // The feeder fills straight into the arrays the network reads
+        val images = FloatArray(batch * imageSize)
+        val labels = FloatArray(batch * numClasses)
+        val feeder = TrainingBatchFeeder(dataset.openReader(), imageSize, numClasses, batch, null, FloatBuffer.wrap(images), FloatBuffer.wrap(labels))
+
+        val permutation = SamplePermutation(trainingSamples, shuffleSeed, imageTask.SHUFFLE, dataset.blockSize)
+        val order = IntArray(trainingSamples.size)
+        val monitor = ConvergenceMonitor(imageTask.EARLY_STOP_PATIENCE, imageTask.EARLY_STOP_MIN_DELTA, imageTask.EARLY_STOP_MIN_EPOCHS, preferValidation = false)
+        resumePoint?.let { monitor.restore(it.bestMonitoredLoss, it.monitoredEpochs, it.epochsWithoutImprovement, it.monitoredHeldOut) }
+        val divergenceGuard = DivergenceGuard()
+
+        // A mid-epoch checkpoint resumes at the step it was taken at; the seeded order replays the same batches
+        val firstEpoch = currentEpoch
+        val resumeStep = minOf((resumePoint?.sampleCursor ?: 0) / batch, stepsPerEpoch)
+
+        val hardwareCheckInterval = maxOf(1, 50 / batch)
+        val uiUpdateInterval = maxOf(1, 100 / batch)
+        val totalSteps = numEpochs * stepsPerEpoch
+        var stopReason = ""
+
+        callback?.onEpochUpdate(currentEpoch, numEpochs, 0f, "Calculating...")
+        callback?.onEngineConfigUpdate(kernels.parallelism, 0f)
+
+        budget.startSession()
+        try {
+            epochLoop@ for (epoch in firstEpoch until numEpochs) {
+                permutation.fill(epoch, order)
+                dataset.onEpochOrder(order)
+                val firstStep = if (epoch == firstEpoch) resumeStep else 0
+                if (firstStep > 0) monitor.beginEpoch(resumePoint?.epochLossSum ?: 0f, resumePoint?.epochLossSteps ?: 0) else monitor.beginEpoch(0f, 0)
+                var lastLoss = 0f
+                val epochStart = System.nanoTime()
+
+                for (step in firstStep until stepsPerEpoch) {
+                    // Pause, hardware and cancel checks as in ImageTrainer, with the exact step saved before any wait or cancel
+                    if (!awaitRunnable(callback, step % hardwareCheckInterval == 0) { saveProgress(epoch, step, stepsPerEpoch, monitor, "") }) {
+                        Log.i(TAG, "Training cancelled by user.")
+                        return
+                    }
+                    budget.startSession()
+
+                    val budgetStop = budget.exhausted()
+                    if (budgetStop != null) {
+                        // The partial epoch is kept: its weights are what gets uploaded
+                        stopReason = budgetStop
+                        budgetLimited = true
+                        saveProgress(epoch, step, stepsPerEpoch, monitor, stopReason)
+                        outcome = outcomeOf(epoch, plannedEpochs, stopReason, if (monitor.epochLossSteps > 0) monitor.epochMeanLoss else monitor.bestLoss)
+                        callback?.onStatusUpdate(budgetStop)
+                        break@epochLoop
+                    }
+
+                    feeder.fillIndexed(order, step * batch)
+                    lastLoss = network.trainStep(images, labels, batch, learningRate)
+                    divergenceGuard.checkLoss(lastLoss)?.let { throw TrainingDivergedException(it) }
+                    monitor.recordStep(lastLoss)
+                    budget.recordStep()
+
+                    val done = epoch * stepsPerEpoch + step + 1
+                    if (done % uiUpdateInterval == 0) {
+                        val percent = (done * 100L / maxOf(1, totalSteps)).toInt()
+                        callback?.onProgress(percent)
+                        callback?.onStatusUpdate("Training: $percent%")
+                    }
+                }
+
+                // --- THROUGHPUT ---
+                val epochSeconds = maxOf(1L, System.nanoTime() - epochStart) / 1e9f
+                val stepsPerSecond = (stepsPerEpoch - firstStep) / epochSeconds
+                Log.i(TAG, String.format("Epoch %d: loss %.4f | %.1f samples/sec (batch size %d, %d threads)", epoch, monitor.epochMeanLoss, stepsPerSecond * batch, batch, kernels.parallelism))
+                callback?.onThroughputUpdate(stepsPerSecond * batch)
+                callback?.onEngineConfigUpdate(kernels.parallelism, stepsPerSecond)
+
+                val completedEpochs = epoch + 1
+                if (completedEpochs < numEpochs) monitor.onEpochEnd(completedEpochs)?.let { stopReason = it }
+                else if (numEpochs < plannedEpochs) stopReason = limitReason
+                saveProgress(epoch, stepsPerEpoch, stepsPerEpoch, monitor, stopReason)
+                callback?.onEpochUpdate(completedEpochs, numEpochs, lastLoss, if (completedEpochs < numEpochs) "..." else "Done")
+
+                if (stopReason.isNotEmpty()) {
+                    Log.i(TAG, "Stopped after $completedEpochs/$plannedEpochs epochs: $stopReason")
+                    callback?.onStatusUpdate(if (stopReason == limitReason) "Stopped after $completedEpochs epochs" else "Converged after $completedEpochs epochs")
+                    outcome = outcomeOf(completedEpochs, plannedEpochs, stopReason, monitor.bestLoss)
+                    break
+                }
+                outcome = outcomeOf(completedEpochs, plannedEpochs, "", monitor.epochMeanLoss)
+            }
+        } finally {
+            budget.pauseSession()
+        }
+
+        callback?.onProgress(100)
+        callback?.onStatusUpdate("Training: 100%")
+        Log.i(TAG, "Training cycle completely finished! ${outcome?.epochsCompleted ?: numEpochs}/$plannedEpochs epochs done.")
+    }
+
+    /** Accuracy and loss of the trained network on the held-out tail (every sample when nothing is held out). */
+    override fun validate(data: Any, validator: InferenceValidator): String {
+        val dataset = data as? ImageDataset ?: return "Format Error"
+        val imageTask = task as Image_Task
+
+        val heldOut = DatasetSplit.heldOutCount(dataset.sampleCount, imageTask.VALIDATION_SPLIT)
+        val first = if (heldOut > 0) dataset.sampleCount - heldOut else 0
+        val count = dataset.sampleCount - first
+        if (count == 0) return "No samples to validate"
+
+        val batch = imageTask.BATCH_SIZE.coerceIn(1, count)
+        val numClasses = network.classCount
+        val images = FloatArray(batch * dataset.imageSize)
+        val labels = FloatArray(batch * numClasses)
+        val imageView = FloatBuffer.wrap(images)
+        val labelView = FloatBuffer.wrap(labels)
+        val reader = dataset.openReader()
+        dataset.onEpochOrder(IntArray(count) { first + it })
+
+        var lossSum = 0.0
+        var correct = 0
+        val start = System.nanoTime()
+        var offset = first
+        while (offset < dataset.sampleCount) {
+            val n = minOf(batch, dataset.sampleCount - offset)
+            imageView.clear()
+            labelView.clear()
+            reader.copyRange(offset, n, imageView, labelView)
+
+            val probabilities = network.forward(images, n)
+            lossSum += network.loss(labels, n).toDouble() * n
+            for (i in 0 until n) {
+                var predicted = 0
+                for (c in 1 until numClasses) {
+                    if (probabilities[i * numClasses + c] > probabilities[i * numClasses + predicted]) predicted = c
+                }
+                if (predicted == reader.labelOf(offset + i)) correct++
+            }
+            offset += n
+        }
+        val seconds = maxOf(1L, System.nanoTime() - start) / 1e9
+
+        val result = String.format(
+            "Acc %.1f%% (%d %s) | Loss %.3f | %.0f/s",
+            correct * 100.0 / count, count, if (heldOut > 0) "held-out" else "train", lossSum / count, count / seconds
+        )
+        Log.i(TAG, "Evaluation: $result")
+        return result
+    }
+
+    override fun releaseResources() {
+        if (::kernels.isInitialized) kernels.close()
+    }
+
+    /** [inputs, DENSE_HIDDEN_UNITS..., classes], or the sizes of the shipped initial weights. */
+    private fun layerSizes(imageSize: Int, numClasses: Int): IntArray {
+        val shipped = shippedWeights()?.let { DenseWeightsFile.layerSizesOf(it) }
+        val sizes = shipped ?: run {
+            val hidden = (task as Image_Task).DENSE_HIDDEN_UNITS.split(',').map { it.trim() }.filter { it.isNotEmpty() }.map {
+                it.toIntOrNull()?.takeIf { units -> units > 0 } ?: throw Exception("Invalid DENSE_HIDDEN_UNITS entry '$it'")
+            }
+            intArrayOf(imageSize) + hidden.toIntArray() + intArrayOf(numClasses)
+        }
+        if (sizes.first() != imageSize || sizes.last() != numClasses) {
+            throw Exception("Dense model ${sizes.joinToString("-")} does not fit $imageSize inputs and $numClasses classes")
+        }
+        return sizes
+    }
+
+    /** Loads CKPT_FILENAME and the resume state that points at it; false (and currentEpoch 0) when there is none. */
+    private fun restoreCheckpoint(): Boolean {
+        val state = readState()
+        val ckptFile = File(filesDir, (task as Image_Task).CKPT_FILENAME)
+        val restored = state != null && ckptFile.exists() && DenseWeightsFile.load(mapFile(ckptFile), network)
+
+        resumePoint = if (restored) state else null
+        currentEpoch = resumePoint?.lastEpoch ?: 0
+        return restored
+    }
+
+    /**
+     * Back to the last checkpoint after divergence, or to the initial weights when none exists yet.
+     * Returns whether a checkpoint was restored (false = started over).
+     */
+    private fun rollBack(): Boolean {
+        val restored = restoreCheckpoint()
+        if (!restored) loadInitialWeights()
+        shuffleSeed = resumePoint?.shuffleSeed ?: shuffleSeed
+        // Work past the restored checkpoint is discarded and not reported
+        budget.restore(resumePoint?.trainedSteps ?: 0L, resumePoint?.trainedMillis ?: 0L)
+        budgetLimited = resumePoint?.budgetLimited ?: false
+        return restored
+    }
+
+    private fun loadInitialWeights() {
+        val shipped = shippedWeights()
+        if (shipped != null && DenseWeightsFile.load(shipped, network)) {
+            Log.i(TAG, "Initial weights loaded from ${(task as Image_Task).MODEL_FILENAME}")
+        } else {
+            network.initialize(task.task_Id.toLong())
+            Log.i(TAG, "Initial weights seeded from the task id")
+        }
+    }
+
+    /** MODEL_FILENAME when it holds dense weights (a TFLite model there is ignored), otherwise null. */
+    private fun shippedWeights(): MappedByteBuffer? {
+        val modelFile = File(filesDir, (task as Image_Task).MODEL_FILENAME)
+        if (!modelFile.exists()) return null
+        val buffer = loadModelFile()
+        return if (DenseWeightsFile.layerSizesOf(buffer) != null) buffer else null
+    }
+
+    /**
+     * Weights to CKPT_FILENAME first, then the state that points at them, so a resume never pairs new state with old weights.
+     * [stepsDone] steps of [epoch] are trained; a partial epoch records its sample cursor and loss so far.
+     */
+    private fun saveProgress(epoch: Int, stepsDone: Int, stepsPerEpoch: Int, monitor: ConvergenceMonitor, stopReason: String) {
+        // Only healthy weights are saved, so a rollback always has a good checkpoint to land on
+        nonFiniteWeights()?.let { throw TrainingDivergedException(it) }
+
+        val imageTask = task as Image_Task
+        DenseWeightsFile.write(network, File(filesDir, imageTask.CKPT_FILENAME))
+
+        val epochDone = stepsDone >= stepsPerEpoch
+        val resumeEpoch = if (epochDone) epoch + 1 else epoch
+        val state = checkpoint_DTO(
+            task_Id = task.task_Id,
+            lastEpoch = resumeEpoch,
+            checkpointTimestamp = System.currentTimeMillis(),
+            shuffleSeed = shuffleSeed,
+            sampleCursor = if (epochDone) 0 else stepsDone * samplesPerStep,
+            epochLossSum = if (epochDone) 0f else monitor.epochLossSum,
+            epochLossSteps = if (epochDone) 0 else monitor.epochLossSteps,
+            fileName = imageTask.CKPT_FILENAME,
+            bestMonitoredLoss = monitor.bestLoss,
+            monitoredEpochs = monitor.monitoredEpochs,
+            epochsWithoutImprovement = monitor.epochsWithoutImprovement,
+            monitoredHeldOut = monitor.historyHeldOut,
+            stopReason = stopReason,
+            budgetLimited = budgetLimited,
+            trainedSteps = budget.stepsUsed,
+            trainedMillis = budget.millisUsed
+        )
+        val stateFile = stateFile()
+        val part = File(filesDir, stateFile.name + ".part")
+        part.writeText(gson.toJson(state))
+        if (!part.renameTo(stateFile)) throw Exception("Could not move ${part.name} into place")
+        currentEpoch = resumeEpoch
+        resumePoint = state
+        Log.d(TAG, "--> Checkpoint: epoch $resumeEpoch, sample ${state.sampleCursor}")
+    }
+
+    /** The divergence reason when any weight or bias is NaN/Inf, otherwise null. */
+    private fun nonFiniteWeights(): String? {
+        for (l in 0 until network.layerCount) {
+            if (network.weights[l].any { !it.isFinite() } || network.biases[l].any { !it.isFinite() }) {
+                return "Weights diverged (layer $l is not finite)"
+            }
+        }
+        return null
+    }
+
+    private fun readState(): checkpoint_DTO? {
+        val file = stateFile()
+        if (!file.exists()) return null
+        return try {
+            gson.fromJson(file.readText(), checkpoint_DTO::class.java)?.takeIf { it.task_Id == task.task_Id }
+        } catch (e: Exception) {
+            Log.w(TAG, "Resume state unreadable (${e.message}). Starting over.")
+            null
+        }
+    }
+
+    // Task-prefixed, so the flusher's sweeper removes it with the task
+    private fun stateFile() = File(filesDir, "${task.task_Id}_reference_state.json")
+
+    /**
+     * Pause/hardware trap of the step loop (the deep hardware check only when [deepCheck]). False when cancelled.
+     * [save] runs once before the first wait or on cancel: Android may kill the service while it waits.
+     */
+    private fun awaitRunnable(callback: TrainingCallback?, deepCheck: Boolean, save: () -> Unit): Boolean {
+        var hardwareIssue = if (deepCheck) callback?.checkLiveConditions() else null
+        var saved = false
+        while (hardwareIssue != null || callback?.isPaused() == true) {
+            // Waiting is not training: the budget clock stops
+            budget.pauseSession()
+            if (!saved) {
+                save()
+                saved = true
+            }
+            if (callback?.isCancelled() == true) return false
+            callback?.onStatusUpdate(hardwareIssue ?: "Training Paused")
+            Thread.sleep(if (hardwareIssue != null) 3000 else 500)
+            if (deepCheck) hardwareIssue = callback?.checkLiveConditions()
+        }
+        if (callback?.isCancelled() == true) {
+            if (!saved) save()
+            return false
+        }
+        return true
+    }
+
+    private fun outcomeOf(epochsCompleted: Int, plannedEpochs: Int, stopReason: String, finalLoss: Float, aborted: Boolean = false): trainingOutcome_DTO {
+        return trainingOutcome_DTO(
+            epochsCompleted, plannedEpochs, stopReason, finalLoss, aborted,
+            samplesTrained = budget.stepsUsed * samplesPerStep,
+            trainingMillis = budget.millisUsed,
+            budgetLimited = budgetLimited,
+            stepsTrained = budget.stepsUsed,
+            plannedSteps = plannedSteps
+        )
+    }
+
+    private fun mapFile(file: File): MappedByteBuffer {
+        FileInputStream(file).use { input ->
+            return input.channel.map(FileChannel.MapMode.READ_ONLY, 0, file.length())
+        }
+    }
+}
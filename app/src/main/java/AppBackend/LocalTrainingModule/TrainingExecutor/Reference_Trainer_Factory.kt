@@ -0,0 +1,7 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+class Reference_Trainer_Factory : Trainer_Factory {
+    override fun createTrainer(): Trainer {
+        return ReferenceTrainer()
+    }
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+import java.util.Random
+
+/**
+ * Seeded per-epoch visiting order over the training samples.
+ * The dataset buffers are never touched: only an IntArray of sample indices is shuffled,
+ * and the order for a given (seed, epoch) is always the same, so a resumed run continues it.
+ *
+ * With a [blockSize] below the sample count the shuffle is block-local: the order of the blocks is
+ * shuffled, then the samples inside each block, so a streaming dataset reads every window once per epoch.
+ */
+class SamplePermutation(
+    private val sampleIndices: IntArray,
+    val seed: Long,
+    private val shuffle: Boolean = true,
+    private val blockSize: Int = sampleIndices.size
+) {
+    val size: Int get() = sampleIndices.size
+
+    private val blockCount = (sampleIndices.size + blockSize - 1) / maxOf(1, blockSize)
+    private val blockOrder = IntArray(blockCount) { it }
+
+    /** Writes the visiting order of [epoch] into [out] (Fisher-Yates over a copy of the sample indices). */
+    fun fill(epoch: Int, out: IntArray) {
+        if (!shuffle) {
+            System.arraycopy(sampleIndices, 0, out, 0, sampleIndices.size)
+            return
+        }
+
+        val random = Random(seed xor (epoch.toLong() * -0x61c8864680b583ebL))
+        if (blockCount <= 1) {
+            System.arraycopy(sampleIndices, 0, out, 0, sampleIndices.size)
+            shuffleRange(out, 0, out.size, random)
+            return
+        }
+
+        for (i in blockOrder.indices) blockOrder[i] = i
+        shuffleRange(blockOrder, 0, blockCount, random)
+
+        var cursor = 0
+        for (block in blockOrder) {
+            val start = block * blockSize
+            val length = minOf(blockSize, sampleIndices.size - start)
+            System.arraycopy(sampleIndices, start, out, cursor, length)
+            shuffleRange(out, cursor, length, random)
+            cursor += length
+        }
+    }
+
+    private fun shuffleRange(values: IntArray, start: Int, length: Int, random: Random) {
+        for (i in length - 1 downTo 1) {
+            val j = random.nextInt(i + 1)
+            val tmp = values[start + i]
+            values[start + i] = values[start + j]
+            values[start + j] = tmp
+        }
+    }
+
+    companion object {
+        fun identity(count: Int): IntArray = IntArray(count) { it }
+    }
+}
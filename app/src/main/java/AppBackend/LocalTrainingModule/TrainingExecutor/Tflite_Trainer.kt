@@ -0,0 +1,10 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+import org.tensorflow.lite.Interpreter
+
+// Trainers that run a TFLite model through its training signatures
+interface TfliteTrainer : Trainer {
+    var interpreter: Interpreter
+
+    fun loadModel(): Interpreter
+}
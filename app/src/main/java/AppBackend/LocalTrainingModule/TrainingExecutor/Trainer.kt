@@ -1,19 +1,26 @@
 package AppBackend.LocalTrainingModule.TrainingExecutor
 
-import org.tensorflow.lite.Interpreter
+import AppBackend.Validator.ModelInferenceValidator.InferenceValidator
 import java.nio.MappedByteBuffer
 
 interface Trainer {
     var task: AppBackend.TaskContainer.Task
     var trainingData: Any
-    var interpreter: Interpreter
     var currentEpoch: Int
 
+    // How the last trainModel() ended (epochs run, early-stop reason), reported with the upload
+    val outcome: AppBackend.LocalTrainingModule.TrainingStateManager.trainingOutcome_DTO?
+
     fun setUpTrainer(pTrainingData: Any?, pTask: AppBackend.TaskContainer.Task)
     fun loadModelFile(): MappedByteBuffer
-    fun loadModel(): Interpreter
     fun initializeWeights()
 
     // Add the callback here!
     fun trainModel(callback: TrainingCallback? = null)
+
+    // Sanity check of the trained weights; interpreter-backed trainers hand their interpreter to the validator
+    fun validate(data: Any, validator: InferenceValidator): String
+
+    // Called when the task is done with the interpreter (after validation and upload)
+    fun releaseResources()
 }
\ No newline at end of file
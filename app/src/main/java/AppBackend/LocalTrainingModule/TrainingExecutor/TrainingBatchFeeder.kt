@@ -0,0 +1,74 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+import AppBackend.DataManager.Augmentation.BatchAugmenter
+import AppBackend.DataManager.DataLoaderAndInitializer.SampleReader
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+
+/**
+ * Moves samples from the dataset into the direct tensors handed to the train signature.
+ * Tensors and the dataset reader are created once; filling a batch is only buffer-to-buffer bulk copies,
+ * so the training loop does not allocate per step. An optional [augmenter] transforms the images in place
+ * with its own pooled buffers, keeping that allocation-free as well.
+ */
+class TrainingBatchFeeder(
+    private val reader: SampleReader,
+    val imageSize: Int,
+    val labelSize: Int,
+    val batchSize: Int,
+    private val augmenter: BatchAugmenter? = null,
+    // Views into a caller's stacked buffer when several batches go to one fused call
+    val imageTensor: FloatBuffer = directFloats(batchSize * imageSize),
+    val labelTensor: FloatBuffer = directFloats(batchSize * labelSize)
+) {
+
+    // Dataset indices of the samples last gathered by fillIndexed(), e.g. to credit each one with its loss
+    val sampleIndices = IntArray(batchSize)
+
+    // Probability each of them was drawn with when the batch is importance-sampled (set by the fill plan)
+    val drawProbabilities = FloatArray(batchSize)
+
+    /** Copies [batchSize] consecutive samples starting at [firstSample] into the tensors. */
+    fun fillRange(firstSample: Int) {
+        imageTensor.clear()
+        labelTensor.clear()
+
+        reader.copyRange(firstSample, batchSize, imageTensor, labelTensor)
+
+        imageTensor.rewind()
+        labelTensor.rewind()
+    }
+
+    /** Gathers [batchSize] samples listed in [order] starting at [offset] (shuffled epochs). */
+    fun fillIndexed(order: IntArray, offset: Int) {
+        imageTensor.clear()
+        labelTensor.clear()
+
+        for (slot in 0 until batchSize) {
+            reader.copySample(order[offset + slot], imageTensor, labelTensor)
+        }
+        System.arraycopy(order, offset, sampleIndices, 0, batchSize)
+
+        imageTensor.rewind()
+        labelTensor.rewind()
+    }
+
+    /** Applies the augmentation pipeline (if any) to the filled images, deterministically for [seed]. */
+    fun augment(seed: Long) {
+        augmenter?.augment(imageTensor, batchSize, seed)
+    }
+
+    companion object {
+        fun directFloats(count: Int): FloatBuffer = ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder()).asFloatBuffer()
+
+        /** Window [part] of [parts] equal windows over [stacked]; fills through it land in place in the stacked buffer. */
+        fun window(stacked: FloatBuffer, part: Int, parts: Int): FloatBuffer {
+            val length = stacked.capacity() / parts
+            val view = stacked.duplicate()
+            view.position(part * length)
+            view.limit((part + 1) * length)
+            return view.slice()
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+/**
+ * Compute budget of a time-boxed task: a training-time budget, a step budget and/or an absolute round deadline
+ * (all optional, 0 = unbounded).
+ *
+ * Always counts the steps and training time actually spent, across sessions (the totals ride in the checkpoint),
+ * since that is the work reported to the server. When bounded, [plan] sizes the run from the measured step rate and
+ * [exhausted] tells the loop when it reaches the budget boundary.
+ */
+class TrainingBudget(
+    private val timeBudgetMillis: Long,
+    private val stepBudget: Long,
+    private val deadlineMillis: Long,
+    private val deadlineReserveMillis: Long = DEADLINE_RESERVE_MS
+) {
+    /** Epochs and per-epoch samples that fit the budget. */
+    data class Plan(val epochs: Int, val samplesPerEpoch: Int)
+
+    val isBounded: Boolean get() = timeBudgetMillis > 0 || stepBudget > 0 || deadlineMillis > 0
+
+    var stepsUsed: Long = 0L
+        private set
+
+    // Training time of earlier sessions, plus the running session since [startSession]
+    private var earlierMillis = 0L
+    private var sessionStartNanos = 0L
+    private var sessionRunning = false
+
+    val millisUsed: Long get() = earlierMillis + if (sessionRunning) (System.nanoTime() - sessionStartNanos) / 1_000_000 else 0L
+
+    /** Continues the totals saved in a checkpoint (the clock stays stopped until [startSession]). */
+    fun restore(steps: Long, millis: Long) {
+        stepsUsed = steps
+        earlierMillis = millis
+        sessionRunning = false
+    }
+
+    /** Starts (or restarts after [pauseSession]) the clock of this session. */
+    fun startSession() {
+        if (sessionRunning) return
+        sessionStartNanos = System.nanoTime()
+        sessionRunning = true
+    }
+
+    /** Stops the clock, e.g. while training waits on a pause or hardware condition. */
+    fun pauseSession() {
+        if (!sessionRunning) return
+        earlierMillis = millisUsed
+        sessionRunning = false
+    }
+
+    fun recordStep() {
+        stepsUsed++
+    }
+
+    /** Whether the step budget still has room for [steps] more (a fused call runs them all or none). */
+    fun covers(steps: Int): Boolean = stepBudget <= 0 || stepsUsed + steps <= stepBudget
+
+    /** Training steps still affordable at [stepsPerSecond] (Long.MAX_VALUE when unbounded). */
+    fun remainingSteps(stepsPerSecond: Float): Long {
+        var steps = if (stepBudget > 0) stepBudget - stepsUsed else Long.MAX_VALUE
+
+        var millis = Long.MAX_VALUE
+        if (timeBudgetMillis > 0) millis = timeBudgetMillis - millisUsed
+        if (deadlineMillis > 0) millis = minOf(millis, deadlineMillis - deadlineReserveMillis - System.currentTimeMillis())
+        if (millis != Long.MAX_VALUE) {
+            steps = minOf(steps, (maxOf(0L, millis) * stepsPerSecond / 1000f).toLong())
+        }
+        return maxOf(0L, steps)
+    }
+
+    /**
+     * Sizes a fresh run. Whole epochs while the budget covers at least one (the last may be cut at the boundary),
+     * otherwise a single epoch over the subset of samples that fits, so even a slow phone returns an update in time.
+     */
+    fun plan(stepsPerSecond: Float, plannedEpochs: Int, stepsPerEpoch: Int, samplesPerStep: Int): Plan {
+        val full = Plan(plannedEpochs, stepsPerEpoch * samplesPerStep)
+        if (!isBounded || stepsPerEpoch == 0) return full
+
+        // Without a measured rate only the step budget can size the run; time limits still stop it at the boundary
+        val affordable = if (stepsPerSecond > 0f) remainingSteps(stepsPerSecond) else if (stepBudget > 0) stepBudget - stepsUsed else Long.MAX_VALUE
+        if (affordable >= plannedEpochs.toLong() * stepsPerEpoch) return full
+
+        if (affordable >= stepsPerEpoch) {
+            val epochs = ((affordable + stepsPerEpoch - 1) / stepsPerEpoch).toInt()
+            return Plan(minOf(epochs, plannedEpochs), full.samplesPerEpoch)
+        }
+
+        val steps = maxOf(MIN_PLANNED_STEPS.toLong(), affordable).toInt().coerceAtMost(stepsPerEpoch)
+        return Plan(1, steps * samplesPerStep)
+    }
+
+    /** The reason training stops here once the budget is spent, otherwise null. Cheap enough to call every step. */
+    fun exhausted(): String? {
+        if (stepBudget > 0 && stepsUsed >= stepBudget) return "Step budget of $stepBudget reached"
+        if (timeBudgetMillis > 0 && millisUsed >= timeBudgetMillis) return "Time budget of ${timeBudgetMillis / 1000}s reached"
+        if (deadlineMillis > 0 && System.currentTimeMillis() >= deadlineMillis - deadlineReserveMillis) return "Round deadline reached"
+        return null
+    }
+
+    companion object {
+        // Kept free before the round deadline for validation and the upload
+        const val DEADLINE_RESERVE_MS = 60_000L
+
+        // A plan never shrinks below this many steps, however little budget is left
+        private const val MIN_PLANNED_STEPS = 10
+    }
+}
@@ -1,10 +1,14 @@
 package AppBackend.LocalTrainingModule.TrainingExecutor
 
+import AppBackend.ResourceManagement.ResourceManager.ResourceManager_Live_DTO
+
 interface TrainingCallback {
     fun onProgress(percentage: Int)
     fun onStatusUpdate(message: String)
     fun onValidationUpdate(result: String)
     fun onEpochUpdate(completedEpochs: Int, totalEpochs: Int, loss: Float, timeLeft: String)
+    fun onThroughputUpdate(samplesPerSecond: Float)
+    fun onEngineConfigUpdate(numThreads: Int, stepsPerSecond: Float)
 
     // NEW: Let the Backend ask the Frontend about the user's taps!
     fun isPaused(): Boolean
@@ -12,4 +16,8 @@ interface TrainingCallback {
     fun onWaitingStateChanged(isWaiting: Boolean)
     // NEW: Allow the active trainer to pull live hardware conditions
     fun checkLiveConditions(): String?
+    // Latest CPU/temperature readings, used to size the interpreter thread pool
+    fun getLiveResources(): ResourceManager_Live_DTO?
+    // Thermal/battery pressure that should stop optional background work (null = headroom)
+    fun checkBackgroundPressure(): String?
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package AppBackend.LocalTrainingModule.TrainingStateManager
+
+/**
+ * Decides when a mid-epoch checkpoint is worth taking.
+ * The interval is sized from measured save and step times so checkpointing costs about
+ * [overheadBudget] of training time: slow storage checkpoints less often, fast storage more often.
+ */
+class CheckpointCadence(
+    private val overheadBudget: Float = 0.02f,
+    private val minIntervalSteps: Int = 20
+) {
+    private var saveMillisEstimate = -1f
+    private var stepMillisEstimate = -1f
+
+    var stepsSinceCheckpoint: Int = 0
+        private set
+
+    fun recordStep(stepNanos: Long) {
+        val millis = stepNanos / 1_000_000f
+        stepMillisEstimate = if (stepMillisEstimate < 0f) millis else stepMillisEstimate * 0.9f + millis * 0.1f
+        stepsSinceCheckpoint++
+    }
+
+    fun recordSave(saveMillis: Long) {
+        saveMillisEstimate = if (saveMillisEstimate < 0f) saveMillis.toFloat() else saveMillisEstimate * 0.5f + saveMillis * 0.5f
+        stepsSinceCheckpoint = 0
+    }
+
+    /** Steps between checkpoints. Until a save has been timed, aim for one checkpoint per minute of training. */
+    fun intervalSteps(): Int {
+        if (stepMillisEstimate <= 0f) return Int.MAX_VALUE
+
+        val interval = if (saveMillisEstimate < 0f) {
+            DEFAULT_INTERVAL_MILLIS / stepMillisEstimate
+        } else {
+            saveMillisEstimate / (stepMillisEstimate * overheadBudget)
+        }
+        return maxOf(minIntervalSteps, interval.toInt())
+    }
+
+    fun isDue(): Boolean = stepsSinceCheckpoint >= intervalSteps()
+
+    companion object {
+        private const val DEFAULT_INTERVAL_MILLIS = 60_000f
+    }
+}
@@ -0,0 +1,125 @@
+package AppBackend.LocalTrainingModule.TrainingStateManager
+
+import android.util.Log
+import com.google.gson.Gson
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.RandomAccessFile
+import java.util.zip.CRC32
+
+/**
+ * Keeps the last [keepGenerations] checkpoints of a task as separate generation files.
+ *
+ * `${taskId}_checkpoints.json` (a [checkpoints_DTO]) is the index and the commit point: a generation
+ * only counts once the index lists it with its size and CRC32. Every file is written with
+ * temp-file + fsync + rename, so a crash at any point leaves the previous index and its files intact.
+ */
+class CheckpointJournal(
+    private val directory: File,
+    private val taskId: Int,
+    private val keepGenerations: Int
+) {
+    private val TAG = "CheckpointJournal"
+    private val gson = Gson()
+
+    val indexFile = File(directory, "${taskId}_checkpoints.json")
+
+    /** Index entries, newest generation first. Empty when there is no (readable) index yet. */
+    fun newestFirst(): List<checkpoint_DTO> {
+        if (!indexFile.exists()) return emptyList()
+
+        return try {
+            val index = gson.fromJson(indexFile.readText(), checkpoints_DTO::class.java)
+            index?.checkpoints.orEmpty().sortedByDescending { it.generation }
+        } catch (e: Exception) {
+            Log.e(TAG, "Checkpoint index unreadable: ${e.message}")
+            emptyList()
+        }
+    }
+
+    fun fileOf(entry: checkpoint_DTO): File = File(directory, entry.fileName)
+
+    /** True when the generation file is complete and matches the checksum recorded at commit time. */
+    fun verify(entry: checkpoint_DTO): Boolean {
+        val file = fileOf(entry)
+        return when {
+            !file.exists() -> {
+                Log.w(TAG, "Generation ${entry.generation}: file ${entry.fileName} is missing")
+                false
+            }
+            file.length() != entry.sizeBytes -> {
+                Log.w(TAG, "Generation ${entry.generation}: size ${file.length()} != ${entry.sizeBytes} (torn write)")
+                false
+            }
+            checksumOf(file) != entry.checksum -> {
+                Log.w(TAG, "Generation ${entry.generation}: checksum mismatch")
+                false
+            }
+            else -> true
+        }
+    }
+
+    /**
+     * Turns a staged "save" output into the next generation and records it in the index.
+     * Runs on the checkpoint I/O thread. Generations that fall out of the window are deleted
+     * only after the new index no longer references them.
+     */
+    fun commit(staging: File, state: checkpoint_DTO): checkpoint_DTO {
+        RandomAccessFile(staging, "rw").use { it.fd.sync() }
+
+        val existing = newestFirst()
+        val generation = (existing.firstOrNull()?.generation ?: 0) + 1
+        val target = File(directory, "${taskId}_ckpt_gen$generation.ckpt")
+
+        val checksum = checksumOf(staging)
+        if (!staging.renameTo(target)) {
+            throw IllegalStateException("Could not move ${staging.name} to ${target.name}")
+        }
+
+        val entry = state.copy(
+            generation = generation,
+            fileName = target.name,
+            sizeBytes = target.length(),
+            checksum = checksum
+        )
+        val kept = (listOf(entry) + existing).take(maxOf(1, keepGenerations))
+        writeDurably(indexFile, gson.toJson(checkpoints_DTO(kept)).toByteArray())
+
+        // Pruned generations, plus any file a crash left behind before its index write
+        val referenced = kept.map { it.fileName }.toSet()
+        directory.listFiles()?.forEach { file ->
+            if (file.name.startsWith("${taskId}_ckpt_gen") && file.name !in referenced) {
+                file.delete()
+            }
+        }
+        return entry
+    }
+
+    private fun checksumOf(file: File): Long {
+        val crc = CRC32()
+        val chunk = ByteArray(64 * 1024)
+        FileInputStream(file).use { input ->
+            while (true) {
+                val read = input.read(chunk)
+                if (read < 0) break
+                crc.update(chunk, 0, read)
+            }
+        }
+        return crc.value
+    }
+
+    companion object {
+        /** temp-file + fsync + rename: readers see either the old or the new content, never a torn file. */
+        fun writeDurably(file: File, bytes: ByteArray) {
+            val tmp = File(file.parentFile, "${file.name}.tmp")
+            FileOutputStream(tmp).use {
+                it.write(bytes)
+                it.fd.sync()
+            }
+            if (!tmp.renameTo(file)) {
+                throw IllegalStateException("Could not move ${tmp.name} over ${file.name}")
+            }
+        }
+    }
+}
@@ -3,32 +3,58 @@ package AppBackend.LocalTrainingModule.TrainingStateManager
 import android.util.Log
 import AppBackend.TaskContainer.Image_Task
 import AppBackend.TaskContainer.Task
-import org.json.JSONObject
 import org.tensorflow.lite.Interpreter
 import java.io.File
+import java.nio.ByteBuffer
 
 class CheckpointManager {
     private val TAG = "CheckpointManager"
 
-    fun createCheckpoint(task: Task, interpreter: Interpreter, completedEpochs: Int): Boolean {
+    // File writes, fsync and metadata go through here so the training thread only pays for the snapshot
+    val writer = CheckpointWriter()
+
+    // Training-thread cost of the snapshots (the part the writer cannot take over)
+    @Volatile var snapshotCount: Int = 0
+        private set
+    @Volatile var totalSnapshotMillis: Long = 0L
+        private set
+
+    /**
+     * Snapshots the weights on the calling (training) thread and queues the rest of the write.
+     * Returns false when the checkpoint was skipped or the snapshot failed. A non-[critical] checkpoint
+     * is skipped while another one is still being written; critical ones (epoch end, pause, cancel) are always taken.
+     * [sampleLosses] are the importance sampler's estimates, saved alongside so a resumed run keeps drawing by them.
+     */
+    fun createCheckpoint(task: Task, interpreter: Interpreter, state: checkpoint_DTO, resumeOrder: IntArray?, critical: Boolean = true, sampleLosses: FloatArray? = null): Boolean {
         val imageTask = task as Image_Task
-        val ckptFile = File("/data/data/com.example.fractal/files/", imageTask.CKPT_FILENAME)
-        // We create a tiny metadata file next to the weights to remember the epoch number
-        val metaFile = File("/data/data/com.example.fractal/files/", "${imageTask.task_Id}_meta.json")
+        // The sample visiting order of the epoch a resumed run continues
+        val orderFile = File("/data/data/com.example.fractal/files/", "${imageTask.task_Id}_order.bin")
+        val lossFile = File("/data/data/com.example.fractal/files/", "${imageTask.task_Id}_sample_losses.bin")
+
+        val slot = writer.claimSlot(critical)
+        if (slot < 0) {
+            Log.d(TAG, "Previous checkpoint still being written. Skipping this one.")
+            return false
+        }
+        val stagingFile = File("/data/data/com.example.fractal/files/", "${imageTask.task_Id}_ckpt.stage$slot")
 
         return try {
-            // 1. Save Weights (TFLite automatically OVERWRITES the old checkpoint file)
-            val inputs = mutableMapOf<String, Any>("checkpoint_path" to ckptFile.absolutePath)
+            // 1. Snapshot Weights into the staging slot (the only part that needs the interpreter)
+            val snapshotStart = System.currentTimeMillis()
+            val inputs = mutableMapOf<String, Any>("checkpoint_path" to stagingFile.absolutePath)
             interpreter.runSignature(inputs, mutableMapOf<String, Any>(), "save")
+            totalSnapshotMillis += System.currentTimeMillis() - snapshotStart
+            snapshotCount++
+
+            // 2. Capture the shuffle order of the resume epoch (the seed alone reproduces it, the file pins it).
+            //    Encoded now: the caller reuses its array for the next checkpoint.
+            val orderBytes = resumeOrder?.let { encodeSampleOrder(state.lastEpoch, it) }
+            val lossBytes = sampleLosses?.let { encodeSampleLosses(it) }
 
-            // 2. Save Metadata (Overwrites old metadata)
-            val json = JSONObject()
-            json.put("task_Id", imageTask.task_Id)
-            json.put("lastEpoch", completedEpochs)
-            json.put("checkpointTimestamp", System.currentTimeMillis())
-            metaFile.writeText(json.toString())
+            // 3. The I/O thread turns the snapshot into the next journal generation
+            writer.submit(CheckpointWriter.Job(slot, stagingFile, state, journalFor(imageTask), orderFile, orderBytes, lossFile, lossBytes))
 
-            Log.i(TAG, "Checkpoint & Metadata saved successfully. Completed Epochs: $completedEpochs")
+            Log.i(TAG, "Checkpoint snapshot queued. Epoch: ${state.lastEpoch}, Sample Cursor: ${state.sampleCursor}")
             true
         } catch (e: Exception) {
             Log.e(TAG, "Failed to save checkpoint: ${e.message}")
@@ -36,32 +62,131 @@ class CheckpointManager {
         }
     }
 
-    fun loadCheckpoint(task: Task, interpreter: Interpreter): Int {
+    /** Waits for queued checkpoint writes, e.g. before the checkpoint is uploaded or training returns; the counters are final after it. */
+    fun awaitWrites() {
+        writer.awaitIdle()
+        Log.i(TAG, "Checkpoint writes: ${writer.writtenCount} written (last ${writer.lastWriteMillis} ms, total ${writer.totalWriteMillis} ms), " +
+                "${writer.skippedCount} skipped, ${writer.mergedCount} merged, ${writer.failedCount} failed; " +
+                "$snapshotCount snapshots took $totalSnapshotMillis ms on the training thread")
+    }
+
+    /**
+     * Restores the newest journal generation that passes verification and returns where it left off,
+     * or null when starting from scratch. A torn or corrupt generation only costs one checkpoint interval.
+     */
+    fun loadCheckpoint(task: Task, interpreter: Interpreter): checkpoint_DTO? {
         val imageTask = task as Image_Task
-        val ckptFile = File("/data/data/com.example.fractal/files/", imageTask.CKPT_FILENAME)
-        val metaFile = File("/data/data/com.example.fractal/files/", "${imageTask.task_Id}_meta.json")
+        val journal = journalFor(imageTask)
+        val generations = journal.newestFirst()
 
-        // If either file is missing, we must start from scratch at Epoch 0
-        if (!ckptFile.exists() || !metaFile.exists()) {
+        if (generations.isEmpty()) {
             Log.i(TAG, "No valid checkpoint found. Starting fresh from Epoch 0.")
-            return 0
+            return null
+        }
+
+        for (entry in generations) {
+            if (!journal.verify(entry)) continue
+
+            try {
+                val inputs = mutableMapOf<String, Any>("checkpoint_path" to journal.fileOf(entry).absolutePath)
+                interpreter.runSignature(inputs, mutableMapOf<String, Any>(), "restore")
+
+                Log.i(TAG, "Checkpoint generation ${entry.generation} restored. Resuming from Epoch ${entry.lastEpoch}, Sample ${entry.sampleCursor}")
+                return entry
+            } catch (e: Exception) {
+                Log.e(TAG, "Failed to restore generation ${entry.generation}: ${e.message}. Trying an older one.")
+            }
+        }
+
+        Log.e(TAG, "None of ${generations.size} checkpoint generations could be restored. Starting fresh from Epoch 0.")
+        return null
+    }
+
+    /**
+     * Copies the newest verified generation to CKPT_FILENAME, the file the upload sends.
+     * Call after [awaitWrites] once training has finished.
+     */
+    fun promoteLatest(task: Task): Boolean {
+        val imageTask = task as Image_Task
+        val (entry, file) = newestVerified(imageTask) ?: run {
+            Log.e(TAG, "No verified checkpoint generation to promote.")
+            return false
         }
 
         return try {
-            // 1. Restore Weights
-            val inputs = mutableMapOf<String, Any>("checkpoint_path" to ckptFile.absolutePath)
-            interpreter.runSignature(inputs, mutableMapOf<String, Any>(), "restore")
+            val ckptFile = File("/data/data/com.example.fractal/files/", imageTask.CKPT_FILENAME)
+            CheckpointJournal.writeDurably(ckptFile, file.readBytes())
+            Log.i(TAG, "Generation ${entry.generation} promoted to ${ckptFile.name}")
+            true
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to promote checkpoint: ${e.message}")
+            false
+        }
+    }
+
+    /**
+     * The newest journal generation that passes verification and [accept], with its weights file.
+     * Safe off the training thread.
+     */
+    fun newestVerified(task: Task, accept: (checkpoint_DTO) -> Boolean = { true }): Pair<checkpoint_DTO, File>? {
+        val journal = journalFor(task as Image_Task)
+        val entry = journal.newestFirst().firstOrNull { accept(it) && journal.verify(it) } ?: return null
+        return Pair(entry, journal.fileOf(entry))
+    }
 
-            // 2. Read Metadata to find out exactly where we left off
-            val jsonText = metaFile.readText()
-            val json = JSONObject(jsonText)
-            val lastEpoch = json.optInt("lastEpoch", 0)
+    private fun journalFor(task: Image_Task): CheckpointJournal =
+        CheckpointJournal(File("/data/data/com.example.fractal/files/"), task.task_Id, task.CHECKPOINT_GENERATIONS)
 
-            Log.i(TAG, "Checkpoint restored successfully. Resuming from Epoch $lastEpoch")
-            lastEpoch
+    /** Returns the saved visiting order for [epoch], or null if none was saved for that epoch. */
+    fun loadSampleOrder(task: Task, epoch: Int): IntArray? {
+        val orderFile = File("/data/data/com.example.fractal/files/", "${task.task_Id}_order.bin")
+        if (!orderFile.exists()) return null
+
+        return try {
+            val buffer = ByteBuffer.wrap(orderFile.readBytes())
+            val savedEpoch = buffer.getInt()
+            val count = buffer.getInt()
+            if (savedEpoch != epoch || count * 4 != buffer.remaining()) {
+                Log.w(TAG, "Saved sample order is for epoch $savedEpoch, not $epoch. Regenerating from seed.")
+                return null
+            }
+            IntArray(count).also { buffer.asIntBuffer().get(it) }
         } catch (e: Exception) {
-            Log.e(TAG, "Failed to restore checkpoint: ${e.message}")
-            0 // If corrupted, safely fallback to starting over
+            Log.e(TAG, "Failed to read sample order: ${e.message}")
+            null
         }
     }
+
+    /** Returns the saved per-sample loss estimates, or null if none were saved for [count] samples. */
+    fun loadSampleLosses(task: Task, count: Int): FloatArray? {
+        val lossFile = File("/data/data/com.example.fractal/files/", "${task.task_Id}_sample_losses.bin")
+        if (!lossFile.exists()) return null
+
+        return try {
+            val buffer = ByteBuffer.wrap(lossFile.readBytes())
+            val savedCount = buffer.getInt()
+            if (savedCount != count || count * 4 != buffer.remaining()) {
+                Log.w(TAG, "Saved loss estimates cover $savedCount samples, not $count. Starting from uniform draws.")
+                return null
+            }
+            FloatArray(count).also { buffer.asFloatBuffer().get(it) }
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to read loss estimates: ${e.message}")
+            null
+        }
+    }
+
+    private fun encodeSampleLosses(losses: FloatArray): ByteArray {
+        val buffer = ByteBuffer.allocate(4 + losses.size * 4)
+        buffer.putInt(losses.size)
+        buffer.asFloatBuffer().put(losses)
+        return buffer.array()
+    }
+
+    private fun encodeSampleOrder(epoch: Int, order: IntArray): ByteArray {
+        val buffer = ByteBuffer.allocate(8 + order.size * 4)
+        buffer.putInt(epoch).putInt(order.size)
+        buffer.asIntBuffer().put(order)
+        return buffer.array()
+    }
 }
\ No newline at end of file
@@ -0,0 +1,143 @@
+package AppBackend.LocalTrainingModule.TrainingStateManager
+
+import android.util.Log
+import java.io.File
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Background half of a checkpoint.
+ *
+ * The training thread only runs the TFLite "save" signature into a staging file (the interpreter is not
+ * thread-safe, so that part cannot move). Everything after it - fsync, checksum, sample order, loss estimates and
+ * the journal commit ([CheckpointJournal]) - runs on a single I/O thread.
+ *
+ * At most one checkpoint is being written at a time. While one is in flight a second snapshot can wait;
+ * a newer snapshot replaces that waiting one (merged), and routine snapshots are not taken at all while the
+ * writer is busy (skipped). A new snapshot always goes to a staging slot neither of the others uses, so the
+ * waiting one stays intact until its replacement has actually been saved.
+ */
+class CheckpointWriter {
+    private val TAG = "CheckpointWriter"
+
+    /** One snapshot waiting for, or going through, the I/O thread. */
+    class Job(
+        val slot: Int,
+        val staging: File,
+        val state: checkpoint_DTO,
+        val journal: CheckpointJournal,
+        val orderFile: File,
+        val orderBytes: ByteArray?,
+        val lossFile: File? = null,
+        val lossBytes: ByteArray? = null
+    )
+
+    private val executor = ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, LinkedBlockingQueue()) { runnable ->
+        Thread(runnable, "Fractal-Checkpoint").apply { isDaemon = true }
+    }.apply { allowCoreThreadTimeOut(true) }
+
+    private val lock = ReentrantLock()
+    private val idle = lock.newCondition()
+    private var writing: Job? = null
+    private var pending: Job? = null
+
+    // --- Metrics ---
+    @Volatile var writtenCount: Int = 0
+        private set
+    @Volatile var skippedCount: Int = 0
+        private set
+    @Volatile var mergedCount: Int = 0
+        private set
+    @Volatile var lastWriteMillis: Long = 0L
+        private set
+    @Volatile var totalWriteMillis: Long = 0L
+        private set
+    @Volatile var failedCount: Int = 0
+        private set
+
+    /**
+     * Picks the staging slot for a new snapshot, or returns -1 when it should be skipped.
+     * Only the training thread claims slots, and the I/O thread never takes up a free one, so the slot stays
+     * free until [submit]. A snapshot whose save fails is simply never submitted.
+     */
+    fun claimSlot(critical: Boolean): Int = lock.withLock {
+        val inFlight = writing
+        val waiting = pending
+        if (waiting == null && inFlight != null && !critical) {
+            skippedCount++
+            return -1
+        }
+        (0 until STAGING_SLOTS).first { it != inFlight?.slot && it != waiting?.slot }
+    }
+
+    /** Hands a snapshot that was saved into its staging slot over to the I/O thread, replacing one still waiting. */
+    fun submit(job: Job) {
+        lock.withLock {
+            if (pending != null) mergedCount++
+            pending = job
+        }
+        executor.execute { drain() }
+    }
+
+    /** Blocks until every submitted checkpoint is on disk (end of training, before upload). */
+    fun awaitIdle() {
+        lock.withLock {
+            while (writing != null || pending != null) {
+                idle.await()
+            }
+        }
+    }
+
+    private fun drain() {
+        val job = lock.withLock {
+            val next = pending ?: return
+            pending = null
+            writing = next
+            next
+        }
+
+        val start = System.currentTimeMillis()
+        try {
+            write(job)
+            lastWriteMillis = System.currentTimeMillis() - start
+            totalWriteMillis += lastWriteMillis
+            writtenCount++
+        } catch (e: Exception) {
+            failedCount++
+            Log.e(TAG, "Background checkpoint write failed: ${e.message}")
+        } finally {
+            lock.withLock {
+                writing = null
+                idle.signalAll()
+            }
+        }
+    }
+
+    private fun write(job: Job) {
+        // 1. Sample order of the resume epoch (its header names the epoch, so a stale one is detected on load)
+        if (job.orderBytes != null) {
+            CheckpointJournal.writeDurably(job.orderFile, job.orderBytes)
+        } else if (job.orderFile.exists()) {
+            job.orderFile.delete()
+        }
+
+        // 2. Per-sample loss estimates of an importance-sampled run (see ImportanceSampler)
+        if (job.lossBytes != null && job.lossFile != null) {
+            CheckpointJournal.writeDurably(job.lossFile, job.lossBytes)
+        } else if (job.lossFile?.exists() == true) {
+            job.lossFile.delete()
+        }
+
+        // 3. Weights become a new generation; the index write is the commit point
+        val entry = job.journal.commit(job.staging, job.state)
+        Log.d(TAG, "Generation ${entry.generation} committed (${entry.sizeBytes} bytes)")
+    }
+
+    companion object {
+        // In flight, waiting, and the one being saved
+        private const val STAGING_SLOTS = 3
+    }
+}
\ No newline at end of file
@@ -3,5 +3,23 @@ package AppBackend.LocalTrainingModule.TrainingStateManager
 data class checkpoint_DTO (
     val task_Id: Int,
     val lastEpoch: Int,
-    val checkpointTimestamp: Long
+    val checkpointTimestamp: Long,
+    val shuffleSeed: Long? = null,  // null when written before per-epoch shuffling (Gson would read a missing key as 0, a valid seed)
+    val sampleCursor: Int = 0,      // samples already trained inside lastEpoch
+    val epochLossSum: Float = 0f,   // accumulated loss of those steps
+    val epochLossSteps: Int = 0,
+    val generation: Int = 0,        // journal generation this state was written as
+    val fileName: String = "",      // weights file of that generation
+    val sizeBytes: Long = 0L,
+    val checksum: Long = 0L,        // CRC32 of the weights file
+    val bestMonitoredLoss: Float = 0f,      // convergence monitor history (see ConvergenceMonitor)
+    val monitoredEpochs: Int = 0,
+    val epochsWithoutImprovement: Int = 0,
+    val monitoredHeldOut: Boolean = false,  // that history is of held-out rather than training losses
+    val stopReason: String = "",    // set when training stopped early: a resumed run does not continue
+    val budgetEpochs: Int = 0,      // run sized to a compute budget (see TrainingBudget), 0 = task as given
+    val budgetSamplesPerEpoch: Int = 0,
+    val budgetLimited: Boolean = false,     // the plan or the budget boundary cut the run short
+    val trainedSteps: Long = 0L,    // work done so far across sessions
+    val trainedMillis: Long = 0L
 )
\ No newline at end of file
@@ -0,0 +1,27 @@
+package AppBackend.LocalTrainingModule.TrainingStateManager
+
+data class trainingOutcome_DTO (
+    val epochsCompleted: Int,
+    val plannedEpochs: Int,
+    val stopReason: String,         // empty when all planned epochs ran
+    val finalLoss: Float,           // monitored loss at the end (training or held-out)
+    val aborted: Boolean = false,   // diverged with no usable weights: nothing is uploaded
+    val samplesTrained: Long = 0L,  // work actually done, so the server can weight the update
+    val trainingMillis: Long = 0L,
+    val budgetLimited: Boolean = false, // the run was sized to or cut at the task's compute budget
+    val stepsTrained: Long = 0L,        // train steps actually run, against the full uniform run the task asked for
+    val plannedSteps: Long = 0L,
+    val importanceSampled: Boolean = false, // batches were drawn by loss (IMPORTANCE_SAMPLING)
+    // Background checkpointing (see CheckpointWriter): skipped = not taken while a write was busy,
+    // merged = replaced by a newer snapshot before it was written
+    val checkpointsWritten: Int = 0,
+    val checkpointsSkipped: Int = 0,
+    val checkpointsMerged: Int = 0,
+    val checkpointsFailed: Int = 0,
+    val checkpointSnapshotMillis: Long = 0L, // training-thread time in the "save" signature
+    val checkpointWriteMillis: Long = 0L     // I/O-thread time to make snapshots durable
+) {
+    val epochsSaved: Int get() = maxOf(0, plannedEpochs - epochsCompleted)
+    val stepsSaved: Long get() = maxOf(0L, plannedSteps - stepsTrained)
+    val meanCheckpointWriteMillis: Double get() = if (checkpointsWritten > 0) checkpointWriteMillis.toDouble() / checkpointsWritten else 0.0
+}
@@ -1,7 +1,9 @@
 package AppBackend.Network.ModelUpdateTransmission
 
+import AppBackend.LocalTrainingModule.TrainingStateManager.trainingOutcome_DTO
 import AppBackend.TaskContainer.Task
 
 data class ModelTransmission_DTO (
-    var task: Task
+    var task: Task,
+    var outcome: trainingOutcome_DTO? = null
 )
\ No newline at end of file
@@ -12,4 +12,11 @@ class ModelTransmitter {
         val serverDao = Server_DAO()
         return serverDao.POST_UploadModelToServer(modeltransmissionDto)
     }
+
+    fun reportAborted(modeltransmissionDto: ModelTransmission_DTO): Boolean {
+        Log.w(TAG, "Reporting aborted Task ID: ${modeltransmissionDto.task.task_Id} (${modeltransmissionDto.outcome?.stopReason})")
+
+        val serverDao = Server_DAO()
+        return serverDao.POST_ReportTaskAborted(modeltransmissionDto)
+    }
 }
\ No newline at end of file
@@ -4,4 +4,5 @@ import AppBackend.Network.ModelUpdateTransmission.ModelTransmission_DTO
 
 interface ModelTransmission {
     fun POST_UploadModelToServer(modeltransmissionDto: ModelTransmission_DTO):Boolean
+    fun POST_ReportTaskAborted(modeltransmissionDto: ModelTransmission_DTO):Boolean
 }
\ No newline at end of file
@@ -89,6 +89,27 @@ class Server_DAO(var networkConfig: networkConfig_ini = networkConfig_ini()) : A
 
                 task.NUM_EPOCHS = json.optInt("NUM_EPOCHS", 20)
                 task.MODEL_FILENAME = json.optString("MODEL_FILENAME", "model_server.tflite")
+                task.NUM_THREADS = json.optInt("NUM_THREADS", 0)
+                task.CHECKPOINT_GENERATIONS = json.optInt("CHECKPOINT_GENERATIONS", 3)
+                task.MODEL_SHA256 = json.optString("MODEL_SHA256", "")
+                task.OVERLAP_VALIDATION = json.optBoolean("OVERLAP_VALIDATION", false)
+                // Early-stopping policy (patience 0 always runs NUM_EPOCHS)
+                task.EARLY_STOP_PATIENCE = json.optInt("EARLY_STOP_PATIENCE", 3)
+                task.EARLY_STOP_MIN_DELTA = json.optDouble("EARLY_STOP_MIN_DELTA", 0.005).toFloat()
+                task.EARLY_STOP_MIN_EPOCHS = json.optInt("EARLY_STOP_MIN_EPOCHS", 5)
+                // "retry", "rollback" or "abort" when the loss or weights go NaN/Inf
+                task.DIVERGENCE_POLICY = json.optString("DIVERGENCE_POLICY", "retry")
+                // Time-boxed training: 0 = unbounded, TRAIN_DEADLINE is epoch millis
+                task.TRAIN_TIME_BUDGET_SEC = json.optInt("TRAIN_TIME_BUDGET_SEC", 0)
+                task.TRAIN_STEP_BUDGET = json.optInt("TRAIN_STEP_BUDGET", 0)
+                task.TRAIN_DEADLINE = json.optLong("TRAIN_DEADLINE", 0L)
+                // Fine-tune only the classifier head on cached backbone features ("features"/"train_head" signatures)
+                task.HEAD_ONLY = json.optBoolean("HEAD_ONLY", false)
+                // Steps per native call through a fused "train_k_steps" signature: 0 = auto from measured overhead, 1 = off
+                task.FUSED_STEPS = json.optInt("FUSED_STEPS", 0)
+                // Reference_Trainer only: comma-separated hidden layer widths ("" = softmax regression) and SGD step size
+                task.DENSE_HIDDEN_UNITS = json.optString("DENSE_HIDDEN_UNITS", "")
+                task.DENSE_LEARNING_RATE = json.optDouble("DENSE_LEARNING_RATE", 0.05).toFloat()
 
                 val inputTensorJson = json.optJSONObject("input_tensor_name")
                 val inputMap = mutableMapOf<List<String>, Any>()
@@ -109,6 +130,21 @@ class Server_DAO(var networkConfig: networkConfig_ini = networkConfig_ini()) : A
                 task.NUM_CLASSES = json.optInt("NUM_CLASSES", 10)
                 task.TRAIN_IMAGES_FILENAME = json.optString("TRAIN_IMAGES_FILENAME", "train_images_server.bin")
                 task.TRAIN_LABELS_FILENAME = json.optString("TRAIN_LABELS_FILENAME", "train_labels_server.bin")
+                task.PREFETCH_DEPTH = json.optInt("PREFETCH_DEPTH", 2)
+                task.SHUFFLE = json.optBoolean("SHUFFLE", true)
+                task.SHUFFLE_SEED = json.optLong("SHUFFLE_SEED", -1L)
+                // Draw batches by per-sample loss instead of one shuffled pass per epoch (resident datasets, models with sample_weight/sample_loss)
+                task.IMPORTANCE_SAMPLING = json.optBoolean("IMPORTANCE_SAMPLING", false)
+                // Train on this share of the training split, a k-center coreset kept across rounds (0 or 1 = all samples)
+                task.CORESET_FRACTION = json.optDouble("CORESET_FRACTION", 0.0).toFloat()
+                task.DATASET_LOADING = json.optString("DATASET_LOADING", "mmap")
+                // Kept as the raw JSON array; the trainer builds the pipeline once the image shape is known
+                task.AUGMENTATIONS = json.optJSONArray("AUGMENTATIONS")?.toString() ?: ""
+                task.DATA_WORKERS = json.optInt("DATA_WORKERS", 0)
+                task.TRAIN_IMAGES_SHA256 = json.optString("TRAIN_IMAGES_SHA256", "")
+                task.TRAIN_LABELS_SHA256 = json.optString("TRAIN_LABELS_SHA256", "")
+                task.VALIDATION_SPLIT = json.optDouble("VALIDATION_SPLIT", 0.0).toFloat()
+                task.EVAL_CONFIDENCE = json.optDouble("EVAL_CONFIDENCE", 0.0).toFloat()
 
                 val shapeJsonArray = json.optJSONArray("INPUT_SHAPE")
                 if (shapeJsonArray != null) {
@@ -162,6 +198,32 @@ class Server_DAO(var networkConfig: networkConfig_ini = networkConfig_ini()) : A
             val shapeArray = org.json.JSONArray()
             imageTask.INPUT_SHAPE.forEach { shapeArray.put(it) }
             put("INPUT_SHAPE", shapeArray)
+
+            // How this round actually trained, e.g. stopped early on a loss plateau
+            modeltransmissionDto.outcome?.let { outcome ->
+                put("training_summary", JSONObject().apply {
+                    put("epochs_completed", outcome.epochsCompleted)
+                    put("epochs_planned", outcome.plannedEpochs)
+                    put("epochs_saved", outcome.epochsSaved)
+                    put("stopped_early", outcome.stopReason.isNotEmpty())
+                    put("stop_reason", outcome.stopReason)
+                    put("final_loss", outcome.finalLoss.toDouble())
+                    put("samples_trained", outcome.samplesTrained)
+                    put("training_seconds", outcome.trainingMillis / 1000.0)
+                    put("budget_limited", outcome.budgetLimited)
+                    put("steps_trained", outcome.stepsTrained)
+                    put("steps_planned", outcome.plannedSteps)
+                    put("steps_saved", outcome.stepsSaved)
+                    put("importance_sampled", outcome.importanceSampled)
+                    put("checkpoints_written", outcome.checkpointsWritten)
+                    put("checkpoints_skipped", outcome.checkpointsSkipped)
+                    put("checkpoints_merged", outcome.checkpointsMerged)
+                    put("checkpoints_failed", outcome.checkpointsFailed)
+                    put("checkpoint_snapshot_seconds", outcome.checkpointSnapshotMillis / 1000.0)
+                    put("checkpoint_write_seconds", outcome.checkpointWriteMillis / 1000.0)
+                    put("checkpoint_write_ms_mean", outcome.meanCheckpointWriteMillis)
+                })
+            }
         }
 
         val boundary = "FormBoundary" + System.currentTimeMillis()
@@ -228,6 +290,40 @@ class Server_DAO(var networkConfig: networkConfig_ini = networkConfig_ini()) : A
         return false
     }
 
+    /** Tells the server a task was given up (e.g. training diverged), so it stops waiting for this device's model. */
+    override fun POST_ReportTaskAborted(modeltransmissionDto: ModelTransmission_DTO): Boolean {
+        val serverIp = networkConfig.SERVER_IP
+        val outcome = modeltransmissionDto.outcome
+        val body = JSONObject().apply {
+            put("task_Id", modeltransmissionDto.task.task_Id)
+            put("reason", outcome?.stopReason ?: "unknown")
+            put("epochs_completed", outcome?.epochsCompleted ?: 0)
+            put("epochs_planned", outcome?.plannedEpochs ?: modeltransmissionDto.task.NUM_EPOCHS)
+        }
+
+        try {
+            val url = URL("http://$serverIp:5000/api/task/abort")
+            val conn = url.openConnection() as HttpURLConnection
+            conn.requestMethod = "POST"
+            conn.doOutput = true
+            conn.connectTimeout = 15000
+            conn.setRequestProperty("Content-Type", "application/json; charset=utf-8")
+
+            conn.outputStream.use { it.write(body.toString().toByteArray(Charsets.UTF_8)) }
+
+            val responseCode = conn.responseCode
+            conn.disconnect()
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                Log.i(TAG, "Server acknowledged aborted task ${modeltransmissionDto.task.task_Id}")
+                return true
+            }
+            Log.e(TAG, "Server rejected the abort report. HTTP Response Code: $responseCode")
+        } catch (e: Exception) {
+            Log.e(TAG, "Exception during abort report: ${e.message}")
+        }
+        return false
+    }
+
     override fun POST_RegisterLogin(registeredDto: Registered_DTO, loginregisterDto: LoginRegister_DTO): Boolean {
         val auth = FirebaseAuth.getInstance()
         val email = loginregisterDto.email
@@ -0,0 +1,137 @@
+package AppBackend.ResourceManagement
+
+import android.util.Log
+import AppBackend.DataManager.DataLoaderAndInitializer.DatasetContainer
+import AppBackend.TaskContainer.Image_Task
+import java.io.File
+import java.io.FileInputStream
+import java.io.RandomAccessFile
+import java.security.MessageDigest
+
+/**
+ * Integrity checks for the downloaded task assets (model + dataset files).
+ *
+ * Digests are computed by the downloader while bytes stream in and recorded in a `<file>.sha256` sidecar
+ * stamped with size and modification time, so later checks compare strings instead of re-reading files.
+ * [precheck] only reads file sizes and headers: a truncated or mismatched asset is rejected in milliseconds,
+ * before the interpreter or the dataset is built.
+ */
+object AssetIntegrity {
+
+    private const val TAG = "AssetIntegrity"
+
+    // FlatBuffer file identifier of TFLite models, at byte offset 4
+    private val TFLITE_IDENTIFIER = "TFL3".toByteArray(Charsets.US_ASCII)
+
+    /** Advertised SHA-256 per asset file name (empty = not advertised). */
+    fun expectedDigests(task: Image_Task): Map<String, String> = mapOf(
+        task.TRAIN_IMAGES_FILENAME to task.TRAIN_IMAGES_SHA256,
+        task.TRAIN_LABELS_FILENAME to task.TRAIN_LABELS_SHA256,
+        task.MODEL_FILENAME to task.MODEL_SHA256
+    )
+
+    /**
+     * Returns why the local assets cannot be used for [task], or null when they pass.
+     * Checks presence, advertised digests, the model's TFLite identifier and the dataset sizes/shapes.
+     * Reference_Trainer tasks build their own dense network: their model file is optional and not a TFLite model.
+     */
+    fun precheck(task: Image_Task, filesDir: File): String? {
+        val reference = task.training_type.contains("Reference_Trainer")
+        for ((fileName, expected) in expectedDigests(task)) {
+            val file = File(filesDir, fileName)
+            if (reference && fileName == task.MODEL_FILENAME && expected.isBlank() && !file.exists()) continue
+            if (!file.exists() || file.length() == 0L) return "$fileName is missing"
+
+            if (expected.isNotBlank()) {
+                val actual = recordedDigest(file) ?: digestOf(file).also { recordDigest(file, it) }
+                if (!actual.equals(expected, ignoreCase = true)) return "$fileName checksum $actual != advertised $expected"
+            }
+        }
+
+        val model = File(filesDir, task.MODEL_FILENAME)
+        if (!reference && !hasTfliteIdentifier(model)) return "${task.MODEL_FILENAME} is not a TFLite model"
+
+        val imageSize = imageSizeOf(task.INPUT_SHAPE)
+        return checkDatasetFile(File(filesDir, task.TRAIN_IMAGES_FILENAME), task.NUM_TRAININGS, intArrayOf(imageSize))
+            ?: checkDatasetFile(File(filesDir, task.TRAIN_LABELS_FILENAME), task.NUM_TRAININGS, intArrayOf(task.NUM_CLASSES, 1))
+    }
+
+    /** Deletes the assets of [task] (and their sidecars) so the next attempt downloads them again. */
+    fun discard(task: Image_Task, filesDir: File) {
+        for (fileName in expectedDigests(task).keys) {
+            File(filesDir, fileName).delete()
+            sidecarOf(File(filesDir, fileName)).delete()
+        }
+    }
+
+    @JvmStatic
+    fun recordDigest(file: File, sha256: String) {
+        try {
+            sidecarOf(file).writeText("${file.length()}:${file.lastModified()}:$sha256")
+        } catch (e: Exception) {
+            Log.w(TAG, "Could not record digest of ${file.name}: ${e.message}")
+        }
+    }
+
+    /** The digest recorded at download time, or null when absent or the file changed since. */
+    fun recordedDigest(file: File): String? {
+        val sidecar = sidecarOf(file)
+        if (!sidecar.exists()) return null
+        val parts = sidecar.readText().split(":")
+        if (parts.size != 3 || parts[0] != file.length().toString() || parts[1] != file.lastModified().toString()) return null
+        return parts[2]
+    }
+
+    @JvmStatic
+    fun toHex(bytes: ByteArray): String {
+        val hex = StringBuilder(bytes.size * 2)
+        for (b in bytes) hex.append(String.format("%02x", b.toInt() and 0xFF))
+        return hex.toString()
+    }
+
+    fun sidecarOf(file: File): File = File(file.parentFile, "${file.name}.sha256")
+
+    // Only for assets that never went through the downloader (e.g. side-loaded files)
+    private fun digestOf(file: File): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        FileInputStream(file).use { input ->
+            val chunk = ByteArray(256 * 1024)
+            while (true) {
+                val read = input.read(chunk)
+                if (read < 0) break
+                digest.update(chunk, 0, read)
+            }
+        }
+        return toHex(digest.digest())
+    }
+
+    private fun hasTfliteIdentifier(model: File): Boolean {
+        if (model.length() < 8) return false
+        val head = ByteArray(8)
+        RandomAccessFile(model, "r").use { it.readFully(head) }
+        return head.copyOfRange(4, 8).contentEquals(TFLITE_IDENTIFIER)
+    }
+
+    /** Header-only check: sample count and total size agree with the task for one of [valuesPerSample]. */
+    private fun checkDatasetFile(file: File, numTrainings: Int, valuesPerSample: IntArray): String? {
+        val header = FileInputStream(file).use { DatasetContainer.readHeader(it.channel) }
+
+        if (header == null) {
+            // Legacy raw float32 dump (one-hot labels): the size alone must match
+            val expected = numTrainings.toLong() * valuesPerSample[0] * 4
+            return if (file.length() == expected) null else "${file.name} is ${file.length()} bytes, expected $expected"
+        }
+
+        if (header.sampleCount != numTrainings || header.valuesPerSample !in valuesPerSample) {
+            return "${file.name} holds ${header.sampleCount} samples of ${header.valuesPerSample} values, task expects $numTrainings of ${valuesPerSample[0]}"
+        }
+        val expected = header.payloadOffset + header.payloadBytes
+        return if (file.length() == expected) null else "${file.name} is ${file.length()} bytes, header describes $expected"
+    }
+
+    private fun imageSizeOf(shape: Array<Int>): Int = when {
+        shape.size == 2 -> shape[0] * shape[1]
+        shape.size >= 3 -> shape[1] * shape[2]
+        else -> 28 * 28
+    }
+}
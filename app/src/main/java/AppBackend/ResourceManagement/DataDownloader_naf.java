@@ -8,17 +8,33 @@ import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Map;
 
 public class DataDownloader_naf {
 
     private static final String TAG = "FRACTAL_DOWNLOADER";
 
+    public static final String IMAGES_FILENAME = "train_images_server.bin";
+    public static final String LABELS_FILENAME = "train_labels_server.bin";
+    public static final String MODEL_FILENAME = "model_server.tflite";
+
     public interface DownloadListener {
         void onDownloadFinished();
         void onError(String error);
     }
 
     public static void downloadFiles(Context context, String laptopIp, DownloadListener listener) {
+        downloadFiles(context, laptopIp, Collections.<String, String>emptyMap(), listener);
+    }
+
+    /**
+     * Same as {@link #downloadFiles(Context, String, DownloadListener)}, but each file whose name is a key of
+     * {@code expectedSha256} must match that hex SHA-256 (empty = not advertised, only size is checked).
+     * The digest is computed while the bytes stream in, so no second pass over the file is needed.
+     */
+    public static void downloadFiles(Context context, String laptopIp, Map<String, String> expectedSha256, DownloadListener listener) {
         new Thread(() -> {
             try {
                 String baseUrl = "http://" + laptopIp + ":5000/download/";
@@ -29,11 +45,11 @@ public class DataDownloader_naf {
                 Log.d(TAG, "Starting full sync from: " + baseUrl);
 
                 // 1. Download Images
-                downloadFile(context, imagesUrl, "train_images_server.bin");
+                downloadFile(context, imagesUrl, IMAGES_FILENAME, expectedSha256.get(IMAGES_FILENAME));
                 // 2. Download Labels
-                downloadFile(context, labelsUrl, "train_labels_server.bin");
+                downloadFile(context, labelsUrl, LABELS_FILENAME, expectedSha256.get(LABELS_FILENAME));
                 // 3. Download Model
-                downloadFile(context, modelUrl, "model_server.tflite");
+                downloadFile(context, modelUrl, MODEL_FILENAME, expectedSha256.get(MODEL_FILENAME));
 
                 Log.i(TAG, "All files (Images, Labels, Model) downloaded successfully.");
                 listener.onDownloadFinished();
@@ -45,7 +61,7 @@ public class DataDownloader_naf {
         }).start();
     }
 
-    private static File downloadFile(Context context, String urlStr, String fileName) throws Exception {
+    private static File downloadFile(Context context, String urlStr, String fileName, String expectedSha256) throws Exception {
         URL url = new URL(urlStr);
         HttpURLConnection connection = (HttpURLConnection) url.openConnection();
         connection.setConnectTimeout(15000);
@@ -55,19 +71,51 @@ public class DataDownloader_naf {
             throw new Exception("Server Error (" + fileName + "): " + connection.getResponseCode());
         }
 
+        // Bytes land in a .part file and only take the real name once complete and verified,
+        // so a truncated or corrupt transfer can never be mistaken for a usable asset.
         File file = new File(context.getFilesDir(), fileName);
+        File partFile = new File(context.getFilesDir(), fileName + ".part");
+        // getContentLengthLong() needs API 24; the header also covers files over 2 GB
+        String lengthHeader = connection.getHeaderField("Content-Length");
+        long expectedBytes = lengthHeader != null ? Long.parseLong(lengthHeader.trim()) : -1;
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        long received = 0;
+
         try (InputStream input = new BufferedInputStream(connection.getInputStream());
-             FileOutputStream output = new FileOutputStream(file)) {
+             FileOutputStream output = new FileOutputStream(partFile)) {
 
             byte[] data = new byte[8192];
             int count;
             while ((count = input.read(data)) != -1) {
                 output.write(data, 0, count);
+                digest.update(data, 0, count);
+                received += count;
             }
             output.flush();
+            output.getFD().sync();
         } finally {
             connection.disconnect();
         }
+
+        if (expectedBytes >= 0 && received != expectedBytes) {
+            partFile.delete();
+            throw new Exception("Truncated download (" + fileName + "): " + received + " of " + expectedBytes + " bytes");
+        }
+
+        String actualSha256 = AssetIntegrity.toHex(digest.digest());
+        if (expectedSha256 != null && !expectedSha256.isEmpty() && !expectedSha256.equalsIgnoreCase(actualSha256)) {
+            partFile.delete();
+            throw new Exception("Checksum mismatch (" + fileName + "): got " + actualSha256 + ", expected " + expectedSha256);
+        }
+
+        if (file.exists()) file.delete();
+        if (!partFile.renameTo(file)) {
+            throw new Exception("Failed to finalize file: " + fileName);
+        }
+        // Remembered next to the file so later runs can trust it without re-hashing
+        AssetIntegrity.recordDigest(file, actualSha256);
+
+        Log.d(TAG, "Downloaded " + fileName + " (" + received + " bytes, sha256 " + actualSha256 + ")");
         return file;
     }
 }
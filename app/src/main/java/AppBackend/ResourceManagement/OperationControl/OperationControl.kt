@@ -157,4 +157,43 @@ class OperationControl(private val context: Context) {
         val (allowed, msg) = evaluateDeviceState()
         return if (allowed) null else msg
     }
+
+    /**
+     * Thermal or battery pressure that should switch off optional background work (e.g. overlapped validation),
+     * or null when there is headroom. Training itself keeps running under the rules above.
+     */
+    @RequiresApi(Build.VERSION_CODES.M)
+    fun getPressureMessage(): String? {
+        val powerManager = context.getSystemService(Context.POWER_SERVICE) as PowerManager
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q &&
+            powerManager.currentThermalStatus >= PowerManager.THERMAL_STATUS_MODERATE) {
+            return "Thermal throttling (status ${powerManager.currentThermalStatus})"
+        }
+        if (powerManager.isPowerSaveMode) {
+            return "Battery saver is on"
+        }
+
+        val batteryStatus = context.registerReceiver(null, IntentFilter(Intent.ACTION_BATTERY_CHANGED))
+        val temperature = (batteryStatus?.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0) ?: 0) / 10
+        if (temperature >= PRESSURE_TEMPERATURE_C) {
+            return "Battery at $temperature°C"
+        }
+
+        val status = batteryStatus?.getIntExtra(BatteryManager.EXTRA_STATUS, -1) ?: -1
+        val isCharging = status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL
+        val level = batteryStatus?.getIntExtra(BatteryManager.EXTRA_LEVEL, -1) ?: -1
+        val scale = batteryStatus?.getIntExtra(BatteryManager.EXTRA_SCALE, -1) ?: -1
+        val batteryPct = if (scale > 0) (level * 100 / scale) else 0
+        val config = globalState.appConfig ?: AppGlobal.app_config()
+        if (!isCharging && batteryPct < config.minChargeLimit + PRESSURE_BATTERY_MARGIN) {
+            return "Battery at $batteryPct% and discharging"
+        }
+
+        return null
+    }
+
+    companion object {
+        private const val PRESSURE_TEMPERATURE_C = 40
+        private const val PRESSURE_BATTERY_MARGIN = 15
+    }
 }
\ No newline at end of file
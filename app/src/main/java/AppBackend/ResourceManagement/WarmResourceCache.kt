@@ -0,0 +1,181 @@
+package AppBackend.ResourceManagement
+
+import android.content.ComponentCallbacks2
+import android.util.Log
+import AppBackend.DataManager.DataLoaderAndInitializer.ImageDataset
+import org.tensorflow.lite.Interpreter
+import java.io.File
+import java.nio.MappedByteBuffer
+import java.security.MessageDigest
+
+/**
+ * Keeps ready interpreters and preprocessed datasets between consecutive tasks, so a new round of the same
+ * federated job skips the cold start (model mapping, thread probing, interpreter creation, dataset reads).
+ *
+ * Datasets are keyed by the SHA-256 content digests the downloader records (see [AssetIntegrity]), so a
+ * re-downloaded but identical file still hits, and anything without a recorded digest is simply not cached.
+ * Interpreters are keyed by their model's architecture ([architectureKey]) instead: every federated round ships
+ * new weights in an otherwise unchanged model, so a content key would never hit. They are checked out
+ * exclusively and checked back in when the task is done; each carries a snapshot of the initial weights it was
+ * last given, restored on reuse, and the content key of the model they came from. Datasets are read-only and
+ * shared. Both pools are LRU, bounded by entry count / bytes, and shrink on memory pressure ([onTrimMemory]).
+ */
+object WarmResourceCache {
+
+    private const val TAG = "WarmResourceCache"
+    private val filesDir = File("/data/data/com.example.fractal/files/")
+
+    class WarmInterpreter(
+        val key: String,               // architecture key
+        val contentKey: String?,       // content key of the model whose weights [initialWeights] holds
+        val interpreter: Interpreter,
+        val modelBuffer: MappedByteBuffer,
+        val numThreads: Int,           // count the interpreter was built with
+        val tunedThreads: Int,         // count the tuner picked for this model
+        val stepsPerSecond: Float,
+        val initialWeights: File       // "save" snapshot of the model's weights as shipped
+    )
+
+    private class WarmDataset(val dataset: ImageDataset, val bytes: Long)
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private val interpreters = LinkedHashMap<String, WarmInterpreter>(4, 0.75f, true)
+    private val datasets = LinkedHashMap<String, WarmDataset>(4, 0.75f, true)
+    private var datasetBytes = 0L
+
+    private const val MAX_INTERPRETERS = 2
+    private const val MAX_DATASETS = 2
+
+    init {
+        // Snapshots only mean something to interpreters of this process
+        filesDir.listFiles()?.filter { it.name.startsWith(SNAPSHOT_PREFIX) }?.forEach { it.delete() }
+    }
+
+    /** Key for the content of [files] plus whatever [shape] the cached object also depends on; null when a digest is unknown. */
+    fun contentKey(files: List<File>, shape: String): String? {
+        val digests = files.map { AssetIntegrity.recordedDigest(it) ?: return null }
+        return digests.joinToString(":") + "|" + shape
+    }
+
+    /**
+     * Key for the architecture of the model behind [interpreter], [modelBytes] long: its signatures with the names,
+     * shapes and types of their inputs and outputs, plus the model's size. Layer widths that no signature exposes
+     * still change the size of the stored weights, so two models sharing a key can restore each other's checkpoints.
+     */
+    fun architectureKey(interpreter: Interpreter, modelBytes: Int): String {
+        val description = StringBuilder().append(modelBytes)
+        for (signature in interpreter.signatureKeys.sorted()) {
+            description.append(';').append(signature).append('(')
+            for (name in interpreter.getSignatureInputs(signature).sorted()) {
+                val tensor = interpreter.getInputTensorFromSignature(name, signature)
+                description.append(name).append(':').append(tensor.dataType()).append(tensor.shape().contentToString()).append(',')
+            }
+            description.append(")->(")
+            for (name in interpreter.getSignatureOutputs(signature).sorted()) {
+                val tensor = interpreter.getOutputTensorFromSignature(name, signature)
+                description.append(name).append(':').append(tensor.dataType()).append(tensor.shape().contentToString()).append(',')
+            }
+            description.append(')')
+        }
+        val digest = MessageDigest.getInstance("SHA-256").digest(description.toString().toByteArray(Charsets.UTF_8))
+        return ARCHITECTURE_PREFIX + AssetIntegrity.toHex(digest)
+    }
+
+    /** Where the weights a warm interpreter of architecture [key] is reset to are saved. */
+    fun snapshotFileFor(key: String): File = File(filesDir, SNAPSHOT_PREFIX + key.removePrefix(ARCHITECTURE_PREFIX).take(16) + ".ckpt")
+
+    // --- Interpreters ---
+
+    /** Takes the idle interpreter for [key] out of the cache (the caller owns it until [checkIn]). */
+    @Synchronized
+    fun checkOut(key: String): WarmInterpreter? {
+        val entry = interpreters.remove(key) ?: return null
+        Log.i(TAG, "Warm interpreter hit ($key)")
+        return entry
+    }
+
+    /** Takes out the idle interpreter last given the weights of the model with [contentKey], if any. */
+    @Synchronized
+    fun checkOutByContent(contentKey: String): WarmInterpreter? {
+        val entry = interpreters.values.firstOrNull { it.contentKey == contentKey } ?: return null
+        return checkOut(entry.key)
+    }
+
+    @Synchronized
+    fun checkIn(entry: WarmInterpreter) {
+        interpreters.remove(entry.key)?.let { if (it !== entry) dispose(it) }
+        interpreters[entry.key] = entry
+        while (interpreters.size > MAX_INTERPRETERS) {
+            evictEldest(interpreters)?.let { dispose(it) }
+        }
+        Log.d(TAG, "Interpreter kept warm (${interpreters.size} cached)")
+    }
+
+    // --- Datasets ---
+
+    @Synchronized
+    fun dataset(key: String): ImageDataset? {
+        val entry = datasets[key] ?: return null
+        Log.i(TAG, "Resident dataset hit ($key)")
+        return entry.dataset
+    }
+
+    /** Caches a resident (heap or mapped) dataset of [bytes], evicting older ones to stay within [maxBytes]. */
+    @Synchronized
+    fun putDataset(key: String, dataset: ImageDataset, bytes: Long, maxBytes: Long) {
+        if (bytes > maxBytes) {
+            Log.d(TAG, "Dataset of $bytes bytes exceeds the residency budget of $maxBytes. Not cached.")
+            return
+        }
+        datasets.remove(key)?.let { datasetBytes -= it.bytes }
+        while (datasets.isNotEmpty() && (datasets.size >= MAX_DATASETS || datasetBytes + bytes > maxBytes)) {
+            evictEldest(datasets)?.let { datasetBytes -= it.bytes }
+        }
+        datasets[key] = WarmDataset(dataset, bytes)
+        datasetBytes += bytes
+        Log.d(TAG, "Dataset kept resident ($datasetBytes bytes across ${datasets.size})")
+    }
+
+    // --- Memory pressure ---
+
+    /** Hooked to Application.onTrimMemory: datasets go first, interpreters only under severe pressure. */
+    @Synchronized
+    fun onTrimMemory(level: Int) {
+        val severe = level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+        val moderate = level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+        if (!severe && !moderate) return
+
+        Log.i(TAG, "Memory pressure (level $level): releasing ${if (severe) "all warm resources" else "resident datasets"}")
+        datasets.clear()
+        datasetBytes = 0L
+        if (severe) {
+            interpreters.values.forEach { dispose(it) }
+            interpreters.clear()
+        }
+    }
+
+    @Synchronized
+    fun clear() {
+        datasets.clear()
+        datasetBytes = 0L
+        interpreters.values.forEach { dispose(it) }
+        interpreters.clear()
+    }
+
+    private fun <V> evictEldest(map: LinkedHashMap<String, V>): V? {
+        val eldest = map.keys.firstOrNull() ?: return null
+        return map.remove(eldest)
+    }
+
+    private fun dispose(entry: WarmInterpreter) {
+        try {
+            entry.interpreter.close()
+        } catch (e: Exception) {
+            Log.w(TAG, "Closing a warm interpreter failed: ${e.message}")
+        }
+        entry.initialWeights.delete()
+    }
+
+    private const val SNAPSHOT_PREFIX = "warm_initial_"
+    private const val ARCHITECTURE_PREFIX = "arch:"
+}
@@ -16,13 +16,40 @@ class Image_Task(
     override var input_tensor_name: Map<List<String>, Any> = mutableMapOf(),
     override var output_tensor_name: Map<List<String>, Any> = mutableMapOf(),
     override var MODEL_FILENAME: String = "model_server.tflite",
+    override var NUM_THREADS: Int = 0,
+    override var CHECKPOINT_GENERATIONS: Int = 3,
+    override var MODEL_SHA256: String = "",
+    override var OVERLAP_VALIDATION: Boolean = false,
+    override var EARLY_STOP_PATIENCE: Int = 3,
+    override var EARLY_STOP_MIN_DELTA: Float = 0.005f,
+    override var EARLY_STOP_MIN_EPOCHS: Int = 5,
+    override var DIVERGENCE_POLICY: String = "retry",
+    override var TRAIN_TIME_BUDGET_SEC: Int = 0,
+    override var TRAIN_STEP_BUDGET: Int = 0,
+    override var TRAIN_DEADLINE: Long = 0L,
+    override var HEAD_ONLY: Boolean = false,
+    override var FUSED_STEPS: Int = 0,
+    override var DENSE_HIDDEN_UNITS: String = "",
+    override var DENSE_LEARNING_RATE: Float = 0.05f,
 
     override var BATCH_SIZE: Int = 100,
     override var NUM_TRAININGS: Int = 6000,
     override var INPUT_SHAPE: Array<Int> = arrayOf(1, 28, 28, 1),
     override var NUM_CLASSES: Int = 10,
     override var TRAIN_IMAGES_FILENAME: String = "train_images_server.bin",
-    override var TRAIN_LABELS_FILENAME: String = "train_labels_server.bin"
+    override var TRAIN_LABELS_FILENAME: String = "train_labels_server.bin",
+    override var PREFETCH_DEPTH: Int = 2,
+    override var SHUFFLE: Boolean = true,
+    override var SHUFFLE_SEED: Long = -1L,
+    override var IMPORTANCE_SAMPLING: Boolean = false,
+    override var CORESET_FRACTION: Float = 0f,
+    override var DATASET_LOADING: String = "mmap",
+    override var AUGMENTATIONS: String = "",
+    override var DATA_WORKERS: Int = 0,
+    override var TRAIN_IMAGES_SHA256: String = "",
+    override var TRAIN_LABELS_SHA256: String = "",
+    override var VALIDATION_SPLIT: Float = 0f,
+    override var EVAL_CONFIDENCE: Float = 0f
 ) : Task, Image_Task_ModelParams, Image_Task_DataParams {
 
     override fun save_data(): Boolean {
@@ -7,4 +7,16 @@ interface Image_Task_DataParams:Task_DataParams{
     var NUM_CLASSES: Int
     var TRAIN_IMAGES_FILENAME: String
     var TRAIN_LABELS_FILENAME: String
+    var PREFETCH_DEPTH: Int
+    var SHUFFLE: Boolean
+    var SHUFFLE_SEED: Long
+    var IMPORTANCE_SAMPLING: Boolean
+    var CORESET_FRACTION: Float
+    var DATASET_LOADING: String
+    var AUGMENTATIONS: String
+    var DATA_WORKERS: Int
+    var TRAIN_IMAGES_SHA256: String
+    var TRAIN_LABELS_SHA256: String
+    var VALIDATION_SPLIT: Float
+    var EVAL_CONFIDENCE: Float
 }
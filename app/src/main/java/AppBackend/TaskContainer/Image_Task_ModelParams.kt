@@ -5,4 +5,19 @@ interface Image_Task_ModelParams:Task_ModelParams {
     override var input_tensor_name: Map<List<String>, Any>
     override var output_tensor_name: Map<List<String>, Any>
     override var MODEL_FILENAME: String
+    var NUM_THREADS: Int
+    var CHECKPOINT_GENERATIONS: Int
+    var MODEL_SHA256: String
+    var OVERLAP_VALIDATION: Boolean
+    var EARLY_STOP_PATIENCE: Int
+    var EARLY_STOP_MIN_DELTA: Float
+    var EARLY_STOP_MIN_EPOCHS: Int
+    var DIVERGENCE_POLICY: String
+    var TRAIN_TIME_BUDGET_SEC: Int
+    var TRAIN_STEP_BUDGET: Int
+    var TRAIN_DEADLINE: Long
+    var HEAD_ONLY: Boolean
+    var FUSED_STEPS: Int
+    var DENSE_HIDDEN_UNITS: String
+    var DENSE_LEARNING_RATE: Float
 }
\ No newline at end of file
@@ -0,0 +1,135 @@
+package AppBackend.Validator.ModelInferenceValidator
+
+import android.util.Log
+import AppBackend.DataManager.DataLoaderAndInitializer.DatasetSplit
+import AppBackend.DataManager.DataLoaderAndInitializer.ImageDataset
+import AppBackend.LocalTrainingModule.TrainingExecutor.SamplePermutation
+import org.tensorflow.lite.Interpreter
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+import kotlin.math.ln
+
+/**
+ * Runs the `infer` signature over a list of samples in batch-sized chunks and accumulates
+ * accuracy, the confusion matrix and cross-entropy loss. All tensors are direct buffers allocated once;
+ * a short last chunk is zero-padded and the padding rows are ignored.
+ */
+class BatchedEvaluator(
+    private val interpreter: Interpreter,
+    private val imageSize: Int,
+    private val numClasses: Int
+) {
+    private val TAG = "BatchedEvaluator"
+
+    val batchSize: Int = resolveInferBatchSize()
+
+    private val imageTensor = directFloats(batchSize * imageSize)
+    private val outputTensor = directFloats(batchSize * numClasses)
+    private val logitsTensor = directFloats(batchSize * numClasses)
+    private val probs = FloatArray(batchSize * numClasses)
+
+    private val inputs = mutableMapOf<String, Any>("x" to imageTensor)
+    private val outputs = mutableMapOf<String, Any>("output" to outputTensor, "logits" to logitsTensor)
+
+    /**
+     * Evaluates [samples] in order. With [targetHalfWidth] > 0 it stops as soon as the 95% interval
+     * around the accuracy is that narrow (after at least [MIN_SAMPLES_BEFORE_STOP] samples);
+     * [samples] must then be shuffled over the whole split so the early estimate is unbiased (see [earlyStopTarget]).
+     */
+    fun evaluate(dataset: ImageDataset, samples: IntArray, targetHalfWidth: Float): EvaluationReport {
+        val reader = dataset.openReader()
+        val confusion = IntArray(numClasses * numClasses)
+        var evaluated = 0
+        var correct = 0
+        var lossSum = 0.0
+        val start = System.nanoTime()
+
+        while (evaluated < samples.size) {
+            val chunk = minOf(batchSize, samples.size - evaluated)
+
+            // Predictions are checked against the stored class index, so only the images are copied
+            imageTensor.clear()
+            for (i in 0 until chunk) reader.copyImage(samples[evaluated + i], imageTensor)
+            while (imageTensor.hasRemaining()) imageTensor.put(0f)
+            imageTensor.rewind()
+
+            interpreter.runSignature(inputs, outputs, "infer")
+
+            outputTensor.rewind()
+            outputTensor.get(probs)
+
+            for (i in 0 until chunk) {
+                val stored = reader.labelOf(samples[evaluated + i])
+                val row = i * numClasses
+                var predicted = 0
+                for (cls in 1 until numClasses) {
+                    if (probs[row + cls] > probs[row + predicted]) predicted = cls
+                }
+
+                if (predicted == stored) correct++
+                if (stored in 0 until numClasses) {
+                    confusion[stored * numClasses + predicted]++
+                    lossSum -= ln(maxOf(probs[row + stored], PROB_FLOOR).toDouble())
+                }
+            }
+            evaluated += chunk
+
+            if (targetHalfWidth > 0f && evaluated >= MIN_SAMPLES_BEFORE_STOP &&
+                EvaluationReport.wilsonHalfWidth(correct, evaluated) <= targetHalfWidth) {
+                break
+            }
+        }
+
+        return EvaluationReport(numClasses, evaluated, samples.size, correct, lossSum, confusion, System.nanoTime() - start)
+    }
+
+    private fun resolveInferBatchSize(): Int {
+        return try {
+            val slots = interpreter.getInputTensorFromSignature("x", "infer").numElements() / imageSize
+            maxOf(1, slots).also { Log.d(TAG, "Infer signature takes batches of $it") }
+        } catch (e: Exception) {
+            Log.w(TAG, "Could not inspect infer signature tensors (${e.message}). Evaluating one sample per call.")
+            1
+        }
+    }
+
+    private fun directFloats(count: Int): FloatBuffer =
+        ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder()).asFloatBuffer()
+
+    companion object {
+        private const val MIN_SAMPLES_BEFORE_STOP = 100
+        private const val PROB_FLOOR = 1e-7f
+
+        /**
+         * The 95% half-width to stop at for a requested EVAL_CONFIDENCE, or 0 for a full pass. A streamed dataset
+         * can only be visited window by window, and its first windows are no unbiased sample of the split.
+         */
+        fun earlyStopTarget(dataset: ImageDataset, requested: Float): Float {
+            if (requested <= 0f) return 0f
+            if (dataset.blockSize < dataset.sampleCount) {
+                Log.w("BatchedEvaluator", "EVAL_CONFIDENCE ignored: dataset is streamed. Evaluating the full split.")
+                return 0f
+            }
+            return requested
+        }
+
+        /**
+         * Samples to evaluate: the held-out tail the trainer never saw, or every sample when nothing is held out.
+         * [shuffled] visits them in a fixed random order over the whole split - needed when a confidence target
+         * may stop the pass early. Otherwise they stay in file order, which streams each window once.
+         */
+        fun evaluationOrder(dataset: ImageDataset, validationSplit: Float, seed: Long, shuffled: Boolean): IntArray {
+            val firstHeldOut = DatasetSplit.trainingCount(dataset.sampleCount, validationSplit)
+            val split = if (firstHeldOut < dataset.sampleCount) {
+                IntArray(dataset.sampleCount - firstHeldOut) { firstHeldOut + it }
+            } else {
+                SamplePermutation.identity(dataset.sampleCount)
+            }
+
+            val order = IntArray(split.size)
+            SamplePermutation(split, seed, shuffled).fill(0, order)
+            return order
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package AppBackend.Validator.ModelInferenceValidator
+
+import kotlin.math.sqrt
+
+/**
+ * Metrics of one evaluation pass. [confusion] is row-major: row = stored class, column = predicted class.
+ */
+class EvaluationReport(
+    val numClasses: Int,
+    val samples: Int,
+    val plannedSamples: Int,
+    val correct: Int,
+    private val lossSum: Double,
+    val confusion: IntArray,
+    private val elapsedNanos: Long
+) {
+    val accuracy: Float get() = if (samples > 0) correct.toFloat() / samples else 0f
+    val meanLoss: Float get() = if (samples > 0) (lossSum / samples).toFloat() else 0f
+    val samplesPerSecond: Float get() = if (elapsedNanos > 0) samples * 1e9f / elapsedNanos else 0f
+    val stoppedEarly: Boolean get() = samples < plannedSamples
+
+    /** Half-width of the 95% Wilson interval around [accuracy]. */
+    val confidenceHalfWidth: Float get() = wilsonHalfWidth(correct, samples)
+
+    /** Fraction of the samples stored as [cls] that were predicted as [cls] (NaN when the class never occurred). */
+    fun recall(cls: Int): Float {
+        var total = 0
+        for (predicted in 0 until numClasses) total += confusion[cls * numClasses + predicted]
+        return if (total > 0) confusion[cls * numClasses + cls].toFloat() / total else Float.NaN
+    }
+
+    companion object {
+        private const val Z_95 = 1.96
+
+        fun wilsonHalfWidth(correct: Int, samples: Int): Float {
+            if (samples == 0) return 1f
+            val n = samples.toDouble()
+            val p = correct / n
+            val z2 = Z_95 * Z_95
+            return (Z_95 * sqrt(p * (1 - p) / n + z2 / (4 * n * n)) / (1 + z2 / n)).toFloat()
+        }
+    }
+}
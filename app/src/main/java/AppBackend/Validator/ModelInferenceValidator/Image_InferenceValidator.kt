@@ -1,12 +1,11 @@
 package AppBackend.Validator.ModelInferenceValidator
 
 import android.util.Log
+import AppBackend.DataManager.DataLoaderAndInitializer.DatasetSplit
+import AppBackend.DataManager.DataLoaderAndInitializer.ImageDataset
 import AppBackend.TaskContainer.Image_Task
 import AppBackend.TaskContainer.Task
 import org.tensorflow.lite.Interpreter
-import java.nio.ByteBuffer
-import java.nio.ByteOrder
-import java.nio.FloatBuffer
 
 class Image_InferenceValidator : InferenceValidator {
 
@@ -14,25 +13,22 @@ class Image_InferenceValidator : InferenceValidator {
 
     /**
      * Entry point for the validation logic.
-     * Returns a formatted string for the UI (e.g., "Class 7 (98.5%)")
+     * Returns a formatted string for the UI (e.g., "Acc 97.8% ±0.4 (600 held-out) | Loss 0.071 | 2150/s")
      */
     override fun infer(obj: Any, interpreter: Interpreter, task: Task): String {
-        return if (obj is Pair<*, *>) {
-            @Suppress("UNCHECKED_CAST")
-            val pair = obj as Pair<FloatBuffer, FloatBuffer>
-            inferImageInferenceValidate(pair, interpreter, task)
+        return if (obj is ImageDataset) {
+            inferImageInferenceValidate(obj, interpreter, task)
         } else {
             Log.e(TAG, "Validation failed: Invalid data format.")
             "Format Error"
         }
     }
 
-    private fun inferImageInferenceValidate(obj: Pair<FloatBuffer, FloatBuffer>, interpreter: Interpreter, task: Task): String {
-        Log.i(TAG, "Starting Model Inference Validation (Sanity Check)...")
+    private fun inferImageInferenceValidate(dataset: ImageDataset, interpreter: Interpreter, task: Task): String {
+        Log.i(TAG, "Starting Model Evaluation...")
 
         return try {
             val imageTask = task as Image_Task
-            val imageBatch = obj.first
 
             // --- SAFE EXTRACTION OF DIMENSIONS FROM TASK ---
             val shapeArray = imageTask.INPUT_SHAPE
@@ -53,48 +49,38 @@ class Image_InferenceValidator : InferenceValidator {
             val numClasses = imageTask.NUM_CLASSES
             // ----------------------------------------------
 
-            // 1. Extract a single test image (the very first one) from the memory batch
-            val singleImageFloats = FloatArray(imgHeight * imgWidth)
-            imageBatch.position(0) // Go to the absolute start of the buffer
-            imageBatch.get(singleImageFloats)
-            imageBatch.rewind() // Reset the buffer position
+            // 1. Pick the split: the held-out tail the trainer never saw, or every sample when nothing was held out
+            val heldOut = DatasetSplit.heldOutCount(dataset.sampleCount, imageTask.VALIDATION_SPLIT) > 0
+            val targetHalfWidth = BatchedEvaluator.earlyStopTarget(dataset, imageTask.EVAL_CONFIDENCE)
+            val order = BatchedEvaluator.evaluationOrder(dataset, imageTask.VALIDATION_SPLIT, task.task_Id.toLong(), targetHalfWidth > 0f)
+            dataset.onEpochOrder(order)
 
-            // 2. Prepare the input buffer using dynamic dimensions
-            val inputBuffer = ByteBuffer.allocateDirect(imgHeight * imgWidth * 4)
-                .order(ByteOrder.nativeOrder()).asFloatBuffer()
-            inputBuffer.put(singleImageFloats).rewind()
+            // 2. Batched pass over the split
+            val evaluator = BatchedEvaluator(interpreter, imgHeight * imgWidth, numClasses)
+            val report = evaluator.evaluate(dataset, order, targetHalfWidth)
 
-            // 3. Prepare output buffers based on dynamic class numbers
-            val outputBuffer = ByteBuffer.allocateDirect(numClasses * 4)
-                .order(ByteOrder.nativeOrder()).asFloatBuffer()
-            val logitsBuffer = ByteBuffer.allocateDirect(numClasses * 4)
-                .order(ByteOrder.nativeOrder()).asFloatBuffer()
-
-            val inputs = mutableMapOf<String, Any>("x" to inputBuffer)
-            val outputs = mutableMapOf<String, Any>("output" to outputBuffer, "logits" to logitsBuffer)
-
-            // 4. Run the validation inference
-            interpreter.runSignature(inputs, outputs, "infer")
-
-            // 5. Parse the results to find the highest probability
-            outputBuffer.rewind()
-            val probs = FloatArray(numClasses)
-            outputBuffer.get(probs)
-
-            val predictedClass = probs.indices.maxByOrNull { probs[it] } ?: -1
-            val confidence = if (predictedClass != -1) probs[predictedClass] * 100 else 0f
-
-            val resultString = String.format("Class %d (%.1f%%)", predictedClass, confidence)
+            // 3. Report
+            val resultString = String.format(
+                "Acc %.1f%% ±%.1f (%d %s) | Loss %.3f | %.0f/s",
+                report.accuracy * 100, report.confidenceHalfWidth * 100, report.samples,
+                if (heldOut) "held-out" else "train", report.meanLoss, report.samplesPerSecond
+            )
 
             Log.i(TAG, "=========================================")
-            Log.i(TAG, " VALIDATION SUCCESSFUL")
-            Log.i(TAG, " Predicted Result: $resultString")
+            Log.i(TAG, " EVALUATION SUCCESSFUL")
+            Log.i(TAG, " Result: $resultString")
+            Log.i(TAG, " Evaluated ${report.samples}/${report.plannedSamples} samples in batches of ${evaluator.batchSize}" +
+                    if (report.stoppedEarly) " (stopped at ±${targetHalfWidth * 100}%)" else "")
+            for (cls in 0 until numClasses) {
+                val row = report.confusion.copyOfRange(cls * numClasses, (cls + 1) * numClasses)
+                Log.i(TAG, String.format(" Class %d recall %.1f%% | %s", cls, report.recall(cls) * 100, row.joinToString(" ")))
+            }
             Log.i(TAG, "=========================================")
 
             resultString
 
         } catch (e: Exception) {
-            Log.e(TAG, "Inference Validation Failed: ${e.message}")
+            Log.e(TAG, "Model Evaluation Failed: ${e.message}")
             "Inference Error"
         }
     }
@@ -0,0 +1,99 @@
+package AppBackend.Validator.ModelInferenceValidator
+
+import android.os.Process
+import android.util.Log
+import AppBackend.DataManager.DataLoaderAndInitializer.ImageDataset
+import org.tensorflow.lite.Interpreter
+import java.io.File
+import java.nio.ByteBuffer
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+/**
+ * Evaluates checkpoints on a second, single-threaded, background-priority interpreter while the primary one keeps training.
+ *
+ * At most one evaluation runs and one waits: a newer request replaces a waiting one, so a slow device
+ * reports the freshest epoch instead of falling behind. The held-out order is built once and reused.
+ */
+class OverlappedEpochValidator(
+    private val model: ByteBuffer,
+    private val dataset: ImageDataset,
+    private val order: IntArray,
+    private val imageSize: Int,
+    private val numClasses: Int,
+    private val targetHalfWidth: Float
+) {
+    private val TAG = "OverlappedValidator"
+
+    /** A checkpoint to evaluate: its weights file, the epochs it has completed and a label for the report. */
+    class Target(val label: String, val epochsCompleted: Int, val file: File)
+
+    /** Supplies the checkpoint to evaluate, or null when it is not available (e.g. already pruned from the journal). */
+    fun interface CheckpointSource {
+        fun latest(): Target?
+    }
+
+    fun interface Listener {
+        fun onEvaluated(target: Target, report: EvaluationReport)
+    }
+
+    private val executor = ThreadPoolExecutor(
+        1, 1, 0L, TimeUnit.MILLISECONDS, ArrayBlockingQueue(1),
+        { runnable ->
+            Thread({
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND)
+                runnable.run()
+            }, "Fractal-EpochEval").apply { isDaemon = true }
+        },
+        ThreadPoolExecutor.DiscardOldestPolicy()
+    )
+
+    // Created on the evaluation thread the first time it is needed, used only there
+    private var interpreter: Interpreter? = null
+    private var evaluator: BatchedEvaluator? = null
+
+    @Volatile var isShutdown = false
+        private set
+
+    fun submit(source: CheckpointSource, listener: Listener) {
+        if (isShutdown) return
+        executor.execute { evaluate(source, listener) }
+    }
+
+    /** Stops taking work; a running evaluation finishes in the background and its interpreter is closed. */
+    fun shutdown(reason: String) {
+        if (isShutdown) return
+        isShutdown = true
+        Log.i(TAG, "Overlapped validation off: $reason")
+        executor.queue.clear()
+        executor.execute { release() }
+        executor.shutdown()
+    }
+
+    private fun evaluate(source: CheckpointSource, listener: Listener) {
+        if (isShutdown) return
+        try {
+            val target = source.latest() ?: return
+
+            val engine = interpreter ?: Interpreter(model, Interpreter.Options().setNumThreads(1)).also { interpreter = it }
+            val batched = evaluator ?: BatchedEvaluator(engine, imageSize, numClasses).also { evaluator = it }
+
+            engine.runSignature(mutableMapOf<String, Any>("checkpoint_path" to target.file.absolutePath), mutableMapOf<String, Any>(), "restore")
+            val report = batched.evaluate(dataset, order, targetHalfWidth)
+
+            Log.i(TAG, String.format("%s: acc %.1f%% ±%.1f, loss %.3f over %d samples (%.0f samples/s)",
+                target.label, report.accuracy * 100, report.confidenceHalfWidth * 100, report.meanLoss, report.samples, report.samplesPerSecond))
+            listener.onEvaluated(target, report)
+        } catch (e: Exception) {
+            // A generation pruned mid-restore or a busy device only costs this data point
+            Log.w(TAG, "Overlapped evaluation failed: ${e.message}")
+        }
+    }
+
+    private fun release() {
+        interpreter?.close()
+        interpreter = null
+        evaluator = null
+    }
+}
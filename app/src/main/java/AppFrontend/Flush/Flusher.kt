@@ -1,6 +1,7 @@
 package AppFrontend.Flush
 
 import android.util.Log
+import AppBackend.ResourceManagement.AssetIntegrity
 import AppBackend.TaskContainer.Image_Task
 import AppBackend.TaskContainer.Task
 import java.io.File
@@ -12,13 +13,22 @@ class Flusher {
     fun flushCheckpoint(task: Task) {
         val imageTask = task as Image_Task
         val ckptFile = File(filesDir, imageTask.CKPT_FILENAME)
-        val metaFile = File(filesDir, "${imageTask.task_Id}_meta.json")
+        val indexFile = File(filesDir, "${imageTask.task_Id}_checkpoints.json")
+        val orderFile = File(filesDir, "${imageTask.task_Id}_order.bin")
 
         if (ckptFile.exists() && ckptFile.delete()) {
             Log.d(TAG, "--> Flushed checkpoint weights: ${ckptFile.name}")
         }
-        if (metaFile.exists() && metaFile.delete()) {
-            Log.d(TAG, "--> Flushed checkpoint metadata: ${metaFile.name}")
+        if (indexFile.exists() && indexFile.delete()) {
+            Log.d(TAG, "--> Flushed checkpoint journal index: ${indexFile.name}")
+        }
+        File(filesDir).listFiles()?.forEach { file ->
+            if (file.name.startsWith("${imageTask.task_Id}_ckpt_gen") && file.delete()) {
+                Log.d(TAG, "--> Flushed checkpoint generation: ${file.name}")
+            }
+        }
+        if (orderFile.exists() && orderFile.delete()) {
+            Log.d(TAG, "--> Flushed checkpoint sample order: ${orderFile.name}")
         }
     }
 
@@ -31,6 +41,12 @@ class Flusher {
         if (imgFile.exists() && imgFile.delete()) Log.d(TAG, "--> Flushed training images: ${imgFile.name}")
         if (lblFile.exists() && lblFile.delete()) Log.d(TAG, "--> Flushed training labels: ${lblFile.name}")
         if (modelFile.exists() && modelFile.delete()) Log.d(TAG, "--> Flushed server model: ${modelFile.name}")
+
+        // Download-time digests of the files above
+        for (file in listOf(imgFile, lblFile, modelFile)) {
+            val sidecar = AssetIntegrity.sidecarOf(file)
+            if (sidecar.exists() && sidecar.delete()) Log.d(TAG, "--> Flushed digest: ${sidecar.name}")
+        }
     }
 
     fun flushAll(task: Task): Boolean {
@@ -218,6 +218,16 @@ public class HomeViewModel extends AndroidViewModel {
                             }
                         }
 
+                        @Override
+                        public void onThroughputUpdate(float samplesPerSecond) {
+                            Log.i(TAG, String.format("Training throughput: %.1f samples/sec", samplesPerSecond));
+                        }
+
+                        @Override
+                        public void onEngineConfigUpdate(int numThreads, float stepsPerSecond) {
+                            Log.i(TAG, String.format("Training engine: %d threads, %.1f steps/sec", numThreads, stepsPerSecond));
+                        }
+
                         // --- NEW CALLBACK IMPLEMENTATIONS ---
                         @Override
                         public boolean isPaused() {
@@ -243,6 +253,20 @@ public class HomeViewModel extends AndroidViewModel {
                             }
                             return null;
                         }
+
+                        @Override
+                        public ResourceManager_Live_DTO getLiveResources() {
+                            return resourceManager;
+                        }
+
+                        @Override
+                        public String checkBackgroundPressure() {
+                            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                                OperationControl opControl = new OperationControl(getApplication());
+                                return opControl.getPressureMessage();
+                            }
+                            return null;
+                        }
                     });
                 }
 
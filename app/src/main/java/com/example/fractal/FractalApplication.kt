@@ -4,6 +4,7 @@ import AppBackend.Factory.PackageTypeTrainer.PackageTypeTrainerBuilder
 import android.app.Application
 import android.util.Log
 import AppBackend.Network.Server_DAO.Server_DAO
+import AppBackend.ResourceManagement.WarmResourceCache
 import AppGlobal.GlobalState
 import AppGlobal.app_config
 import AppGlobal.Utils.FileOperations
@@ -62,6 +63,17 @@ class FractalApplication : Application() {
         Log.d("FractalApp", "FractalApplication started. Config Loaded: $appConfig")
     }
 
+    // Warm interpreters and resident datasets kept between tasks are the first thing to give back
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        WarmResourceCache.onTrimMemory(level)
+    }
+
+    override fun onLowMemory() {
+        super.onLowMemory()
+        WarmResourceCache.clear()
+    }
+
 
 
 
@@ -2,6 +2,7 @@ package com.example.fractal
 
 import android.content.Context
 import android.util.Log
+import AppBackend.ResourceManagement.AssetIntegrity
 import AppBackend.ResourceManagement.DataDownloader_naf
 import AppBackend.LocalTrainingModule.TrainingExecutor.TrainingCallback
 import AppBackend.TaskContainer.Image_Task
@@ -79,20 +80,20 @@ class Orchestrator(private val context: Context) {
                 if (task == null || callback.isCancelled() == true) return
 
                 // Step 2: Smart Download Resources
+                // Local files are only reused if they pass the integrity precheck (digests, sizes, shapes)
                 var downloadSuccess = false
                 var needsDownload = true
+                var expectedDigests = emptyMap<String, String>()
 
                 if (task is Image_Task) {
-                    val modelFile = File(context.filesDir, task.MODEL_FILENAME)
-                    val imagesFile = File(context.filesDir, task.TRAIN_IMAGES_FILENAME)
-                    val labelsFile = File(context.filesDir, task.TRAIN_LABELS_FILENAME)
-
-                    if (modelFile.exists() && modelFile.length() > 0 &&
-                        imagesFile.exists() && imagesFile.length() > 0 &&
-                        labelsFile.exists() && labelsFile.length() > 0) {
+                    expectedDigests = AssetIntegrity.expectedDigests(task)
+                    val problem = AssetIntegrity.precheck(task, context.filesDir)
+                    if (problem == null) {
                         callback.onStatusUpdate("Local files found. Skipping download...")
                         needsDownload = false
                         downloadSuccess = true
+                    } else {
+                        Log.i(TAG, "Local assets unusable ($problem). Downloading.")
                     }
                 }
 
@@ -100,7 +101,7 @@ class Orchestrator(private val context: Context) {
                     callback.onStatusUpdate("Downloading training resources...")
                     val latch = CountDownLatch(1)
 
-                    DataDownloader_naf.downloadFiles(context, serverIp, object : DataDownloader_naf.DownloadListener {
+                    DataDownloader_naf.downloadFiles(context, serverIp, expectedDigests, object : DataDownloader_naf.DownloadListener {
                         override fun onDownloadFinished() {
                             downloadSuccess = true
                             latch.countDown()
@@ -112,6 +113,16 @@ class Orchestrator(private val context: Context) {
                         }
                     })
                     latch.await()
+
+                    // Fresh files still have to describe this task before anything is built on them
+                    if (downloadSuccess && task is Image_Task) {
+                        val problem = AssetIntegrity.precheck(task, context.filesDir)
+                        if (problem != null) {
+                            Log.e(TAG, "Downloaded assets rejected: $problem")
+                            AssetIntegrity.discard(task, context.filesDir)
+                            downloadSuccess = false
+                        }
+                    }
                 }
 
                 if (!downloadSuccess) {
@@ -0,0 +1,107 @@
+package AppBackend.DataManager.Coreset
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.file.Files
+import java.util.Random
+
+class CoresetSelectionTest {
+
+    @Test
+    fun apportion_sumsToTheTotalWithOneSamplePerClass() {
+        val sizes = listOf(500, 3, 120, 1, 60, 0)
+        for (total in listOf(6, 50, 171, 683)) {
+            val quotas = KCenter.apportion(sizes, total)
+            assertEquals("total $total", total, quotas.sum())
+            for (g in sizes.indices) {
+                assertTrue("group $g over its size", quotas[g] <= sizes[g])
+                if (sizes[g] > 0) assertTrue("group $g empty at total $total", quotas[g] >= 1)
+                // Proportional up to rounding, except where the minimum of one lifts a small group
+                val share = total.toDouble() * sizes[g] / sizes.sum()
+                if (share >= 1) assertEquals("group $g at total $total", share, quotas[g].toDouble(), 1.0 + sizes.size)
+            }
+        }
+
+        // Fewer samples than classes: no class gets two, the total still holds
+        val tight = KCenter.apportion(List(10) { 5 }, 4)
+        assertEquals(4, tight.sum())
+        assertTrue(tight.all { it <= 1 })
+
+        // A total beyond the data takes everything
+        assertArrayEquals(sizes.toIntArray(), KCenter.apportion(sizes, 1000))
+    }
+
+    @Test
+    fun kCenter_picksTheFarthestRemainingSampleEachTime() {
+        val count = 300
+        val embeddings = Embeddings(count, 4)
+        val random = Random(7L)
+        for (i in embeddings.values.indices) embeddings.values[i] = random.nextGaussian().toFloat()
+        // Odd samples only, so dataset indices and group positions differ
+        val group = IntArray(count / 2) { it * 2 + 1 }
+        val k = 25
+
+        val picks = KCenter.select(group, k, embeddings)!!
+        assertEquals(k, picks.size)
+        assertEquals(k, picks.toSet().size)
+        assertTrue(picks.all { it in group })
+
+        // The first pick is the member closest to the group mean
+        val mean = FloatArray(4)
+        for (sample in group) for (j in 0 until 4) mean[j] += embeddings.values[sample * 4 + j] / group.size
+        fun toMean(sample: Int) = (0 until 4).sumOf { j -> (embeddings.values[sample * 4 + j] - mean[j]).toDouble().let { it * it } }
+        assertEquals(group.minOf { toMean(it) }, toMean(picks[0]), 1e-5)
+
+        // Every later pick is at the largest distance from the picks before it
+        for (p in 1 until k) {
+            fun toPicks(sample: Int) = (0 until p).minOf { embeddings.squaredDistance(sample, picks[it]) }
+            val farthest = group.filter { it !in picks.copyOfRange(0, p) }.maxOf { toPicks(it) }
+            assertEquals("pick $p", farthest, toPicks(picks[p]), 0f)
+        }
+
+        assertArrayEquals(group, KCenter.select(group, group.size, embeddings))
+        assertNull(KCenter.select(group, k, embeddings) { true })
+    }
+
+    @Test
+    fun indexFile_roundTripsAndRejectsDamagedOrForeignSelections() {
+        val dir = Files.createTempDirectory("coreset").toFile()
+        try {
+            val file = File(dir, "coreset_test.idx")
+            val key = "images:labels|1000:100:v2"
+            val selected = IntArray(100) { it * 9 + 3 }
+            assertNull(CoresetIndexFile.read(file, key, 1000, 100))
+
+            CoresetIndexFile.write(file, key, selected)
+            assertArrayEquals(selected, CoresetIndexFile.read(file, key, 1000, 100))
+
+            // Another dataset, another size or a split that no longer holds the indices
+            assertNull(CoresetIndexFile.read(file, "other|1000:100:v2", 1000, 100))
+            assertNull(CoresetIndexFile.read(file, key, 1000, 99))
+            assertNull(CoresetIndexFile.read(file, key, 500, 100))
+
+            // A flipped byte anywhere fails the CRC
+            RandomAccessFile(file, "rw").use { raf ->
+                raf.seek(40)
+                val b = raf.read()
+                raf.seek(40)
+                raf.write(b xor 0x01)
+            }
+            assertNull(CoresetIndexFile.read(file, key, 1000, 100))
+
+            // Unsorted indices are refused even with a valid CRC
+            CoresetIndexFile.write(file, key, selected.reversedArray())
+            assertNull(CoresetIndexFile.read(file, key, 1000, 100))
+
+            file.writeBytes(ByteArray(5))
+            assertNull(CoresetIndexFile.read(file, key, 1000, 100))
+        } finally {
+            dir.deleteRecursively()
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package AppBackend.LocalTrainingModule.ReferenceEngine
+
+import AppBackend.LocalTrainingModule.TrainingExecutor.writeBenchmarkResults
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.util.Random
+
+/**
+ * The reference engine at increasing thread counts (softmax regression and an MLP on MNIST-sized inputs), plus the
+ * correctness it rests on: analytic vs numeric gradients, thread-count independence, convergence on separable data
+ * and the weights file round trip. Timings vary too much across machines to assert on: training samples/sec per
+ * model and thread count go to build/benchmarks/dense_network.tsv, and only correctness is checked.
+ */
+class DenseNetworkBenchmarkTest {
+
+    private val inputs = 784
+    private val classes = 10
+    private val batchSize = 64
+
+    /** [count] random inputs in [0, 1) and one-hot labels, [classes] of them cycling. */
+    private fun syntheticBatch(count: Int, inputSize: Int, classCount: Int, seed: Long): Pair<FloatArray, FloatArray> {
+        val random = Random(seed)
+        val images = FloatArray(count * inputSize) { random.nextFloat() }
+        val labels = FloatArray(count * classCount)
+        for (i in 0 until count) labels[i * classCount + i % classCount] = 1f
+        return images to labels
+    }
+
+    /** Training steps/sec of [layerSizes] with [threads] kernel threads. */
+    private fun measure(layerSizes: IntArray, threads: Int, steps: Int): Double {
+        val (images, labels) = syntheticBatch(batchSize, inputs, classes, 1L)
+        MatrixKernels(threads).use { kernels ->
+            val network = DenseNetwork(layerSizes, kernels)
+            network.initialize(7L)
+            repeat(20) { network.trainStep(images, labels, batchSize, 0.01f) } // JIT warm-up
+
+            val start = System.nanoTime()
+            repeat(steps) { network.trainStep(images, labels, batchSize, 0.01f) }
+            return steps * 1e9 / (System.nanoTime() - start)
+        }
+    }
+
+    @Test
+    fun training_throughputPerThreadCount() {
+        val cores = Runtime.getRuntime().availableProcessors()
+        val threadCounts = listOf(1, 2, 4, 8).filter { it <= maxOf(1, cores) }
+
+        val rows = ArrayList<List<Any>>()
+        for ((name, sizes) in listOf("softmax 784-10" to intArrayOf(inputs, classes), "mlp 784-256-128-10" to intArrayOf(inputs, 256, 128, classes))) {
+            for (threads in threadCounts) {
+                val stepsPerSecond = measure(sizes, threads, 200)
+                assertTrue("$name on $threads thread(s): $stepsPerSecond steps/s", stepsPerSecond > 0 && stepsPerSecond.isFinite())
+                rows.add(listOf(name, threads, "%.1f".format(stepsPerSecond), "%.0f".format(stepsPerSecond * batchSize)))
+            }
+        }
+        writeBenchmarkResults("dense_network", listOf("model", "threads", "steps_per_second", "samples_per_second"), rows)
+    }
+
+    @Test
+    fun gradients_matchFiniteDifferences() {
+        val sizes = intArrayOf(6, 5, 4)
+        val batch = 3
+        val (images, labels) = syntheticBatch(batch, sizes[0], sizes.last(), 3L)
+        MatrixKernels(1).use { kernels ->
+            val network = DenseNetwork(sizes, kernels)
+            network.initialize(11L)
+            val before = network.weights.map { it.copyOf() }
+
+            // With a learning rate of 1 the update is exactly minus the gradient
+            network.trainStep(images, labels, batch, 1f)
+            val analytic = network.weights.mapIndexed { l, layer -> FloatArray(layer.size) { before[l][it] - layer[it] } }
+            for (l in 0 until network.layerCount) System.arraycopy(before[l], 0, network.weights[l], 0, before[l].size)
+            // Biases moved too; finite differences only look at the weights, so put them back to zero as initialized
+            network.biases.forEach { it.fill(0f) }
+
+            val epsilon = 1e-2f
+            for (l in 0 until network.layerCount) {
+                for (i in network.weights[l].indices) {
+                    val original = network.weights[l][i]
+                    network.weights[l][i] = original + epsilon
+                    network.forward(images, batch)
+                    val plus = network.loss(labels, batch)
+                    network.weights[l][i] = original - epsilon
+                    network.forward(images, batch)
+                    val minus = network.loss(labels, batch)
+                    network.weights[l][i] = original
+
+                    val numeric = (plus - minus) / (2 * epsilon)
+                    assertEquals("layer $l weight $i", numeric, analytic[l][i], 2e-3f + 0.02f * Math.abs(numeric))
+                }
+            }
+        }
+    }
+
+    @Test
+    fun parallelKernels_matchSerialBitForBit() {
+        val sizes = intArrayOf(inputs, 128, classes)
+        val (images, labels) = syntheticBatch(batchSize, inputs, classes, 5L)
+        val serial = MatrixKernels(1)
+        val parallel = MatrixKernels(4)
+        try {
+            val a = DenseNetwork(sizes, serial).also { it.initialize(9L) }
+            val b = DenseNetwork(sizes, parallel).also { it.initialize(9L) }
+            repeat(5) {
+                assertEquals(a.trainStep(images, labels, batchSize, 0.05f), b.trainStep(images, labels, batchSize, 0.05f), 0f)
+            }
+            for (l in 0 until a.layerCount) assertArrayEquals(a.weights[l], b.weights[l], 0f)
+        } finally {
+            serial.close()
+            parallel.close()
+        }
+    }
+
+    @Test
+    fun training_separatesClusteredClasses() {
+        // Four well separated Gaussian blobs in 8 dimensions
+        val sizes = intArrayOf(8, 16, 4)
+        val count = 256
+        val random = Random(13L)
+        val centers = Array(4) { FloatArray(8) { random.nextFloat() * 4f - 2f } }
+        val images = FloatArray(count * 8)
+        val labels = FloatArray(count * 4)
+        for (i in 0 until count) {
+            val cls = i % 4
+            for (d in 0 until 8) images[i * 8 + d] = centers[cls][d] + random.nextGaussian().toFloat() * 0.2f
+            labels[i * 4 + cls] = 1f
+        }
+
+        MatrixKernels(2).use { kernels ->
+            val network = DenseNetwork(sizes, kernels)
+            network.initialize(17L)
+            network.forward(images, count)
+            val initialLoss = network.loss(labels, count)
+
+            repeat(300) { network.trainStep(images, labels, count, 0.1f) }
+
+            val probabilities = network.forward(images, count)
+            val finalLoss = network.loss(labels, count)
+            var correct = 0
+            for (i in 0 until count) {
+                val row = probabilities.copyOfRange(i * 4, i * 4 + 4)
+                if (row.indices.maxByOrNull { row[it] } == i % 4) correct++
+            }
+            assertTrue("Loss went from $initialLoss to $finalLoss", finalLoss < initialLoss * 0.25f)
+            assertTrue("Accuracy ${correct * 100 / count}%", correct >= count * 0.95)
+        }
+    }
+
+    @Test
+    fun weightsFile_roundTripsAndRejectsCorruption() {
+        val sizes = intArrayOf(inputs, 32, classes)
+        val file = File.createTempFile("dense", ".fdnw")
+        try {
+            MatrixKernels(1).use { kernels ->
+                val written = DenseNetwork(sizes, kernels).also { it.initialize(21L) }
+                DenseWeightsFile.write(written, file)
+
+                val bytes = file.readBytes()
+                assertArrayEquals(sizes, DenseWeightsFile.layerSizesOf(ByteBuffer.wrap(bytes)))
+                val read = DenseNetwork(sizes, kernels)
+                assertTrue(DenseWeightsFile.load(ByteBuffer.wrap(bytes), read))
+                for (l in 0 until written.layerCount) {
+                    assertArrayEquals(written.weights[l], read.weights[l], 0f)
+                    assertArrayEquals(written.biases[l], read.biases[l], 0f)
+                }
+
+                // Different architecture, flipped payload byte, foreign file: all refused
+                assertFalse(DenseWeightsFile.load(ByteBuffer.wrap(bytes), DenseNetwork(intArrayOf(inputs, 16, classes), kernels)))
+                RandomAccessFile(file, "rw").use { raf ->
+                    raf.seek(100)
+                    val b = raf.read()
+                    raf.seek(100)
+                    raf.write(b xor 0xFF)
+                }
+                assertFalse(DenseWeightsFile.load(ByteBuffer.wrap(file.readBytes()), read))
+                assertNull(DenseWeightsFile.layerSizesOf(ByteBuffer.wrap(ByteArray(64))))
+            }
+        } finally {
+            file.delete()
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+import AppBackend.DataManager.Augmentation.AugmentationPipeline
+import AppBackend.DataManager.Augmentation.GaussianNoise
+import AppBackend.DataManager.Augmentation.HorizontalFlip
+import AppBackend.DataManager.Augmentation.RandomBrightness
+import AppBackend.DataManager.Augmentation.RandomShift
+import AppBackend.DataManager.DataLoaderAndInitializer.ResidentImageDataset
+import AppBackend.LocalTrainingModule.TrainingExecutor.TrainingBatchFeeder.Companion.directFloats
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Augmented batches through the prefetch worker pool at increasing worker counts: every worker count must hand
+ * out exactly the batches a single feeder produces for the same steps, and augmentation must not allocate.
+ * Throughput per worker count goes to build/benchmarks/augmentation_prefetch.tsv.
+ */
+class AugmentationPrefetchTest {
+
+    private val numSamples = 1024
+    private val height = 28
+    private val width = 28
+    private val imageSize = height * width
+    private val labelSize = 10
+    private val batchSize = 32
+
+    private val images = directFloats(numSamples * imageSize).also { for (i in 0 until it.capacity()) it.put(i, (i % 251) / 251f) }
+    private val labels = directFloats(numSamples * labelSize).also { for (i in 0 until numSamples) it.put(i * labelSize + i % labelSize, 1f) }
+    private val dataset = ResidentImageDataset(images, labels, imageSize, labelSize)
+
+    private val pipeline = AugmentationPipeline(
+        listOf(RandomShift(2), HorizontalFlip(0.5f), GaussianNoise(0.05f), RandomBrightness(0.1f)),
+        height,
+        width
+    )
+
+    private val plan = object : BatchFillPlan {
+        private val stepsPerEpoch = numSamples / batchSize
+
+        override fun select(globalStep: Int, batchIndices: IntArray, drawProbabilities: FloatArray) {
+            val first = (globalStep % stepsPerEpoch) * batchSize
+            for (i in 0 until batchSize) batchIndices[i] = first + i
+        }
+
+        override fun fill(feeder: TrainingBatchFeeder, globalStep: Int, batchIndices: IntArray, drawProbabilities: FloatArray) {
+            feeder.fillIndexed(batchIndices, 0)
+            feeder.augment(globalStep.toLong())
+        }
+    }
+
+    private fun feeders(count: Int): List<TrainingBatchFeeder> =
+        List(count) { TrainingBatchFeeder(dataset.openReader(), imageSize, labelSize, batchSize, pipeline.newAugmenter()) }
+
+    /** Folds the first augmented image of a batch into [hash]; that image sees every op of the pipeline. */
+    private fun fold(hash: Long, feeder: TrainingBatchFeeder): Long {
+        var h = hash
+        for (i in 0 until imageSize) h = h * 31 + java.lang.Float.floatToRawIntBits(feeder.imageTensor.get(i))
+        return h
+    }
+
+    /** Drains [steps] batches through a prefetcher with [workers] workers; returns the hash of what it handed out. */
+    private fun drain(workers: Int, steps: Int): Long {
+        val prefetcher = BatchPrefetcher(feeders(workers + 1), plan, 0, steps, workers)
+        var hash = 0L
+        prefetcher.start()
+        try {
+            for (step in 0 until steps) {
+                hash = fold(hash, prefetcher.acquire(step))
+                prefetcher.release(step)
+            }
+        } finally {
+            prefetcher.close()
+        }
+        return hash
+    }
+
+    @Test
+    fun workerPool_matchesSerialAugmentation() {
+        val steps = 300
+        val serial = feeders(1)[0]
+        val indices = IntArray(batchSize)
+        val probabilities = FloatArray(batchSize)
+        var expected = 0L
+        for (step in 0 until steps) {
+            plan.select(step, indices, probabilities)
+            plan.fill(serial, step, indices, probabilities)
+            expected = fold(expected, serial)
+        }
+
+        val cores = Runtime.getRuntime().availableProcessors()
+        for (workers in listOf(1, 2, 4, 8).filter { it <= maxOf(2, cores) }) {
+            assertEquals("$workers worker(s)", expected, drain(workers, steps))
+        }
+    }
+
+    @Test
+    fun workerPool_augmentedThroughputPerWorkerCount() {
+        val steps = 1000
+        val cores = Runtime.getRuntime().availableProcessors()
+        val workerCounts = listOf(1, 2, 4, 8).filter { it <= maxOf(1, cores) }
+        drain(workerCounts.last(), steps) // JIT warm-up
+
+        val samplesPerSecond = workerCounts.associateWith { workers ->
+            val start = System.nanoTime()
+            drain(workers, steps)
+            steps.toDouble() * batchSize * 1e9 / (System.nanoTime() - start)
+        }
+        writeBenchmarkResults(
+            "augmentation_prefetch",
+            listOf("workers", "samples_per_second"),
+            samplesPerSecond.map { (workers, rate) -> listOf(workers, "%.0f".format(rate)) }
+        )
+
+        for ((workers, rate) in samplesPerSecond) {
+            assertTrue("$workers worker(s): $rate samples/s", rate > 0 && rate.isFinite())
+        }
+        // Loose on purpose (shared machines): more workers must not fall well behind one
+        if (workerCounts.size > 1) {
+            val best = workerCounts.drop(1).maxOf { samplesPerSecond.getValue(it) }
+            assertTrue("Best of ${workerCounts.drop(1)} workers: $best samples/s, 1 worker: ${samplesPerSecond[1]}", best > samplesPerSecond.getValue(1) * 0.8)
+        }
+    }
+
+    @Test
+    fun prefetcher_handsOutBatchesInStepOrder() {
+        val steps = 500
+        val prefetcher = BatchPrefetcher(feeders(4), object : BatchFillPlan {
+            override fun select(globalStep: Int, batchIndices: IntArray, drawProbabilities: FloatArray) = plan.select(globalStep, batchIndices, drawProbabilities)
+            override fun fill(feeder: TrainingBatchFeeder, globalStep: Int, batchIndices: IntArray, drawProbabilities: FloatArray) = feeder.fillIndexed(batchIndices, 0)
+        }, 0, steps, 3)
+
+        prefetcher.start()
+        try {
+            for (step in 0 until steps) {
+                val feeder = prefetcher.acquire(step)
+                val firstSample = (step % (numSamples / batchSize)) * batchSize
+                assertEquals(images.get(firstSample * imageSize), feeder.imageTensor.get(0), 0f)
+                prefetcher.release(step)
+            }
+        } finally {
+            prefetcher.close()
+        }
+    }
+
+    @Test
+    fun augmenter_isDeterministicPerSeed() {
+        val first = feeders(1)[0]
+        val second = feeders(1)[0]
+        val order = IntArray(batchSize) { it }
+
+        first.fillIndexed(order, 0)
+        first.augment(42L)
+        second.fillIndexed(order, 0)
+        second.augment(42L)
+
+        for (i in 0 until batchSize * imageSize) {
+            assertEquals(first.imageTensor.get(i), second.imageTensor.get(i), 0f)
+        }
+    }
+
+    @Test
+    fun augmenter_allocatesNothingAfterWarmUp() {
+        val feeder = feeders(1)[0]
+        val order = IntArray(batchSize) { it }
+
+        repeat(2000) { feeder.fillIndexed(order, 0); feeder.augment(it.toLong()) }
+
+        // Code the JIT has not compiled yet allocates what compiled code keeps in registers, and on a busy or
+        // single-core machine compilation can still be catching up, so the quietest window counts
+        var allocated = Long.MAX_VALUE
+        repeat(5) {
+            val before = allocatedBytes()
+            repeat(2000) { feeder.fillIndexed(order, 0); feeder.augment(it.toLong()) }
+            allocated = minOf(allocated, allocatedBytes() - before)
+        }
+
+        assertTrue("Augmentation allocated $allocated bytes in steady state", allocated < 16 * 1024)
+    }
+}
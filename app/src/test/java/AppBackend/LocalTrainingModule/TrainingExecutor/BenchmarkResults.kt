@@ -0,0 +1,14 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+import java.io.File
+
+/**
+ * Writes a benchmark's table to build/benchmarks/[name].tsv under the directory the tests run in (the module),
+ * replacing the previous run's. Timings are machine-dependent and not asserted, so this is where they are read.
+ */
+internal fun writeBenchmarkResults(name: String, header: List<String>, rows: List<List<Any>>): File {
+    val file = File("build/benchmarks", "$name.tsv")
+    file.parentFile.mkdirs()
+    file.writeText((listOf(header) + rows).joinToString("") { row -> row.joinToString("\t") + "\n" })
+    return file
+}
@@ -0,0 +1,84 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.FloatBuffer
+import java.util.Random
+
+class ImportanceSamplerTest {
+
+    // Every other dataset index, so positions and dataset indices differ
+    private val samples = IntArray(200) { it * 2 + 1 }
+
+    // Spread over two orders of magnitude, like a partly learned dataset
+    private fun lossOf(sample: Int): Float = 0.01f + (sample * 37 % 101) / 20f
+
+    /** A sampler whose estimates hold [lossOf] for every sample, credited one sample at a time. */
+    private fun trainedSampler(): ImportanceSampler {
+        val sampler = ImportanceSampler(samples)
+        for (sample in samples) {
+            sampler.record(intArrayOf(sample), floatArrayOf(sampler.probability(sample)), FloatBuffer.wrap(floatArrayOf(lossOf(sample))))
+        }
+        return sampler
+    }
+
+    @Test
+    fun probabilities_sumToOne() {
+        val untrained = ImportanceSampler(samples)
+        assertEquals(1.0, samples.sumOf { untrained.probability(it).toDouble() }, 1e-4)
+
+        val sampler = trainedSampler()
+        assertEquals(1.0, samples.sumOf { sampler.probability(it).toDouble() }, 1e-4)
+        // The uniform share keeps every sample reachable
+        for (sample in samples) assertTrue(sampler.probability(sample) >= ImportanceSampler.DEFAULT_UNIFORM_MIX / samples.size * 0.999f)
+    }
+
+    @Test
+    fun correctedLoss_hasTheUniformMean() {
+        val sampler = trainedSampler()
+        val uniformMean = samples.sumOf { lossOf(it).toDouble() } / samples.size
+
+        // Exactly over the distribution: sum of p * c * l
+        val expected = samples.sumOf { sampler.probability(it).toDouble() / (samples.size * sampler.probability(it)) * lossOf(it) }
+        assertEquals(uniformMean, expected, uniformMean * 1e-4)
+
+        // And empirically over drawn batches, weighted the way the train signature is fed
+        val batch = 32
+        val indices = IntArray(batch)
+        val probabilities = FloatArray(batch)
+        val weights = FloatBuffer.allocate(batch)
+        val random = Random(3L)
+        var sum = 0.0
+        val batches = 20000
+        repeat(batches) {
+            sampler.drawBatch(random, indices, probabilities)
+            sampler.corrections(probabilities, weights)
+            var batchSum = 0.0
+            for (i in 0 until batch) batchSum += weights.get(i) * lossOf(indices[i])
+            sum += batchSum / batch
+        }
+        assertEquals(uniformMean, sum / batches, uniformMean * 0.01)
+    }
+
+    @Test
+    fun record_usesTheDrawTimeProbabilities() {
+        val sampler = trainedSampler()
+        val batch = 16
+        val indices = IntArray(batch)
+        val probabilities = FloatArray(batch)
+        sampler.drawBatch(Random(5L), indices, probabilities)
+        for (i in 0 until batch) assertEquals(sampler.probability(indices[i]), probabilities[i], 0f)
+
+        // Another batch trains in between and moves the estimates
+        val other = IntArray(batch) { samples[it] }
+        sampler.record(other, FloatArray(batch) { sampler.probability(other[it]) }, FloatBuffer.wrap(FloatArray(batch) { 50f }))
+
+        val losses = FloatArray(batch) { lossOf(indices[it]) }
+        var expected = 0f
+        for (i in 0 until batch) expected += losses[i] / (samples.size * probabilities[i])
+        expected /= batch
+
+        assertEquals(expected, sampler.record(indices, probabilities, FloatBuffer.wrap(losses)), expected * 1e-5f)
+    }
+}
@@ -0,0 +1,12 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+/**
+ * Bytes allocated so far by the calling thread, for the steady-state allocation tests.
+ * com.sun.management is not on the Android compile classpath, so the HotSpot counter is reached reflectively.
+ */
+internal fun allocatedBytes(): Long {
+    val bean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null)
+    val getter = Class.forName("com.sun.management.ThreadMXBean")
+        .getMethod("getThreadAllocatedBytes", Long::class.javaPrimitiveType)
+    return getter.invoke(bean, Thread.currentThread().id) as Long
+}
@@ -0,0 +1,60 @@
+package AppBackend.LocalTrainingModule.TrainingExecutor
+
+import AppBackend.DataManager.DataLoaderAndInitializer.ResidentImageDataset
+import AppBackend.LocalTrainingModule.TrainingExecutor.TrainingBatchFeeder.Companion.directFloats
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.FloatBuffer
+
+class TrainingBatchFeederTest {
+
+    private val numSamples = 600
+    private val imageSize = 28 * 28
+    private val labelSize = 10
+    private val batchSize = 32
+
+    private fun dataset(): Pair<FloatBuffer, FloatBuffer> {
+        val images = directFloats(numSamples * imageSize)
+        val labels = directFloats(numSamples * labelSize)
+        for (i in 0 until images.capacity()) images.put(i, i.toFloat())
+        for (i in 0 until numSamples) labels.put(i * labelSize + i % labelSize, 1f)
+        return Pair(images, labels)
+    }
+
+    @Test
+    fun fillRange_copiesTheRequestedSlice() {
+        val (images, labels) = dataset()
+        val reader = ResidentImageDataset(images, labels, imageSize, labelSize).openReader()
+        val feeder = TrainingBatchFeeder(reader, imageSize, labelSize, batchSize)
+
+        feeder.fillRange(batchSize * 3)
+
+        assertEquals((batchSize * 3 * imageSize).toFloat(), feeder.imageTensor.get(0), 0f)
+        assertEquals((batchSize * 4 * imageSize - 1).toFloat(), feeder.imageTensor.get(batchSize * imageSize - 1), 0f)
+        assertEquals(1f, feeder.labelTensor.get((batchSize * 3) % labelSize), 0f)
+        assertEquals(0, feeder.imageTensor.position())
+        // The shared dataset buffers must be left untouched for the validator
+        assertEquals(0, images.position())
+        assertEquals(images.capacity(), images.limit())
+    }
+
+    @Test
+    fun fillRange_allocatesNothingAfterWarmUp() {
+        val (images, labels) = dataset()
+        val reader = ResidentImageDataset(images, labels, imageSize, labelSize).openReader()
+        val feeder = TrainingBatchFeeder(reader, imageSize, labelSize, batchSize)
+        val stepsPerEpoch = numSamples / batchSize
+
+        // Warm-up epochs let the JIT settle before measuring
+        repeat(5) { for (step in 0 until stepsPerEpoch) feeder.fillRange(step * batchSize) }
+
+        val before = allocatedBytes()
+        repeat(3000) { for (step in 0 until stepsPerEpoch) feeder.fillRange(step * batchSize) }
+        val allocated = allocatedBytes() - before
+
+        // 54k steps: a single 16-byte object per step would show up as ~860 KB.
+        // The budget only covers the reflective measurement itself.
+        assertTrue("Feeder allocated $allocated bytes in steady state", allocated < 16 * 1024)
+    }
+}